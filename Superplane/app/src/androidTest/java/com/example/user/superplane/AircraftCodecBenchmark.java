@@ -0,0 +1,110 @@
+package com.example.user.superplane;
+
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Compares the binary form of Aircraft with the Java serialization the favorites were stored in before.
+ * The timings are written to the log under the BENCHMARK_TAG tag.
+ */
+public class AircraftCodecBenchmark extends TestCase
+{
+    private static final String BENCHMARK_TAG = "AircraftBenchmark";
+
+    private static final int WARMUP_ITERATIONS = 1000;
+    private static final int ITERATIONS = 2000;
+
+    // Each form is timed by its fastest round, so a pause of the device (e.g. a GC of another app) doesn't fail the test
+    private static final int ROUNDS = 5;
+
+    // The least speedup of the binary round trip over the serialization round trip
+    private static final int MIN_SPEEDUP = 10;
+
+    private Aircraft aircraft;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        aircraft = LegacyAircraftFixture.createAircraft();
+    }
+
+    public void testBinaryRoundTrip()
+    {
+        Aircraft decoded = new Aircraft(aircraft.getAircraftAsBytes());
+
+        assertEquals(aircraft.getAircraftAsString(), decoded.getAircraftAsString());
+    }
+
+    public void testLegacyFormIsMigrated()
+    {
+        // Serialized by the original class, not the current one, to catch incompatible changes of the class
+        Aircraft decoded = new Aircraft(LegacyAircraftFixture.SERIALIZED_BASE64);
+
+        assertEquals(aircraft.getAircraftAsString(), decoded.getAircraftAsString());
+    }
+
+    public void testBinaryFormIsSmaller() throws IOException
+    {
+        int binarySize = aircraft.getAircraftAsBytes().length;
+        int serializedSize = serialize(aircraft).length;
+
+        Log.i(BENCHMARK_TAG, "Binary size: " + binarySize + " bytes, serialized size: " + serializedSize + " bytes, ratio: "
+                + (double)serializedSize / binarySize);
+        assertTrue(binarySize * 2 < serializedSize);
+    }
+
+    public void testBinaryFormIsFaster() throws IOException, ClassNotFoundException
+    {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+        {
+            new Aircraft(aircraft.getAircraftAsBytes());
+            deserialize(serialize(aircraft));
+        }
+
+        long binaryTime = Long.MAX_VALUE;
+        long serializedTime = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++)
+        {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++)
+                new Aircraft(aircraft.getAircraftAsBytes());
+            binaryTime = Math.min(binaryTime, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++)
+                deserialize(serialize(aircraft));
+            serializedTime = Math.min(serializedTime, System.nanoTime() - start);
+        }
+
+        double speedup = (double)serializedTime / binaryTime;
+        Log.i(BENCHMARK_TAG, "Binary round trip: " + binaryTime / ITERATIONS + " ns, serialized round trip: "
+                + serializedTime / ITERATIONS + " ns, speedup: " + speedup);
+        assertTrue("Binary round trip is only " + speedup + " times faster", speedup >= MIN_SPEEDUP);
+    }
+
+    private static byte[] serialize(Aircraft aircraft) throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(aircraft);
+        oos.close();
+
+        return baos.toByteArray();
+    }
+
+    private static Aircraft deserialize(byte[] data) throws IOException, ClassNotFoundException
+    {
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data));
+
+        return (Aircraft)ois.readObject();
+    }
+}
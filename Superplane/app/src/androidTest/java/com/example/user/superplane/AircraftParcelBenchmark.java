@@ -0,0 +1,173 @@
+package com.example.user.superplane;
+
+import android.os.Parcel;
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+
+/**
+ * Compares passing aircraft as Parcelable with passing them as Serializable, the way an Intent extra does.
+ * The timings are written to the log under the BENCHMARK_TAG tag.
+ */
+public class AircraftParcelBenchmark extends TestCase
+{
+    private static final String BENCHMARK_TAG = "AircraftBenchmark";
+
+    private static final int WARMUP_ITERATIONS = 1000;
+    private static final int ITERATIONS = 10000;
+    private static final int LIST_SIZE = 10;
+
+    private Aircraft aircraft;
+    private ArrayList<Aircraft> aircraftList;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        aircraft = createAircraft(7234551);
+
+        aircraftList = new ArrayList<>();
+        for (int i = 0; i < LIST_SIZE; i++)
+            aircraftList.add(createAircraft(i));
+    }
+
+    public void testParcelRoundTrip()
+    {
+        Parcel parcel = Parcel.obtain();
+        try
+        {
+            aircraft.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+
+            Aircraft decoded = Aircraft.CREATOR.createFromParcel(parcel);
+            assertEquals(aircraft.getAircraftAsString(), decoded.getAircraftAsString());
+        }
+        finally
+        {
+            parcel.recycle();
+        }
+    }
+
+    public void testListParcelRoundTrip()
+    {
+        Parcel parcel = Parcel.obtain();
+        try
+        {
+            parcel.writeTypedList(aircraftList);
+            parcel.setDataPosition(0);
+
+            ArrayList<Aircraft> decoded = parcel.createTypedArrayList(Aircraft.CREATOR);
+            assertEquals(LIST_SIZE, decoded.size());
+            for (int i = 0; i < LIST_SIZE; i++)
+                assertEquals(aircraftList.get(i).getAircraftAsString(), decoded.get(i).getAircraftAsString());
+        }
+        finally
+        {
+            parcel.recycle();
+        }
+    }
+
+    public void testParcelableIsFaster()
+    {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+        {
+            parcelRoundTrip(aircraft);
+            serializableRoundTrip(aircraft);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++)
+            parcelRoundTrip(aircraft);
+        long parcelTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++)
+            serializableRoundTrip(aircraft);
+        long serializableTime = System.nanoTime() - start;
+
+        Log.i(BENCHMARK_TAG, "Parcelable round trip: " + parcelTime / ITERATIONS + " ns, Serializable round trip: "
+                + serializableTime / ITERATIONS + " ns");
+        assertTrue(parcelTime < serializableTime);
+    }
+
+    public void testParcelableListIsFaster()
+    {
+        for (int i = 0; i < WARMUP_ITERATIONS / LIST_SIZE; i++)
+        {
+            parcelListRoundTrip(aircraftList);
+            serializableRoundTrip(aircraftList);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS / LIST_SIZE; i++)
+            parcelListRoundTrip(aircraftList);
+        long parcelTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS / LIST_SIZE; i++)
+            serializableRoundTrip(aircraftList);
+        long serializableTime = System.nanoTime() - start;
+
+        Log.i(BENCHMARK_TAG, "Parcelable list round trip: " + parcelTime / (ITERATIONS / LIST_SIZE)
+                + " ns, Serializable list round trip: " + serializableTime / (ITERATIONS / LIST_SIZE) + " ns");
+        assertTrue(parcelTime < serializableTime);
+    }
+
+    private static Aircraft parcelRoundTrip(Aircraft aircraft)
+    {
+        Parcel parcel = Parcel.obtain();
+        try
+        {
+            parcel.writeParcelable(aircraft, 0);
+            parcel.setDataPosition(0);
+
+            return parcel.readParcelable(Aircraft.class.getClassLoader());
+        }
+        finally
+        {
+            parcel.recycle();
+        }
+    }
+
+    private static ArrayList<Aircraft> parcelListRoundTrip(ArrayList<Aircraft> aircraftList)
+    {
+        Parcel parcel = Parcel.obtain();
+        try
+        {
+            parcel.writeTypedList(aircraftList);
+            parcel.setDataPosition(0);
+
+            return parcel.createTypedArrayList(Aircraft.CREATOR);
+        }
+        finally
+        {
+            parcel.recycle();
+        }
+    }
+
+    private static Object serializableRoundTrip(java.io.Serializable value)
+    {
+        Parcel parcel = Parcel.obtain();
+        try
+        {
+            parcel.writeSerializable(value);
+            parcel.setDataPosition(0);
+
+            return parcel.readSerializable();
+        }
+        finally
+        {
+            parcel.recycle();
+        }
+    }
+
+    private static Aircraft createAircraft(int id)
+    {
+        return new Aircraft(id, "738065", "4X-EKA", "ELY001", 32.0114, 34.8867, 452.0, 271.3,
+                "Boeing 737-858", "Boeing", "LLBG Ben Gurion, Tel Aviv, Israel", "EGLL London Heathrow, United Kingdom",
+                new String[] { "LCLK Larnaca, Cyprus" }, "El Al Israel Airlines", 12.4, "Israel", false);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.user.superplane;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+import java.util.ArrayList;
+
+/**
+ * Tests the favorites database, including the upgrade from the serialized aircraft of version 1.
+ * Works on a renamed copy of the database, so the favorites of the installed app are left alone.
+ */
+public class FavoritesManagerTest extends AndroidTestCase
+{
+    private static final String DATABASE_PREFIX = "test.";
+
+    private Context context;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        context = new RenamingDelegatingContext(getContext(), DATABASE_PREFIX);
+        context.deleteDatabase(FavoritesManager.FavoritesDbHelper.DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        context.deleteDatabase(FavoritesManager.FavoritesDbHelper.DATABASE_NAME);
+
+        super.tearDown();
+    }
+
+    public void testUpgradeFromVersion1()
+    {
+        SQLiteDatabase db = context.openOrCreateDatabase(FavoritesManager.FavoritesDbHelper.DATABASE_NAME,
+                Context.MODE_PRIVATE, null);
+        db.execSQL("CREATE TABLE " + FavoritesDbContract.TableColumns.TABLE_NAME + " (" +
+                FavoritesDbContract.TableColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                FavoritesDbContract.TableColumns.COLUMN_NAME_DATA + " TEXT)");
+
+        // The favorite as the original class stored it, a row that can't be read, and the same favorite again
+        insertVersion1Row(db, LegacyAircraftFixture.SERIALIZED_BASE64);
+        insertVersion1Row(db, "not an aircraft");
+        insertVersion1Row(db, LegacyAircraftFixture.SERIALIZED_BASE64);
+
+        db.setVersion(1);
+        db.close();
+
+        FavoritesManager favoritesManager = new FavoritesManager(context);
+        ArrayList<Aircraft> favorites = favoritesManager.getFavorites();
+
+        assertEquals(1, favorites.size());
+        assertEquals(LegacyAircraftFixture.createAircraft().getAircraftAsString(), favorites.get(0).getAircraftAsString());
+    }
+
+    public void testFavoriteIsFoundAfterMoving()
+    {
+        FavoritesManager favoritesManager = new FavoritesManager(context);
+        favoritesManager.addFavorite(createAircraft("738065", 32.0, new String[] { "LCLK Larnaca, Cyprus" }));
+
+        Aircraft moved = createAircraft("738065", 33.5, new String[] { "LCLK Larnaca, Cyprus" });
+        assertTrue(favoritesManager.favoriteExists(moved));
+
+        favoritesManager.addFavorite(moved);
+        assertEquals(1, favoritesManager.getFavorites().size());
+
+        favoritesManager.removeFavorite(moved);
+        assertFalse(favoritesManager.favoriteExists(moved));
+        assertEquals(0, favoritesManager.getFavorites().size());
+    }
+
+    public void testStopsRoundTrip()
+    {
+        FavoritesManager favoritesManager = new FavoritesManager(context);
+        favoritesManager.addFavorite(createAircraft("738065", 32.0, new String[] { "LCLK Larnaca, Cyprus", "LGAV Athens, Greece" }));
+        favoritesManager.addFavorite(createAircraft("738066", 32.0, new String[0]));
+        favoritesManager.addFavorite(createAircraft("738067", 32.0, null));
+
+        ArrayList<Aircraft> favorites = favoritesManager.getFavorites();
+
+        assertEquals(3, favorites.size());
+        assertEquals(2, favorites.get(0).getStops().length);
+        assertEquals("LGAV Athens, Greece", favorites.get(0).getStops()[1]);
+        assertEquals(0, favorites.get(1).getStops().length);
+        assertNull(favorites.get(2).getStops());
+    }
+
+    public void testAircraftWithoutIcaoIsRejected()
+    {
+        FavoritesManager favoritesManager = new FavoritesManager(context);
+        Aircraft aircraft = createAircraft(null, 32.0, null);
+
+        assertFalse(favoritesManager.canBeFavorite(aircraft));
+        try
+        {
+            favoritesManager.addFavorite(aircraft);
+            fail("An aircraft without an ICAO was added");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Expected
+        }
+
+        assertEquals(0, favoritesManager.getFavorites().size());
+    }
+
+    private static void insertVersion1Row(SQLiteDatabase db, String data)
+    {
+        ContentValues values = new ContentValues();
+        values.put(FavoritesDbContract.TableColumns.COLUMN_NAME_DATA, data);
+
+        db.insert(FavoritesDbContract.TableColumns.TABLE_NAME, null, values);
+    }
+
+    private static Aircraft createAircraft(String icao, double latitude, String[] stops)
+    {
+        return new Aircraft(7234551, icao, "4X-EKA", "ELY001", latitude, 34.8867, 452.0, 271.3,
+                "Boeing 737-858", "Boeing", "LLBG Ben Gurion, Tel Aviv, Israel", "EGLL London Heathrow, United Kingdom",
+                stops, "El Al Israel Airlines", 12.4, "Israel", false);
+    }
+}
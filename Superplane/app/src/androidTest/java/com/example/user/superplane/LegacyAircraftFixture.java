@@ -0,0 +1,35 @@
+package com.example.user.superplane;
+
+/**
+ * A favorite as stored by the original Aircraft class, before the binary form: Java serialization in Base64.
+ * Produced by the class of the first commit, so it breaks whenever the serialized form of Aircraft stops
+ * being compatible with it.
+ */
+public class LegacyAircraftFixture
+{
+    public static final String SERIALIZED_BASE64 =
+            "rO0ABXNyACRjb20uZXhhbXBsZS51c2VyLnN1cGVycGxhbmUuQWlyY3JhZnSBWoI43Jnt6wIAEUQA" +
+            "CGRpc3RhbmNlRAAHaGVhZGluZ0kAAmlkWgAKaXNPbkdyb3VuZEQACGxhdGl0dWRlRAAJbG9uZ2l0" +
+            "dWRlRAAIdmVsb2NpdHlMAAhjYWxsc2lnbnQAEkxqYXZhL2xhbmcvU3RyaW5nO0wAC2Rlc3RBaXJw" +
+            "b3J0cQB+AAFMAARpY2FvcQB+AAFMAAxtYW51ZmFjdHVyZXJxAH4AAUwABW1vZGVscQB+AAFMAAhv" +
+            "cGVyYXRvcnEAfgABTAANb3JpZ2luQ291bnRyeXEAfgABTAAMcmVnaXN0cmF0aW9ucQB+AAFMAApz" +
+            "cmNBaXJwb3J0cQB+AAFbAAVzdG9wc3QAE1tMamF2YS9sYW5nL1N0cmluZzt4cEAozMzMzMzNQHD0" +
+            "zMzMzM0AbmP3AEBAAXWOIZZTQEFxf2K2rn1AfEAAAAAAAHQABkVMWTAwMXQAJEVHTEwgTG9uZG9u" +
+            "IEhlYXRocm93LCBVbml0ZWQgS2luZ2RvbXQABjczODA2NXQABkJvZWluZ3QADkJvZWluZyA3Mzct" +
+            "ODU4dAAVRWwgQWwgSXNyYWVsIEFpcmxpbmVzdAAGSXNyYWVsdAAGNFgtRUtBdAAhTExCRyBCZW4g" +
+            "R3VyaW9uLCBUZWwgQXZpdiwgSXNyYWVsdXIAE1tMamF2YS5sYW5nLlN0cmluZzut0lbn6R17RwIA" +
+            "AHhwAAAAAXQAFExDTEsgTGFybmFjYSwgQ3lwcnVz";
+
+    private LegacyAircraftFixture() {}
+
+    /**
+     * Creates the aircraft the fixture was serialized from.
+     * @return Returns the aircraft.
+     */
+    public static Aircraft createAircraft()
+    {
+        return new Aircraft(7234551, "738065", "4X-EKA", "ELY001", 32.0114, 34.8867, 452.0, 271.3,
+                "Boeing 737-858", "Boeing", "LLBG Ben Gurion, Tel Aviv, Israel", "EGLL London Heathrow, United Kingdom",
+                new String[] { "LCLK Larnaca, Cyprus" }, "El Al Israel Airlines", 12.4, "Israel", false);
+    }
+}
@@ -1,23 +1,14 @@
 package com.example.user.superplane;
 
 import android.location.Location;
-import android.support.annotation.Nullable;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLEncoder;
 import java.util.ArrayList;
-
-import javax.net.ssl.HttpsURLConnection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Class for handling all the download from ADSBExchange.com database using REST API.
@@ -26,6 +17,29 @@ public class ADSBExchangeManager extends DataDownloadManager
 {
     private final String API_URL = "https://public-api.adsbexchange.com/VirtualRadar/AircraftList.json";
 
+    // Incremental queries are rounded to about 100 meters so that small GPS jitter
+    // doesn't start a new query, and the radius is padded by the rounding error.
+    private final double INCREMENTAL_GRID_DEGREES = 0.001;
+    private final double INCREMENTAL_RADIUS_PADDING = 0.1;
+
+    // Every query keeps a table of its own, so that the searches of different areas
+    // don't reset each other's data version. The least recently used tables are dropped.
+    private static final int MAX_TABLES = 8;
+
+    // Merges share the dictionary of the last full list, which keeps the strings of every aircraft that
+    // ever passed through the area. A table whose dictionary outgrew its rows starts over with a full list.
+    private static final int MAX_DICTIONARY_STRINGS = 1024;
+    private static final int MAX_DICTIONARY_STRINGS_PER_ROW = 16;
+
+    private AircraftJsonDecoder decoder = new AircraftJsonDecoder(transport.getBufferPool(), StringPool.getShared());
+    private final LinkedHashMap<String, AircraftTable> aircraftTables = new LinkedHashMap<String, AircraftTable>(MAX_TABLES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AircraftTable> eldest)
+        {
+            return size() > MAX_TABLES;
+        }
+    };
+
     /**
      * Finds all the aircraft in the specified range.
      * @param location The location around to search.
@@ -35,130 +49,206 @@ public class ADSBExchangeManager extends DataDownloadManager
      */
     public ArrayList<Aircraft> getAircraftInRangeList(Location location, double radius) throws NoInternetException
     {
-        String url = API_URL + "?lat=" + URLEncoder.encode(String.valueOf(location.getLatitude())) + "&lng=" + URLEncoder.encode(String.valueOf(location.getLongitude())) +
-                "&fDstL=0&fDstU=" + URLEncoder.encode(String.valueOf(radius));
+        return getAircraftInRangeList(location, radius, null);
+    }
 
-        String jsonStr = downloadDataHttps(url);
+    /**
+     * Finds all the aircraft in the specified range, like getAircraftInRangeList(Location, double),
+     * but stops downloading as soon as the search is canceled.
+     * @param location The location around to search.
+     * @param radius The distance with which to search from the specified location.
+     * @param cancellationSignal The signal to cancel the search with, or null.
+     * @return Returns a list aircraft that are the specified zone.
+     * @throws NoInternetException
+     * @throws OperationCanceledException If the search was canceled.
+     */
+    public ArrayList<Aircraft> getAircraftInRangeList(Location location, double radius, CancellationSignal cancellationSignal)
+            throws NoInternetException
+    {
+        return getAircraftList(new AircraftQuery.Builder(location.getLatitude(), location.getLongitude(), radius).build(),
+                cancellationSignal);
+    }
 
-        if (jsonStr != null)
-        {
-            ArrayList<Aircraft> aircraftInRange = new ArrayList<>();
+    /**
+     * Finds all the aircraft matching a query. The filters of the query are applied by the server.
+     * @param query The query.
+     * @return Returns a list of the matching aircraft.
+     * @throws NoInternetException
+     */
+    public ArrayList<Aircraft> getAircraftList(AircraftQuery query) throws NoInternetException
+    {
+        return getAircraftList(query, null);
+    }
 
-            try
-            {
-                JSONObject jsonObject = new JSONObject(jsonStr);
-                JSONArray acList = jsonObject.getJSONArray("acList");
+    /**
+     * Finds all the aircraft matching a query, like getAircraftList(AircraftQuery),
+     * but stops downloading as soon as the search is canceled.
+     * @param query The query.
+     * @param cancellationSignal The signal to cancel the search with, or null.
+     * @return Returns a list of the matching aircraft.
+     * @throws NoInternetException
+     * @throws OperationCanceledException If the search was canceled.
+     */
+    public ArrayList<Aircraft> getAircraftList(AircraftQuery query, CancellationSignal cancellationSignal)
+            throws NoInternetException
+    {
+        String url = query.buildUrl(API_URL);
 
-                for (int i = 0; i < acList.length(); i++)
-                {
-                    JSONObject aircraftJson = acList.getJSONObject(i);
-                    Aircraft curAircraft = genAircraftByJson(aircraftJson);
+        InputStream inputStream = openStreamHttps(url, cancellationSignal);
 
-                    aircraftInRange.add(curAircraft);
-                }
-            }
-            catch (JSONException e)
-            {
-                throw new RuntimeException("JSON Parsing From ADSBExchange Failed!");
-            }
+        try
+        {
+            // Aircraft are built while the response is still downloading
+            return decoder.decodeAircraftList(inputStream);
+        }
+        catch (IOException e)
+        {
+            // Canceling disconnects, which fails the read
+            if (cancellationSignal != null)
+                cancellationSignal.throwIfCanceled();
 
-            return aircraftInRange;
+            throw new NoInternetException();
         }
-        else
+        finally
         {
-            throw new RuntimeException("Download from ADSBExchange failed!");
+            closeQuietly(inputStream);
         }
     }
 
     /**
-     * Generates an aircraft instance from a given JSON object.
-     * @param jsonObject The JSON object.
-     * @return Returns the Aircraft instance.
+     * Finds all the aircraft in the specified range, like getAircraftInRangeList,
+     * but keeps the result and on repeated calls for the same area
+     * downloads only the aircraft that changed since the previous call.
+     * @param location The location around to search.
+     * @param radius The distance with which to search from the specified location.
+     * @return Returns a columnar snapshot of the aircraft that are the specified zone.
+     * It is never changed afterwards, so it can be shared.
+     * @throws NoInternetException
+     */
+    public AircraftSnapshot refreshAircraftInRangeList(Location location, double radius) throws NoInternetException
+    {
+        return refreshAircraftList(new AircraftQuery.Builder(location.getLatitude(), location.getLongitude(), radius).build());
+    }
+
+    /**
+     * Finds all the aircraft matching a query, like refreshAircraftInRangeList.
+     * The filters of the query are applied by the server.
+     * @param aircraftQuery The query.
+     * @return Returns a columnar snapshot of the matching aircraft.
+     * It is never changed afterwards, so it can be shared.
+     * @throws NoInternetException
+     */
+    public AircraftSnapshot refreshAircraftList(AircraftQuery aircraftQuery) throws NoInternetException
+    {
+        return refreshAircraftList(aircraftQuery, null);
+    }
+
+    /**
+     * Finds all the aircraft matching a query, like refreshAircraftList(AircraftQuery),
+     * but stops downloading and decoding as soon as the search is canceled.
+     * Refreshes of different queries run in parallel, while refreshes of the same query wait for each other.
+     * @param aircraftQuery The query.
+     * @param cancellationSignal The signal to cancel the search with, or null.
+     * @return Returns a columnar snapshot of the matching aircraft.
+     * It is never changed afterwards, so it can be shared.
+     * @throws NoInternetException
+     * @throws OperationCanceledException If the search was canceled. The kept result is left as it was.
      */
-    private Aircraft genAircraftByJson(JSONObject jsonObject)
+    public AircraftSnapshot refreshAircraftList(AircraftQuery aircraftQuery, CancellationSignal cancellationSignal)
+            throws NoInternetException
     {
+        double latitude = Math.round(aircraftQuery.getLatitude() / INCREMENTAL_GRID_DEGREES) * INCREMENTAL_GRID_DEGREES;
+        double longitude = Math.round(aircraftQuery.getLongitude() / INCREMENTAL_GRID_DEGREES) * INCREMENTAL_GRID_DEGREES;
+        String query = new AircraftQuery.Builder(aircraftQuery)
+                .setArea(latitude, longitude, aircraftQuery.getRadius() + INCREMENTAL_RADIUS_PADDING)
+                .build()
+                .buildUrl(API_URL);
+
+        AircraftTable aircraftTable = getTable(query);
+
+        // A canceled search doesn't wait for the download of another search of the same query
+        aircraftTable.lock(cancellationSignal);
         try
         {
-            int id = (int) getValueFromJson(jsonObject, "Id");
-            String icao = (String) getValueFromJson(jsonObject, "Icao");
-            String registration = (String) getValueFromJson(jsonObject, "Reg");
-            String callsign = (String) getValueFromJson(jsonObject, "Call");
-            double latitude = (double) getValueFromJson(jsonObject, "Lat", 0.0);
-            double longitude = (double) getValueFromJson(jsonObject, "Long", 0.0);
-            double velocity = (double) getValueFromJson(jsonObject, "Spd", 0.0);
-            double heading = (double) getValueFromJson(jsonObject, "Trak", 0.0);
-            String model = (String) getValueFromJson(jsonObject, "Mdl");
-            String manufacturer = (String) getValueFromJson(jsonObject, "Man");
-            String srcAirport = (String) getValueFromJson(jsonObject, "From");
-            String destAirport = (String) getValueFromJson(jsonObject, "To");
-            String operator = (String) getValueFromJson(jsonObject, "Op");
-            double distance = (double) getValueFromJson(jsonObject, "Dst", -1.0);
-            String originCountry = (String) getValueFromJson(jsonObject, "Cou");
-            boolean isOnGround = (boolean) getValueFromJson(jsonObject, "Gnd", false);
-
-            String[] stops = null;
-            JSONArray stopsArray = (JSONArray) getValueFromJson(jsonObject, "Stops");
-            if (stopsArray != null)
+            AircraftSnapshot snapshot = aircraftTable.getSnapshot();
+            if (snapshot.getDictionary().size() > MAX_DICTIONARY_STRINGS + MAX_DICTIONARY_STRINGS_PER_ROW * snapshot.size())
+                aircraftTable.reset();
+
+            String url = query;
+            if (aircraftTable.getLastDataVersion() != null)
+                url += "&ldv=" + AircraftQuery.encodeParameter(aircraftTable.getLastDataVersion());
+
+            InputStream inputStream = openStreamHttps(url, cancellationSignal);
+
+            try
+            {
+                decoder.decodeAircraftUpdate(inputStream, aircraftTable, cancellationSignal);
+            }
+            catch (IOException e)
+            {
+                // Canceling disconnects, which fails the read
+                if (cancellationSignal != null)
+                    cancellationSignal.throwIfCanceled();
+
+                // A half merged table can't be trusted
+                aircraftTable.reset();
+                throw new NoInternetException();
+            }
+            catch (OperationCanceledException e)
+            {
+                // The decoder only changes the table once it is done, so it is still valid
+                throw e;
+            }
+            catch (RuntimeException e)
             {
-                stops = new String[stopsArray.length()];
-                for (int i = 0; i < stops.length; i++)
-                {
-                    try
-                    {
-                        stops[i] = stopsArray.getString(i);
-                    }
-                    catch (JSONException e) {
-                        throw new RuntimeException("Error while reading aircraft stops from json");
-                    }
-                }
+                aircraftTable.reset();
+                throw e;
+            }
+            finally
+            {
+                closeQuietly(inputStream);
             }
 
-            return new Aircraft(id, icao, registration, callsign, latitude, longitude,
-                    velocity, heading, model, manufacturer, srcAirport, destAirport, stops,
-                    operator, distance, originCountry, isOnGround);
+            return aircraftTable.getSnapshot();
         }
-        catch (Exception ex)
+        finally
         {
-            throw new RuntimeException("Error in json parsing");
+            aircraftTable.unlock();
         }
     }
 
     /**
-     * Gets a value from a JSON object.
-     * @param jsonObject The JSON object.
-     * @param key The key of the wanted value.
-     * @param _default The default value to fill if the key isn't found.
-     * @return Returns the value or the default value if the key wasn't found.
+     * Gets the table of a query, creating it if the query has none.
+     * @param query The URL of the query, without the data version.
+     * @return Returns the table.
      */
-    @Nullable
-    private Object getValueFromJson(JSONObject jsonObject, String key, Object _default)
+    private AircraftTable getTable(String query)
     {
-        try
-        {
-            return jsonObject.get(key);
-        }
-        catch (JSONException e)
+        synchronized (aircraftTables)
         {
-            return _default;
+            AircraftTable aircraftTable = aircraftTables.get(query);
+            if (aircraftTable == null)
+            {
+                aircraftTable = new AircraftTable();
+                aircraftTables.put(query, aircraftTable);
+            }
+
+            return aircraftTable;
         }
     }
 
     /**
-     * Gets a value from a JSON object.
-     * @param jsonObject The JSON object.
-     * @param key The key of the wanted value.
-     * @return Returns the value.
+     * Closes a response stream, ignoring errors.
+     * @param inputStream The stream to close.
      */
-    @Nullable
-    private Object getValueFromJson(JSONObject jsonObject, String key)
+    private void closeQuietly(InputStream inputStream)
     {
         try
         {
-            return jsonObject.get(key);
+            inputStream.close();
         }
-        catch (JSONException e)
-        {
-            return null;
+        catch (IOException e) {
+            // Nothing left to read anyway
         }
     }
 }
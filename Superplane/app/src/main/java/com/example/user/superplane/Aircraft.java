@@ -6,17 +6,19 @@ import android.os.Parcelable;
 import android.util.Base64;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 /**
  * Wrapper class for all aircraft properties.
+ * Parcelable for passing between activities, and Serializable only to read the favorites stored before the binary form.
  */
-public class Aircraft implements Serializable
+public class Aircraft implements Serializable, Parcelable
 {
+    // Pinned to the computed value of the original class, so the favorites serialized by it can still be read
+    private static final long serialVersionUID = -9125838514182033941L;
+
     public static final String AIRCRAFT_INTENT_NAME = "aircraft";
 
     private int id;
@@ -68,12 +70,102 @@ public class Aircraft implements Serializable
     }
 
     /**
-     * Initialize an aircraft instance from a base64 representation of a serialized aircraft instance.
+     * Creates an empty aircraft to be filled by updateFrom, e.g. by AircraftRegistry.
+     */
+    Aircraft()
+    {
+    }
+
+    /**
+     * Initialize an aircraft instance from a base64 representation of its binary form,
+     * or of a serialized aircraft instance as the favorites were stored before.
      * @param base64 The base64 representation.
      */
     public Aircraft(String base64)
     {
-        byte[] objDataArray = Base64.decode(base64, Base64.DEFAULT);
+        this(Base64.decode(base64, Base64.DEFAULT));
+    }
+
+    /**
+     * Initialize an aircraft instance from its binary form (see AircraftCodec),
+     * or from a serialized aircraft instance as the favorites were stored before.
+     * @param data The binary form.
+     */
+    public Aircraft(byte[] data)
+    {
+        Aircraft aircraft = AircraftCodec.isLegacy(data) ? readSerialized(data) : AircraftCodec.decode(data);
+
+        setMembers(aircraft.id, aircraft.icao, aircraft.registration, aircraft.callsign, aircraft.latitude, aircraft.longitude, aircraft.velocity,
+                aircraft.heading, aircraft.model, aircraft.manufacturer, aircraft.srcAirport, aircraft.destAirport, aircraft.stops, aircraft.operator,
+                aircraft.distance, aircraft.originCountry, aircraft.isOnGround);
+    }
+
+    /**
+     * Initialize an aircraft instance from a parcel written by writeToParcel.
+     * @param in The parcel.
+     */
+    private Aircraft(Parcel in)
+    {
+        setMembers(in.readInt(), in.readString(), in.readString(), in.readString(), in.readDouble(), in.readDouble(),
+                in.readDouble(), in.readDouble(), in.readString(), in.readString(), in.readString(), in.readString(),
+                in.createStringArray(), in.readString(), in.readDouble(), in.readString(), in.readByte() != 0);
+    }
+
+    public static final Parcelable.Creator<Aircraft> CREATOR = new Parcelable.Creator<Aircraft>() {
+        @Override
+        public Aircraft createFromParcel(Parcel in)
+        {
+            return new Aircraft(in);
+        }
+
+        @Override
+        public Aircraft[] newArray(int size)
+        {
+            return new Aircraft[size];
+        }
+    };
+
+    @Override
+    public int describeContents()
+    {
+        return 0;
+    }
+
+    /**
+     * Writes the aircraft to a parcel, in the order of the constructor arguments.
+     * Lists of aircraft are written with Parcel.writeTypedList and read with Parcel.createTypedArrayList(CREATOR).
+     * @param dest The parcel.
+     * @param flags Unused.
+     */
+    @Override
+    public void writeToParcel(Parcel dest, int flags)
+    {
+        dest.writeInt(id);
+        dest.writeString(icao);
+        dest.writeString(registration);
+        dest.writeString(callsign);
+        dest.writeDouble(latitude);
+        dest.writeDouble(longitude);
+        dest.writeDouble(velocity);
+        dest.writeDouble(heading);
+        dest.writeString(model);
+        dest.writeString(manufacturer);
+        dest.writeString(srcAirport);
+        dest.writeString(destAirport);
+        dest.writeStringArray(stops);
+        dest.writeString(operator);
+        dest.writeDouble(distance);
+        dest.writeString(originCountry);
+        dest.writeByte((byte)(isOnGround ? 1 : 0));
+    }
+
+    /**
+     * Reads an aircraft stored with Java serialization.
+     * @param objDataArray The serialized aircraft.
+     * @return Returns the aircraft.
+     */
+    private static Aircraft readSerialized(byte[] objDataArray)
+    {
         ByteArrayInputStream bis = new ByteArrayInputStream(objDataArray);
         ObjectInputStream ois = null;
         Aircraft aircraft = null;
@@ -91,9 +183,7 @@ public class Aircraft implements Serializable
             throw new RuntimeException("Casting error in favorites!");
         }
 
-        setMembers(aircraft.id, aircraft.icao, aircraft.registration, aircraft.callsign, aircraft.latitude, aircraft.longitude, aircraft.velocity,
-                aircraft.heading, aircraft.model, aircraft.manufacturer, aircraft.srcAirport, aircraft.destAirport, aircraft.stops, aircraft.operator,
-                aircraft.distance, aircraft.originCountry, aircraft.isOnGround);
+        return aircraft;
     }
 
     /**
@@ -120,6 +210,9 @@ public class Aircraft implements Serializable
                             double heading, String model, String manufacturer, String srcAirport, String destAirport, String[] stops,
                             String operator, double distance, String originCountry, boolean isOnGround)
     {
+        // Attributes that repeat across aircraft share one instance
+        StringPool pool = StringPool.getShared();
+
         this.id = id;
         this.icao = icao;
         this.registration = registration;
@@ -128,37 +221,167 @@ public class Aircraft implements Serializable
         this.longitude = longitude;
         this.velocity = velocity;
         this.heading = heading;
+        this.model = pool.intern(model);
+        this.manufacturer = pool.intern(manufacturer);
+        this.srcAirport = pool.intern(srcAirport);
+        this.destAirport = pool.intern(destAirport);
+        this.stops = stops;
+        this.operator = pool.intern(operator);
+        this.distance = distance;
+        this.originCountry = pool.intern(originCountry);
+        this.isOnGround = isOnGround;
+
+        if (stops != null)
+            for (int i = 0; i < stops.length; i++)
+                stops[i] = pool.intern(stops[i]);
+    }
+
+    /**
+     * Updates the aircraft in place from a row of a snapshot, without allocating anything
+     * unless the stops changed.
+     * @param snapshot The snapshot.
+     * @param row The row of the aircraft.
+     * @return Returns whether any attribute changed.
+     */
+    boolean updateFrom(AircraftSnapshot snapshot, int row)
+    {
+        boolean isChanged = updateStringsFrom(snapshot, row);
+        isChanged |= updateNumbersFrom(snapshot, row);
+
+        return isChanged;
+    }
+
+    /**
+     * Updates an aircraft that was already updated from an earlier snapshot of the same airframe.
+     * Reads only the numeric fields of a row still waiting for its second pass, so tracking doesn't
+     * decode every record again on every poll. The strings are updated once the row is resolved,
+     * e.g. when a partial record changes them.
+     * @param snapshot The snapshot.
+     * @param row The row of the aircraft, with the same Id.
+     * @return Returns whether any attribute changed.
+     */
+    boolean updateTrackedFrom(AircraftSnapshot snapshot, int row)
+    {
+        boolean isChanged = snapshot.isResolved(row) && updateStringsFrom(snapshot, row);
+        isChanged |= updateNumbersFrom(snapshot, row);
+
+        return isChanged;
+    }
+
+    /**
+     * Updates the Id, the position and the other numeric fields of the aircraft from a row of a snapshot.
+     * @param snapshot The snapshot.
+     * @param row The row of the aircraft.
+     * @return Returns whether any of them changed.
+     */
+    private boolean updateNumbersFrom(AircraftSnapshot snapshot, int row)
+    {
+        boolean isChanged = id != snapshot.getId(row);
+        isChanged |= latitude != snapshot.getLatitude(row) || longitude != snapshot.getLongitude(row);
+        isChanged |= velocity != snapshot.getVelocity(row) || heading != snapshot.getHeading(row);
+        isChanged |= distance != snapshot.getDistance(row) || isOnGround != snapshot.isOnGround(row);
+
+        this.id = snapshot.getId(row);
+        this.latitude = snapshot.getLatitude(row);
+        this.longitude = snapshot.getLongitude(row);
+        this.velocity = snapshot.getVelocity(row);
+        this.heading = snapshot.getHeading(row);
+        this.distance = snapshot.getDistance(row);
+        this.isOnGround = snapshot.isOnGround(row);
+
+        return isChanged;
+    }
+
+    /**
+     * Updates the strings and the stops of the aircraft from a row of a snapshot.
+     * @param snapshot The snapshot.
+     * @param row The row of the aircraft.
+     * @return Returns whether any of them changed.
+     */
+    private boolean updateStringsFrom(AircraftSnapshot snapshot, int row)
+    {
+        boolean isChanged = false;
+
+        String icao = snapshot.getString(AircraftSnapshot.COLUMN_ICAO, row);
+        String registration = snapshot.getString(AircraftSnapshot.COLUMN_REGISTRATION, row);
+        String callsign = snapshot.getString(AircraftSnapshot.COLUMN_CALLSIGN, row);
+        String model = snapshot.getString(AircraftSnapshot.COLUMN_MODEL, row);
+        String manufacturer = snapshot.getString(AircraftSnapshot.COLUMN_MANUFACTURER, row);
+        String srcAirport = snapshot.getString(AircraftSnapshot.COLUMN_SRC_AIRPORT, row);
+        String destAirport = snapshot.getString(AircraftSnapshot.COLUMN_DEST_AIRPORT, row);
+        String operator = snapshot.getString(AircraftSnapshot.COLUMN_OPERATOR, row);
+        String originCountry = snapshot.getString(AircraftSnapshot.COLUMN_ORIGIN_COUNTRY, row);
+
+        isChanged |= !equals(this.icao, icao) || !equals(this.registration, registration) || !equals(this.callsign, callsign);
+        isChanged |= !equals(this.model, model) || !equals(this.manufacturer, manufacturer);
+        isChanged |= !equals(this.srcAirport, srcAirport) || !equals(this.destAirport, destAirport);
+        isChanged |= !equals(this.operator, operator) || !equals(this.originCountry, originCountry);
+
+        this.icao = icao;
+        this.registration = registration;
+        this.callsign = callsign;
         this.model = model;
         this.manufacturer = manufacturer;
         this.srcAirport = srcAirport;
         this.destAirport = destAirport;
-        this.stops = stops;
         this.operator = operator;
-        this.distance = distance;
         this.originCountry = originCountry;
-        this.isOnGround = isOnGround;
+
+        if (!stopsEqual(snapshot, row))
+        {
+            int stopsCount = snapshot.getStopsCount(row);
+            if (stopsCount == -1)
+                this.stops = null;
+            else
+            {
+                this.stops = new String[stopsCount];
+                for (int i = 0; i < stopsCount; i++)
+                    this.stops[i] = snapshot.getStop(row, i);
+            }
+
+            isChanged = true;
+        }
+
+        return isChanged;
+    }
+
+    private boolean stopsEqual(AircraftSnapshot snapshot, int row)
+    {
+        int stopsCount = snapshot.getStopsCount(row);
+        if (stops == null || stopsCount == -1)
+            return stops == null && stopsCount == -1;
+
+        if (stops.length != stopsCount)
+            return false;
+
+        for (int i = 0; i < stopsCount; i++)
+            if (!equals(stops[i], snapshot.getStop(row, i)))
+                return false;
+
+        return true;
+    }
+
+    private static boolean equals(String first, String second)
+    {
+        return first == null ? second == null : first.equals(second);
     }
 
     /**
-     * Calculates a base64 representation of the aircraft instance.
+     * Calculates a base64 representation of the binary form of the aircraft instance.
      * @return Returns the base64 representation as String.
      */
     public String getAircraftAsString()
     {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = null;
-        try
-        {
-            oos = new ObjectOutputStream(baos);
-            oos.writeObject(this);
-            oos.close();
-        }
-        catch (IOException e)
-        {
-            throw new RuntimeException("Error while parsing Aircraft to string.");
-        }
+        return Base64.encodeToString(getAircraftAsBytes(), Base64.DEFAULT);
+    }
 
-        return Base64.encodeToString(baos.toByteArray(), Base64.DEFAULT);
+    /**
+     * Calculates the binary form of the aircraft instance (see AircraftCodec).
+     * @return Returns the binary form.
+     */
+    public byte[] getAircraftAsBytes()
+    {
+        return AircraftCodec.encode(this);
     }
 
     /**
@@ -0,0 +1,272 @@
+package com.example.user.superplane;
+
+import java.nio.charset.Charset;
+
+/**
+ * Compact binary form of a single aircraft, used to store the favorites.
+ * The form starts with a version byte, followed by the Id as a varint, the strings as a varint length
+ * and UTF-8 bytes, the doubles as fixed 8 bytes and the stops as a varint count and strings.
+ * A length or a count of 0 means null, any other value is one more than the actual length.
+ */
+public class AircraftCodec
+{
+    public static final int VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Java serialization streams start with these bytes, and no version byte is ever 0xAC
+    private static final byte SERIALIZATION_MAGIC_FIRST = (byte)0xAC;
+    private static final byte SERIALIZATION_MAGIC_SECOND = (byte)0xED;
+
+    private static final int INITIAL_BUFFER_SIZE = 128;
+
+    private AircraftCodec() {}
+
+    /**
+     * Checks whether data is in the Java serialization form the favorites were stored in before.
+     * @param data The data.
+     * @return Returns whether the data is a serialized Aircraft and not in the binary form.
+     */
+    public static boolean isLegacy(byte[] data)
+    {
+        return data.length >= 2 && data[0] == SERIALIZATION_MAGIC_FIRST && data[1] == SERIALIZATION_MAGIC_SECOND;
+    }
+
+    /**
+     * Encodes an aircraft.
+     * @param aircraft The aircraft.
+     * @return Returns the binary form.
+     */
+    public static byte[] encode(Aircraft aircraft)
+    {
+        Writer writer = new Writer(INITIAL_BUFFER_SIZE);
+
+        writer.writeByte(VERSION);
+        writer.writeVarint(zigZag(aircraft.getId()));
+        writer.writeString(aircraft.getIcao());
+        writer.writeString(aircraft.getRegistration());
+        writer.writeString(aircraft.getCallsign());
+        writer.writeDouble(aircraft.getLatitude());
+        writer.writeDouble(aircraft.getLongitude());
+        writer.writeDouble(aircraft.getVelocity());
+        writer.writeDouble(aircraft.getHeading());
+        writer.writeString(aircraft.getModel());
+        writer.writeString(aircraft.getManufacturer());
+        writer.writeString(aircraft.getSrcAirport());
+        writer.writeString(aircraft.getDestAirport());
+        writer.writeString(aircraft.getOperator());
+        writer.writeDouble(aircraft.getDistance());
+        writer.writeString(aircraft.getOriginCountry());
+        writer.writeByte(aircraft.isOnGround() ? 1 : 0);
+
+        String[] stops = aircraft.getStops();
+        if (stops == null)
+            writer.writeVarint(0);
+        else
+        {
+            writer.writeVarint(stops.length + 1);
+            for (String stop : stops)
+                writer.writeString(stop);
+        }
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * Decodes an aircraft.
+     * @param data The binary form.
+     * @return Returns the aircraft.
+     * @throws IllegalArgumentException If the data is broken or of an unknown version.
+     */
+    public static Aircraft decode(byte[] data)
+    {
+        Reader reader = new Reader(data);
+
+        int version = reader.readByte();
+        if (version != VERSION)
+            throw new IllegalArgumentException("Unknown aircraft version " + version + "!");
+
+        int id = unZigZag(reader.readVarint());
+        String icao = reader.readString();
+        String registration = reader.readString();
+        String callsign = reader.readString();
+        double latitude = reader.readDouble();
+        double longitude = reader.readDouble();
+        double velocity = reader.readDouble();
+        double heading = reader.readDouble();
+        String model = reader.readString();
+        String manufacturer = reader.readString();
+        String srcAirport = reader.readString();
+        String destAirport = reader.readString();
+        String operator = reader.readString();
+        double distance = reader.readDouble();
+        String originCountry = reader.readString();
+        boolean isOnGround = reader.readByte() != 0;
+
+        String[] stops = null;
+        int stopsCount = reader.readVarint() - 1;
+        if (stopsCount >= 0)
+        {
+            // Every stop takes at least a byte, so a broken count fails here instead of allocating a huge array
+            reader.require(stopsCount);
+
+            stops = new String[stopsCount];
+            for (int i = 0; i < stopsCount; i++)
+                stops[i] = reader.readString();
+        }
+
+        return new Aircraft(id, icao, registration, callsign, latitude, longitude, velocity, heading, model,
+                manufacturer, srcAirport, destAirport, stops, operator, distance, originCountry, isOnGround);
+    }
+
+    private static int zigZag(int value)
+    {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes the fields to a growing byte array.
+     */
+    static class Writer
+    {
+        private byte[] buffer;
+        private int size;
+
+        public Writer(int capacity)
+        {
+            this.buffer = new byte[capacity];
+            this.size = 0;
+        }
+
+        public void writeByte(int value)
+        {
+            ensureCapacity(1);
+            buffer[size++] = (byte)value;
+        }
+
+        public void writeVarint(int value)
+        {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0)
+            {
+                buffer[size++] = (byte)((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte)value;
+        }
+
+        public void writeDouble(double value)
+        {
+            long bits = Double.doubleToLongBits(value);
+
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8)
+                buffer[size++] = (byte)(bits >>> shift);
+        }
+
+        public void writeString(String value)
+        {
+            if (value == null)
+            {
+                writeVarint(0);
+                return;
+            }
+
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarint(bytes.length + 1);
+
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        public byte[] toByteArray()
+        {
+            byte[] data = new byte[size];
+            System.arraycopy(buffer, 0, data, 0, size);
+
+            return data;
+        }
+
+        private void ensureCapacity(int extra)
+        {
+            if (size + extra <= buffer.length)
+                return;
+
+            byte[] grown = new byte[Math.max(buffer.length * 2, size + extra)];
+            System.arraycopy(buffer, 0, grown, 0, size);
+            buffer = grown;
+        }
+    }
+
+    /**
+     * Reads the fields from a byte array.
+     */
+    static class Reader
+    {
+        private final byte[] data;
+        private int position;
+
+        public Reader(byte[] data)
+        {
+            this.data = data;
+            this.position = 0;
+        }
+
+        public int readByte()
+        {
+            require(1);
+            return data[position++] & 0xFF;
+        }
+
+        public int readVarint()
+        {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7)
+            {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+
+            throw new IllegalArgumentException("Broken varint in aircraft data!");
+        }
+
+        public double readDouble()
+        {
+            require(8);
+
+            long bits = 0;
+            for (int i = 0; i < 8; i++)
+                bits = (bits << 8) | (data[position++] & 0xFF);
+
+            return Double.longBitsToDouble(bits);
+        }
+
+        public String readString()
+        {
+            int length = readVarint() - 1;
+            if (length < 0)
+                return null;
+
+            require(length);
+            String value = new String(data, position, length, UTF_8);
+            position += length;
+
+            return value;
+        }
+
+        public void require(int length)
+        {
+            if (length < 0 || length > data.length - position)
+                throw new IllegalArgumentException("Truncated aircraft data!");
+        }
+    }
+}
@@ -5,15 +5,19 @@ import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
+import android.location.Location;
 import android.os.AsyncTask;
 import android.support.design.widget.CollapsingToolbarLayout;
+import android.support.design.widget.Snackbar;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.support.v7.widget.Toolbar;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
+import android.view.View;
 import android.view.WindowId;
 import android.widget.ArrayAdapter;
 import android.widget.ImageView;
@@ -21,12 +25,17 @@ import android.widget.LinearLayout;
 import android.widget.ListView;
 import android.widget.TextView;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+
 /**
  * Activity to show all the details of the activity
  * including an image of the aircraft (if permitted in the settings).
  */
 public class AircraftDetailsActivity extends AppCompatActivity
 {
+    public static final String SEARCH_LOCATION_INTENT_NAME = "search_location";
+
     private SettingsManager settingsManager;
     private FavoritesManager favoritesManager;
 
@@ -39,6 +48,15 @@ public class AircraftDetailsActivity extends AppCompatActivity
 
     private Aircraft aircraft;
 
+    // Tracks the aircraft only when it was found by a search
+    private LiveTracker liveTracker;
+    private HashMap<String, TextView> valueTexts = new HashMap<>();
+
+    // The properties kept live by the tracker, greyed out while they can't be updated
+    private static final String[] LIVE_PROPERTIES = { "Latitude", "Longitude", "Distance", "Velocity", "Heading" };
+    private static final float STALE_VALUE_ALPHA = 0.4f;
+    private boolean isLiveValueStale = false;
+
     /**
      * The onCreate method of AircraftDetailsActivity.
      * @param savedInstanceState
@@ -64,9 +82,10 @@ public class AircraftDetailsActivity extends AppCompatActivity
 
 
         imageView = (ImageView)findViewById(R.id.imageView);
-        new DefaultImageLoadTask().execute();
+        new DefaultImageLoadTask().executeOnExecutor(
+                TaskScheduler.getExecutor(TaskScheduler.Stage.CPU, TaskScheduler.Priority.BACKGROUND));
 
-        aircraft = (Aircraft) getIntent().getSerializableExtra(Aircraft.AIRCRAFT_INTENT_NAME);
+        aircraft = getIntent().getParcelableExtra(Aircraft.AIRCRAFT_INTENT_NAME);
 
         if (aircraft == null)
             throw new RuntimeException("No aircraft instance was passed to this activity!");
@@ -80,6 +99,136 @@ public class AircraftDetailsActivity extends AppCompatActivity
         getSupportActionBar().setTitle(aircraft.getOperator());
 
         this.addProperties();
+
+        Location searchLocation = getIntent().getParcelableExtra(SEARCH_LOCATION_INTENT_NAME);
+        if (searchLocation != null && settingsManager.getLiveTrackingSetting())
+        {
+            liveTracker = new LiveTracker(aircraft, searchLocation);
+            liveTracker.setLiveTrackingListener(liveTrackingListener);
+            liveTracker.getRegistry().addListener(registryListener);
+        }
+    }
+
+    @Override
+    protected void onStart()
+    {
+        super.onStart();
+
+        // Polls only while the aircraft is visible
+        if (liveTracker != null)
+            liveTracker.start();
+    }
+
+    @Override
+    protected void onStop()
+    {
+        if (liveTracker != null)
+            liveTracker.stop();
+
+        super.onStop();
+    }
+
+    private LiveTrackingListener liveTrackingListener = new LiveTrackingListener() {
+        @Override
+        public void positionUpdated(double latitude, double longitude, double velocity, double heading, double distance)
+        {
+            setPropertyValue("Latitude", String.valueOf(latitude));
+            setPropertyValue("Longitude", String.valueOf(longitude));
+            setPropertyValue("Distance", String.valueOf(distance));
+            setPropertyValue("Velocity", String.valueOf(velocity));
+            setPropertyValue("Heading", String.valueOf(heading));
+
+            setLiveValuesStale(false);
+        }
+
+        @Override
+        public void aircraftLost()
+        {
+            // The last position stays shown, greyed out, until the aircraft is found again
+            if (setLiveValuesStale(true))
+                showMessage("Aircraft Is No Longer Tracked.");
+        }
+
+        @Override
+        public void internetError()
+        {
+            if (setLiveValuesStale(true))
+                showMessage("Internet Connection Error.");
+        }
+    };
+
+    /**
+     * Greys out the live properties while they can't be updated, or shows them normally again.
+     * @param isStale Whether the values are stale.
+     * @return Returns whether the state changed, so that a message is shown only once.
+     */
+    private boolean setLiveValuesStale(boolean isStale)
+    {
+        if (isLiveValueStale == isStale)
+            return false;
+
+        isLiveValueStale = isStale;
+        for (String name : LIVE_PROPERTIES)
+        {
+            TextView valueText = valueTexts.get(name);
+            if (valueText != null)
+                valueText.setAlpha(isStale ? STALE_VALUE_ALPHA : 1f);
+        }
+
+        return true;
+    }
+
+    /**
+     * Shows a short message at the bottom of the screen.
+     * @param message The message.
+     */
+    private void showMessage(String message)
+    {
+        View rootView = findViewById(android.R.id.content);
+
+        Snackbar snackbar = Snackbar.make(rootView, message, Snackbar.LENGTH_LONG);
+        snackbar.setAction("CLOSE", new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+            }
+        });
+        snackbar.show();
+    }
+
+    private AircraftRegistryListener registryListener = new AircraftRegistryListener() {
+        @Override
+        public void aircraftChanged(ArrayList<Aircraft> added, ArrayList<Aircraft> changed, ArrayList<Aircraft> removed)
+        {
+            // Only the shown aircraft is rebound, the others aren't displayed
+            for (int i = 0; i < changed.size(); i++)
+                if (changed.get(i).getId() == aircraft.getId())
+                    updateProperties(changed.get(i));
+        }
+    };
+
+    /**
+     * Changes the displayed values of the properties that changed.
+     * @param changedAircraft The updated instance of the displayed aircraft.
+     */
+    private void updateProperties(Aircraft changedAircraft)
+    {
+        AircraftPropertiesManager propertiesManager = new AircraftPropertiesManager(changedAircraft);
+        int count = propertiesManager.getPropertyCount();
+
+        for (int i = 0; i < count; i++)
+            setPropertyValue(propertiesManager.getPropertyName(i), propertiesManager.getPropertyValue(i));
+    }
+
+    /**
+     * Changes the displayed value of a property, only if it is different.
+     * @param name The name of the property.
+     * @param value The new value.
+     */
+    private void setPropertyValue(String name, String value)
+    {
+        TextView valueText = valueTexts.get(name);
+        if (valueText != null && !TextUtils.equals(valueText.getText(), value))
+            valueText.setText(value);
     }
 
     @Override
@@ -100,6 +249,9 @@ public class AircraftDetailsActivity extends AppCompatActivity
     {
         MenuItem favItem = menu.findItem(R.id.action_add_favorite);
 
+        // The favorites are keyed by the ICAO
+        favItem.setVisible(favoritesManager.canBeFavorite(aircraft));
+
         if (favoritesManager.favoriteExists(aircraft))
         {
             favItem.setIcon(R.drawable.ic_star_24dp);
@@ -149,6 +301,7 @@ public class AircraftDetailsActivity extends AppCompatActivity
 
             TextView valueText = (TextView)layout.findViewById(R.id.valueTextView);
             valueText.setText(propertiesManager.getPropertyValue(i));
+            valueTexts.put(propertiesManager.getPropertyName(i), valueText);
 
             contentLayout.addView(layout);
         }
@@ -176,8 +329,10 @@ public class AircraftDetailsActivity extends AppCompatActivity
         }
 
         @Override
-        public void internetError() {
-
+        public void internetError()
+        {
+            // The default logo stays shown
+            showMessage("Image Could Not Be Downloaded.");
         }
     };
 
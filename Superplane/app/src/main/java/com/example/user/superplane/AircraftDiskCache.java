@@ -0,0 +1,188 @@
+package com.example.user.superplane;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Keeps query results in app-private storage so they survive the process being killed.
+ * Every result is a file named by its geohash cell, holding the time it was saved, its cache key
+ * and the snapshot in its binary form, with the rows never decoded in full kept as their JSON records. The oldest files are deleted when the total size goes over the budget.
+ */
+public class AircraftDiskCache
+{
+    private static final String FILE_SUFFIX = ".bin";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // The records of the files are decoded in memory, so the decoder never takes more than a buffer
+    private static final int DECODER_BUFFER_SIZE = 1024;
+
+    private File directory;
+    private long maxSize;
+    private AircraftJsonDecoder decoder;
+
+    /**
+     * Constructor getting the directory to keep the results in and its size budget.
+     * @param directory The directory, created if needed.
+     * @param maxSize The total size the files may take, in bytes.
+     */
+    public AircraftDiskCache(File directory, long maxSize)
+    {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.decoder = new AircraftJsonDecoder(new ByteBufferPool(DECODER_BUFFER_SIZE, 1), StringPool.getShared());
+    }
+
+    /**
+     * Reads a saved result.
+     * @param geohash The geohash cell of the result.
+     * @param key The full cache key of the result.
+     * @return Returns the saved result or null if there is none.
+     */
+    public synchronized Entry read(String geohash, String key)
+    {
+        File file = getFile(geohash, key);
+        if (!file.exists())
+            return null;
+
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            long savedTime = in.readLong();
+
+            // Different keys may share a file name
+            if (!in.readUTF().equals(key))
+                return null;
+
+            return new Entry(AircraftSnapshot.readFrom(in, file.length(), decoder), savedTime);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // Broken or written by an older version, and the search must not fail on it every time
+            file.delete();
+            return null;
+        }
+        finally
+        {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Saves a result, replacing any previous result of the same key.
+     * @param geohash The geohash cell of the result.
+     * @param key The full cache key of the result.
+     * @param snapshot The result.
+     */
+    public synchronized void write(String geohash, String key, AircraftSnapshot snapshot)
+    {
+        if (!directory.exists() && !directory.mkdirs())
+            return;
+
+        File file = getFile(geohash, key);
+        File tempFile = new File(directory, file.getName() + TEMP_SUFFIX);
+
+        DataOutputStream out = null;
+        try
+        {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeLong(System.currentTimeMillis());
+            out.writeUTF(key);
+            snapshot.writeTo(out);
+            out.close();
+            out = null;
+
+            // Readers never see a half written file
+            if (!tempFile.renameTo(file))
+                tempFile.delete();
+        }
+        catch (IOException e)
+        {
+            closeQuietly(out);
+            tempFile.delete();
+            return;
+        }
+
+        trim();
+    }
+
+    /**
+     * Deletes the oldest files until the cache fits its budget.
+     */
+    private void trim()
+    {
+        File[] files = directory.listFiles();
+        if (files == null)
+            return;
+
+        long totalSize = 0;
+        for (File file : files)
+            totalSize += file.length();
+
+        if (totalSize <= maxSize)
+            return;
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second)
+            {
+                long firstModified = first.lastModified();
+                long secondModified = second.lastModified();
+                return firstModified < secondModified ? -1 : (firstModified == secondModified ? 0 : 1);
+            }
+        });
+
+        for (int i = 0; i < files.length && totalSize > maxSize; i++)
+        {
+            long length = files[i].length();
+            if (files[i].delete())
+                totalSize -= length;
+        }
+    }
+
+    private File getFile(String geohash, String key)
+    {
+        return new File(directory, geohash + "_" + Integer.toHexString(key.hashCode()) + FILE_SUFFIX);
+    }
+
+    private void closeQuietly(Closeable closeable)
+    {
+        if (closeable == null)
+            return;
+
+        try
+        {
+            closeable.close();
+        }
+        catch (IOException e) {
+            // Nothing to do about it
+        }
+    }
+
+    /**
+     * A saved result.
+     */
+    public static class Entry
+    {
+        public final AircraftSnapshot snapshot;
+
+        // Wall clock time, since the elapsed time restarts with the phone
+        public final long savedTime;
+
+        public Entry(AircraftSnapshot snapshot, long savedTime)
+        {
+            this.snapshot = snapshot;
+            this.savedTime = savedTime;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.user.superplane;
+
+/**
+ * A single VirtualRadar filter that is applied by the server instead of on the phone.
+ * Filters are sent as f[Field][Condition]=[Value] parameters, e.g. fAltL=1000.
+ */
+public class AircraftFilter
+{
+    private static final String FIELD_ALTITUDE = "Alt";
+    private static final String FIELD_ON_GROUND = "Gnd";
+    private static final String FIELD_CALLSIGN = "Call";
+    private static final String FIELD_OPERATOR = "Op";
+    private static final String FIELD_ICAO = "Ico";
+
+    private static final char CONDITION_EQUALS = 'Q';
+    private static final char CONDITION_CONTAINS = 'C';
+    private static final char CONDITION_STARTS_WITH = 'S';
+    private static final char CONDITION_LOWER = 'L';
+    private static final char CONDITION_UPPER = 'U';
+
+    private final String field;
+    private final char condition;
+    private final String value;
+
+    private AircraftFilter(String field, char condition, String value)
+    {
+        this.field = field;
+        this.condition = condition;
+        this.value = value;
+    }
+
+    /**
+     * Filter for aircraft flying at or above an altitude.
+     * @param feet The lowest altitude, in feet.
+     * @return Returns the filter.
+     */
+    public static AircraftFilter altitudeAtLeast(int feet)
+    {
+        return new AircraftFilter(FIELD_ALTITUDE, CONDITION_LOWER, String.valueOf(feet));
+    }
+
+    /**
+     * Filter for aircraft flying at or below an altitude.
+     * @param feet The highest altitude, in feet.
+     * @return Returns the filter.
+     */
+    public static AircraftFilter altitudeAtMost(int feet)
+    {
+        return new AircraftFilter(FIELD_ALTITUDE, CONDITION_UPPER, String.valueOf(feet));
+    }
+
+    /**
+     * Filter excluding the aircraft that are on the ground.
+     * @return Returns the filter.
+     */
+    public static AircraftFilter notOnGround()
+    {
+        return new AircraftFilter(FIELD_ON_GROUND, CONDITION_EQUALS, "0");
+    }
+
+    /**
+     * Filter for aircraft whose callsign starts with a prefix, e.g. the ICAO code of an airline.
+     * @param prefix The prefix of the callsign.
+     * @return Returns the filter.
+     */
+    public static AircraftFilter callsignStartsWith(String prefix)
+    {
+        return new AircraftFilter(FIELD_CALLSIGN, CONDITION_STARTS_WITH, prefix);
+    }
+
+    /**
+     * Filter for an exact callsign.
+     * @param callsign The callsign.
+     * @return Returns the filter.
+     */
+    public static AircraftFilter callsignEquals(String callsign)
+    {
+        return new AircraftFilter(FIELD_CALLSIGN, CONDITION_EQUALS, callsign);
+    }
+
+    /**
+     * Filter for aircraft whose operator name contains a text.
+     * @param text The text to look for in the operator name.
+     * @return Returns the filter.
+     */
+    public static AircraftFilter operatorContains(String text)
+    {
+        return new AircraftFilter(FIELD_OPERATOR, CONDITION_CONTAINS, text);
+    }
+
+    /**
+     * Filter for a single aircraft by its ICAO address.
+     * @param icao The ICAO address.
+     * @return Returns the filter.
+     */
+    public static AircraftFilter icaoEquals(String icao)
+    {
+        return new AircraftFilter(FIELD_ICAO, CONDITION_EQUALS, icao);
+    }
+
+    /**
+     * Appends the filter as a URL parameter.
+     * @param builder The URL to append to, which must already have its '?'.
+     */
+    public void appendTo(StringBuilder builder)
+    {
+        builder.append("&f").append(field).append(condition).append('=').append(AircraftQuery.encodeParameter(value));
+    }
+}
@@ -23,4 +23,9 @@ public abstract class AircraftFoundListener
      * Callback for when there are internet connection problems.
      */
     public abstract void internetError();
+
+    /**
+     * Callback for when the location of the phone could not be found.
+     */
+    public abstract void locationError();
 }
@@ -0,0 +1,677 @@
+package com.example.user.superplane;
+
+import android.os.CancellationSignal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes the VirtualRadar AircraftList.json response straight from a stream.
+ * Fields are matched against a fixed table, unknown fields are skipped
+ * and missing fields keep their defaults without any exception being thrown.
+ * A full list is decoded in two passes by default, which keeps the response body in memory
+ * for as long as the snapshot needs it. Bodies larger than MAX_PROJECTED_BODY are streamed instead,
+ * so memory never grows past that bound with the size of the response.
+ */
+public class AircraftJsonDecoder
+{
+    // In the order of the AircraftRecord.FIELD_* constants
+    private static final JsonPullParser.FieldTable AIRCRAFT_FIELDS = new JsonPullParser.FieldTable(
+            "Id", "Icao", "Reg", "Call", "Lat", "Long", "Spd", "Trak", "Mdl", "Man",
+            "From", "To", "Op", "Dst", "Cou", "Gnd", "Stops");
+
+    private static final int ROOT_AC_LIST = 0;
+    private static final int ROOT_LAST_DV = 1;
+
+    private static final JsonPullParser.FieldTable ROOT_FIELDS = new JsonPullParser.FieldTable("acList", "lastDv");
+
+    private static final int ALL_FIELDS = -1;
+
+    // Lists this large are decoded on the CPU stage of TaskScheduler, in chunks of CHUNK_RECORDS records
+    private static final int PARALLEL_THRESHOLD = 256 * 1024;
+    private static final int CHUNK_RECORDS = 256;
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    // Larger bodies are decoded by the streaming pass, in the memory of a single record
+    private static final int MAX_PROJECTED_BODY = 2 * 1024 * 1024;
+
+    // The numeric fields the aircraft are ranked and filtered by, decoded by the first pass of a projected decode
+    private static final int PROJECTION_FIELDS = (1 << AircraftRecord.FIELD_ID) | (1 << AircraftRecord.FIELD_LATITUDE) |
+            (1 << AircraftRecord.FIELD_LONGITUDE) | (1 << AircraftRecord.FIELD_VELOCITY) | (1 << AircraftRecord.FIELD_HEADING) |
+            (1 << AircraftRecord.FIELD_DISTANCE) | (1 << AircraftRecord.FIELD_ON_GROUND);
+
+    private ByteBufferPool bufferPool;
+    private StringPool stringPool;
+
+    private boolean isProjectionEnabled = true;
+
+    /**
+     * Constructor getting the pools to take the read buffers and the strings from.
+     * @param bufferPool The buffer pool.
+     * @param stringPool The pool for the string fields, which repeat across aircraft and polls.
+     */
+    public AircraftJsonDecoder(ByteBufferPool bufferPool, StringPool stringPool)
+    {
+        this.bufferPool = bufferPool;
+        this.stringPool = stringPool;
+    }
+
+    /**
+     * Setter for the projected decode mode. When enabled, a full list is decoded in two passes:
+     * the first decodes only the numeric fields of every aircraft and keeps the response,
+     * and the rest of a record is decoded only when its strings are first needed.
+     * Bodies larger than MAX_PROJECTED_BODY are always streamed.
+     * @param isProjectionEnabled Whether to use the projected decode.
+     */
+    public void setProjectionEnabled(boolean isProjectionEnabled)
+    {
+        this.isProjectionEnabled = isProjectionEnabled;
+    }
+
+    /**
+     * Decodes all the aircraft in a response.
+     * @param inputStream The stream of the response body.
+     * @return Returns the list of the decoded aircraft.
+     * @throws IOException
+     */
+    public ArrayList<Aircraft> decodeAircraftList(InputStream inputStream) throws IOException
+    {
+        byte[] buffer = bufferPool.acquire();
+        try
+        {
+            JsonPullParser parser = new JsonPullParser(inputStream, buffer);
+            AircraftRecord record = new AircraftRecord();
+            ArrayList<Aircraft> aircraftList = new ArrayList<>();
+
+            parser.beginObject();
+            while (parser.hasNext())
+            {
+                if (parser.nextName(ROOT_FIELDS) == ROOT_AC_LIST && parser.peek() == JsonPullParser.TOKEN_BEGIN_ARRAY)
+                {
+                    parser.beginArray();
+                    while (parser.hasNext())
+                    {
+                        decodeRecord(parser, record, ALL_FIELDS);
+                        aircraftList.add(record.toAircraft());
+                    }
+                    parser.endArray();
+                }
+                else
+                {
+                    parser.skipValue();
+                }
+            }
+            parser.endObject();
+
+            return aircraftList;
+        }
+        finally
+        {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Decodes an incremental response and merges it into a table.
+     * Records of known aircraft may hold only the fields that changed,
+     * and aircraft that are missing from the response are dropped from the table.
+     * @param inputStream The stream of the response body.
+     * @param table The table to merge into. Its data version is updated as well.
+     * @param cancellationSignal The signal to stop decoding with, checked at every record, or null.
+     * @throws IOException
+     * @throws android.os.OperationCanceledException If decoding was canceled. The table is left unchanged.
+     */
+    public void decodeAircraftUpdate(InputStream inputStream, AircraftTable table, CancellationSignal cancellationSignal) throws IOException
+    {
+        AircraftSnapshot previous = table.getSnapshot();
+
+        // Nothing to merge with, so the list is full and only the chosen aircraft need their strings
+        if (isProjectionEnabled && previous.size() == 0)
+        {
+            byte[] body = readBody(inputStream, MAX_PROJECTED_BODY);
+            if (body.length <= MAX_PROJECTED_BODY)
+            {
+                decodeProjectedList(body, table, cancellationSignal);
+                return;
+            }
+
+            // Too large to keep, the streaming pass goes on after the part already read
+            inputStream = new SequenceInputStream(new ByteArrayInputStream(body), inputStream);
+        }
+
+        byte[] buffer = bufferPool.acquire();
+        try
+        {
+            JsonPullParser parser = new JsonPullParser(inputStream, buffer);
+            AircraftRecord record = new AircraftRecord();
+
+            AircraftSnapshot updated = null;
+            String lastDataVersion = null;
+            boolean inconsistent = false;
+
+            parser.beginObject();
+            while (parser.hasNext())
+            {
+                int field = parser.nextName(ROOT_FIELDS);
+
+                if (field == ROOT_AC_LIST && parser.peek() == JsonPullParser.TOKEN_BEGIN_ARRAY)
+                {
+                    // Sharing the dictionary lets unchanged rows be copied without re-encoding their strings
+                    updated = new AircraftSnapshot(previous.getDictionary(), previous.size());
+
+                    parser.beginArray();
+                    while (parser.hasNext())
+                    {
+                        throwIfCanceled(cancellationSignal);
+                        decodeRecord(parser, record, ALL_FIELDS);
+
+                        int previousRow = previous.indexOfId(record.id);
+                        if (previousRow != -1)
+                        {
+                            updated.appendMerged(record, previous, previousRow);
+                        }
+                        else
+                        {
+                            // A partial record of an aircraft we never saw means we are out of sync
+                            if (!record.isPresent(AircraftRecord.FIELD_LATITUDE))
+                                inconsistent = true;
+
+                            updated.append(record);
+                        }
+                    }
+                    parser.endArray();
+                }
+                else if (field == ROOT_LAST_DV && parser.peek() != JsonPullParser.TOKEN_NULL)
+                {
+                    lastDataVersion = parser.nextString();
+                }
+                else
+                {
+                    parser.skipValue();
+                }
+            }
+            parser.endObject();
+
+            if (updated != null)
+                table.setSnapshot(updated);
+
+            // Ask for a full list next time if the response can't be built upon
+            table.setLastDataVersion(updated != null && !inconsistent ? lastDataVersion : null);
+        }
+        finally
+        {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * First pass of a projected decode: decodes the numeric fields of a full list and
+     * keeps the offset of every record in the body for the second pass.
+     * @param body The whole response body.
+     * @param table The table to put the list in. Its data version is updated as well.
+     * @param cancellationSignal The signal to stop decoding with, or null.
+     * @throws IOException
+     */
+    private void decodeProjectedList(byte[] body, AircraftTable table, CancellationSignal cancellationSignal) throws IOException
+    {
+        JsonPullParser parser = new JsonPullParser(body, 0, body.length);
+        AircraftRecord record = new AircraftRecord();
+
+        AircraftSnapshot updated = null;
+        String lastDataVersion = null;
+
+        parser.beginObject();
+        while (parser.hasNext())
+        {
+            int field = parser.nextName(ROOT_FIELDS);
+
+            if (field == ROOT_AC_LIST && parser.peek() == JsonPullParser.TOKEN_BEGIN_ARRAY)
+            {
+                updated = new AircraftSnapshot();
+
+                if (body.length >= PARALLEL_THRESHOLD && PARALLELISM > 1)
+                {
+                    int arrayEnd = decodeProjectedListParallel(body, parser.getPosition(), updated, cancellationSignal);
+
+                    // Go on with the rest of the root object after the closing bracket
+                    parser = new JsonPullParser(body, arrayEnd + 1, body.length - arrayEnd - 1);
+                    continue;
+                }
+
+                parser.beginArray();
+                while (parser.hasNext())
+                {
+                    throwIfCanceled(cancellationSignal);
+
+                    int offset = parser.getPosition();
+                    decodeRecord(parser, record, PROJECTION_FIELDS);
+                    updated.appendProjected(record, offset);
+                }
+                parser.endArray();
+            }
+            else if (field == ROOT_LAST_DV && parser.peek() != JsonPullParser.TOKEN_NULL)
+            {
+                lastDataVersion = parser.nextString();
+            }
+            else
+            {
+                parser.skipValue();
+            }
+        }
+        parser.endObject();
+
+        if (updated != null)
+        {
+            updated.setSource(body, this);
+            table.setSnapshot(updated);
+        }
+
+        table.setLastDataVersion(updated != null ? lastDataVersion : null);
+    }
+
+    /**
+     * Decodes the records of a large list on the CPU stage. The array is split at record
+     * boundaries into chunks, every chunk is decoded into a snapshot of its own, and the
+     * chunks are appended in order.
+     * @param body The whole response body.
+     * @param arrayStart The offset of the opening bracket of the list.
+     * @param updated The snapshot to append the records to.
+     * @param cancellationSignal The signal to stop decoding with, or null.
+     * @return Returns the offset of the closing bracket of the list.
+     */
+    private int decodeProjectedListParallel(byte[] body, int arrayStart, AircraftSnapshot updated, CancellationSignal cancellationSignal)
+    {
+        int[] recordStarts = findRecordStarts(body, arrayStart);
+        int recordCount = recordStarts.length - 1;
+
+        ProjectionChunks chunks = new ProjectionChunks(body, recordStarts, cancellationSignal);
+
+        // The calling thread decodes chunks as well, so the list is done even while the CPU stage is busy
+        for (int i = 1; i < PARALLELISM && i < chunks.snapshots.length; i++)
+            TaskScheduler.execute(TaskScheduler.Stage.CPU, TaskScheduler.Priority.USER, chunks);
+        chunks.run();
+        chunks.await();
+
+        for (AircraftSnapshot chunk : chunks.snapshots)
+            updated.appendProjectedRows(chunk);
+
+        return recordStarts[recordCount];
+    }
+
+    /**
+     * Finds where every element of an array starts by scanning the raw bytes, without decoding anything.
+     * @param body The data holding the array.
+     * @param arrayStart The offset of the opening bracket.
+     * @return Returns the offsets of the elements, followed by the offset of the closing bracket.
+     */
+    private static int[] findRecordStarts(byte[] body, int arrayStart)
+    {
+        int[] starts = new int[256];
+        int count = 0;
+
+        int depth = 0;
+        boolean inString = false;
+        for (int i = arrayStart; i < body.length; i++)
+        {
+            byte c = body[i];
+            if (inString)
+            {
+                if (c == '\\')
+                    i++;
+                else if (c == '"')
+                    inString = false;
+            }
+            else if (c == '"')
+            {
+                inString = true;
+            }
+            else if (c == '{' || c == '[')
+            {
+                if (depth == 1)
+                {
+                    if (count == starts.length - 1)
+                        starts = Arrays.copyOf(starts, starts.length * 2);
+                    starts[count++] = i;
+                }
+                depth++;
+            }
+            else if (c == '}' || c == ']')
+            {
+                depth--;
+                if (depth == 0)
+                {
+                    starts[count] = i;
+                    return Arrays.copyOf(starts, count + 1);
+                }
+            }
+        }
+
+        throw new RuntimeException("Malformed JSON: Unterminated aircraft list");
+    }
+
+    /**
+     * The chunks of a large list, decoded by every thread that runs it until none are left.
+     */
+    class ProjectionChunks implements Runnable
+    {
+        final AircraftSnapshot[] snapshots;
+
+        private byte[] body;
+        private int[] recordStarts;
+        private CancellationSignal cancellationSignal;
+
+        private final AtomicInteger nextChunk = new AtomicInteger();
+        private final CountDownLatch doneChunks;
+        private volatile Throwable error;
+
+        /**
+         * Constructor getting the records to decode.
+         * @param body The whole response body.
+         * @param recordStarts The offsets of the records, followed by the end of the list.
+         * @param cancellationSignal The signal to stop decoding with, or null.
+         */
+        public ProjectionChunks(byte[] body, int[] recordStarts, CancellationSignal cancellationSignal)
+        {
+            this.body = body;
+            this.recordStarts = recordStarts;
+            this.cancellationSignal = cancellationSignal;
+
+            this.snapshots = new AircraftSnapshot[(recordStarts.length - 1 + CHUNK_RECORDS - 1) / CHUNK_RECORDS];
+            this.doneChunks = new CountDownLatch(snapshots.length);
+        }
+
+        @Override
+        public void run()
+        {
+            int chunk;
+            while ((chunk = nextChunk.getAndIncrement()) < snapshots.length)
+            {
+                try
+                {
+                    // After an error the rest of the chunks are only counted
+                    if (error == null)
+                        snapshots[chunk] = decodeChunk(chunk);
+                }
+                catch (Throwable e)
+                {
+                    // Errors as well, e.g. OutOfMemoryError, so that no chunk is left missing silently
+                    error = e;
+                }
+                finally
+                {
+                    doneChunks.countDown();
+                }
+            }
+        }
+
+        /**
+         * Waits until all the chunks are decoded.
+         * @throws RuntimeException The exception a chunk failed with, e.g. OperationCanceledException.
+         * @throws Error The error a chunk failed with, e.g. OutOfMemoryError.
+         */
+        public void await()
+        {
+            boolean isInterrupted = false;
+            while (true)
+            {
+                try
+                {
+                    doneChunks.await();
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    // The chunks are short, and this thread takes part in decoding them
+                    isInterrupted = true;
+                }
+            }
+
+            if (isInterrupted)
+                Thread.currentThread().interrupt();
+
+            if (error instanceof RuntimeException)
+                throw (RuntimeException)error;
+            if (error instanceof Error)
+                throw (Error)error;
+        }
+
+        /**
+         * Decodes the records of a single chunk.
+         * @param chunk The index of the chunk.
+         * @return Returns the snapshot of the chunk.
+         */
+        private AircraftSnapshot decodeChunk(int chunk)
+        {
+            int from = chunk * CHUNK_RECORDS;
+            int to = Math.min(from + CHUNK_RECORDS, recordStarts.length - 1);
+
+            JsonPullParser parser = new JsonPullParser(body, recordStarts[from], recordStarts[to] - recordStarts[from]);
+            AircraftRecord record = new AircraftRecord();
+            AircraftSnapshot snapshot = new AircraftSnapshot(null, to - from);
+
+            try
+            {
+                for (int i = from; i < to; i++)
+                {
+                    throwIfCanceled(cancellationSignal);
+
+                    int offset = parser.getPosition();
+                    decodeRecord(parser, record, PROJECTION_FIELDS);
+                    snapshot.appendProjected(record, offset);
+                }
+            }
+            catch (IOException e)
+            {
+                // The body is already in memory
+                throw new RuntimeException(e);
+            }
+
+            return snapshot;
+        }
+    }
+
+    /**
+     * Second pass of a projected decode: fully decodes a single record.
+     * @param body The response body the first pass was done on.
+     * @param offset The offset of the record in the body.
+     * @param record The record to fill.
+     * @throws IOException
+     */
+    void decodeRecordAt(byte[] body, int offset, AircraftRecord record) throws IOException
+    {
+        decodeRecord(new JsonPullParser(body, offset, body.length - offset), record, ALL_FIELDS);
+    }
+
+    /**
+     * Finds where a record ends, by its brackets and without decoding it.
+     * @param body The whole response body.
+     * @param offset The offset of the opening bracket of the record.
+     * @return Returns the offset after the closing bracket of the record.
+     */
+    static int findRecordEnd(byte[] body, int offset)
+    {
+        int depth = 0;
+        boolean inString = false;
+        for (int i = offset; i < body.length; i++)
+        {
+            byte c = body[i];
+            if (inString)
+            {
+                if (c == '\\')
+                    i++;
+                else if (c == '"')
+                    inString = false;
+            }
+            else if (c == '"')
+            {
+                inString = true;
+            }
+            else if (c == '{' || c == '[')
+            {
+                depth++;
+            }
+            else if (c == '}' || c == ']')
+            {
+                if (--depth == 0)
+                    return i + 1;
+            }
+        }
+
+        throw new RuntimeException("Malformed JSON: Unterminated aircraft record");
+    }
+
+    private static void throwIfCanceled(CancellationSignal cancellationSignal)
+    {
+        if (cancellationSignal != null)
+            cancellationSignal.throwIfCanceled();
+    }
+
+    /**
+     * Reads a response body using a pooled buffer, stopping once it is longer than a limit.
+     * @param inputStream The stream of the response body.
+     * @param limit The largest body to read whole.
+     * @return Returns the whole body, or its first bytes if it is longer than limit.
+     *         The result is longer than limit only in the latter case.
+     * @throws IOException
+     */
+    private byte[] readBody(InputStream inputStream, int limit) throws IOException
+    {
+        byte[] chunk = bufferPool.acquire();
+        try
+        {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(chunk.length);
+
+            int count;
+            while (outputStream.size() <= limit && (count = inputStream.read(chunk)) != -1)
+                outputStream.write(chunk, 0, count);
+
+            return outputStream.toByteArray();
+        }
+        finally
+        {
+            bufferPool.release(chunk);
+        }
+    }
+
+    /**
+     * Decodes some of the fields of a single aircraft object into a record.
+     * @param parser The parser positioned at the beginning of the object.
+     * @param record The record to fill. It is reset before decoding.
+     * @param fields Bitmask of the AircraftRecord.FIELD_* to decode, the others are skipped.
+     * @throws IOException
+     */
+    private void decodeRecord(JsonPullParser parser, AircraftRecord record, int fields) throws IOException
+    {
+        record.reset();
+
+        parser.beginObject();
+        while (parser.hasNext())
+        {
+            int field = parser.nextName(AIRCRAFT_FIELDS);
+            if (field == -1 || (fields & (1 << field)) == 0)
+            {
+                parser.skipValue();
+                continue;
+            }
+
+            record.markPresent(field);
+
+            // Nulls keep the defaults
+            if (parser.peek() == JsonPullParser.TOKEN_NULL)
+            {
+                parser.skipValue();
+                continue;
+            }
+
+            switch (field)
+            {
+                case AircraftRecord.FIELD_ID:
+                    record.id = parser.nextInt();
+                    break;
+                case AircraftRecord.FIELD_ICAO:
+                    record.icao = parser.nextString(stringPool);
+                    break;
+                case AircraftRecord.FIELD_REGISTRATION:
+                    record.registration = parser.nextString(stringPool);
+                    break;
+                case AircraftRecord.FIELD_CALLSIGN:
+                    record.callsign = parser.nextString(stringPool);
+                    break;
+                case AircraftRecord.FIELD_LATITUDE:
+                    record.latitude = parser.nextDouble();
+                    break;
+                case AircraftRecord.FIELD_LONGITUDE:
+                    record.longitude = parser.nextDouble();
+                    break;
+                case AircraftRecord.FIELD_VELOCITY:
+                    record.velocity = parser.nextDouble();
+                    break;
+                case AircraftRecord.FIELD_HEADING:
+                    record.heading = parser.nextDouble();
+                    break;
+                case AircraftRecord.FIELD_MODEL:
+                    record.model = parser.nextString(stringPool);
+                    break;
+                case AircraftRecord.FIELD_MANUFACTURER:
+                    record.manufacturer = parser.nextString(stringPool);
+                    break;
+                case AircraftRecord.FIELD_SRC_AIRPORT:
+                    record.srcAirport = parser.nextString(stringPool);
+                    break;
+                case AircraftRecord.FIELD_DEST_AIRPORT:
+                    record.destAirport = parser.nextString(stringPool);
+                    break;
+                case AircraftRecord.FIELD_OPERATOR:
+                    record.operator = parser.nextString(stringPool);
+                    break;
+                case AircraftRecord.FIELD_DISTANCE:
+                    record.distance = parser.nextDouble();
+                    break;
+                case AircraftRecord.FIELD_ORIGIN_COUNTRY:
+                    record.originCountry = parser.nextString(stringPool);
+                    break;
+                case AircraftRecord.FIELD_ON_GROUND:
+                    record.isOnGround = parser.nextBoolean();
+                    break;
+                case AircraftRecord.FIELD_STOPS:
+                    decodeStops(parser, record);
+                    break;
+            }
+        }
+        parser.endObject();
+    }
+
+    /**
+     * Decodes the array of intermediate stops of an aircraft.
+     * @param parser The parser positioned at the stops value.
+     * @param record The record to add the stops to.
+     * @throws IOException
+     */
+    private void decodeStops(JsonPullParser parser, AircraftRecord record) throws IOException
+    {
+        if (parser.peek() != JsonPullParser.TOKEN_BEGIN_ARRAY)
+        {
+            parser.skipValue();
+            return;
+        }
+
+        record.hasStops = true;
+
+        parser.beginArray();
+        while (parser.hasNext())
+        {
+            if (parser.peek() == JsonPullParser.TOKEN_STRING)
+                record.stops.add(parser.nextString(stringPool));
+            else
+                parser.skipValue();
+        }
+        parser.endArray();
+    }
+}
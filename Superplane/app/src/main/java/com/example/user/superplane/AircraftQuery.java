@@ -0,0 +1,156 @@
+package com.example.user.superplane;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+
+/**
+ * An aircraft search: the area around a location plus the filters the server should apply.
+ * Built with AircraftQuery.Builder and never changed afterwards.
+ */
+public class AircraftQuery
+{
+    private final double latitude;
+    private final double longitude;
+    private final double radius;
+    private final ArrayList<AircraftFilter> filterList;
+    private final String filters;
+
+    private AircraftQuery(Builder builder)
+    {
+        this.latitude = builder.latitude;
+        this.longitude = builder.longitude;
+        this.radius = builder.radius;
+        this.filterList = new ArrayList<>(builder.filters);
+
+        StringBuilder filters = new StringBuilder();
+        for (int i = 0; i < filterList.size(); i++)
+            filterList.get(i).appendTo(filters);
+
+        this.filters = filters.toString();
+    }
+
+    public double getLatitude()
+    {
+        return latitude;
+    }
+
+    public double getLongitude()
+    {
+        return longitude;
+    }
+
+    /**
+     * Getter for the radius of the searched area.
+     * @return Returns the radius in kilometers.
+     */
+    public double getRadius()
+    {
+        return radius;
+    }
+
+    /**
+     * Getter for the filters of the query in their URL form.
+     * Two queries with the same filters in the same order return equal strings.
+     * @return Returns the URL parameters of the filters, each starting with '&'.
+     */
+    public String getFilters()
+    {
+        return filters;
+    }
+
+    /**
+     * Builds the URL of the query.
+     * @param apiUrl The URL of the AircraftList.json endpoint.
+     * @return Returns the URL.
+     */
+    public String buildUrl(String apiUrl)
+    {
+        return apiUrl + "?lat=" + encodeParameter(String.valueOf(latitude)) + "&lng=" + encodeParameter(String.valueOf(longitude)) +
+                "&fDstL=0&fDstU=" + encodeParameter(String.valueOf(radius)) + filters;
+    }
+
+    /**
+     * Encodes the value of a URL parameter as UTF-8, whatever the charset of the platform is.
+     * @param value The value.
+     * @return Returns the encoded value.
+     */
+    static String encodeParameter(String value)
+    {
+        try
+        {
+            return URLEncoder.encode(value, "UTF-8");
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            // Every platform supports UTF-8
+            throw new RuntimeException("UTF-8 is not supported!");
+        }
+    }
+
+    /**
+     * Builder for AircraftQuery.
+     */
+    public static class Builder
+    {
+        private double latitude;
+        private double longitude;
+        private double radius;
+        private ArrayList<AircraftFilter> filters;
+
+        /**
+         * Constructor getting the searched area.
+         * @param latitude The latitude of the center of the area.
+         * @param longitude The longitude of the center of the area.
+         * @param radius The radius of the area in kilometers.
+         */
+        public Builder(double latitude, double longitude, double radius)
+        {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.radius = radius;
+            this.filters = new ArrayList<>();
+        }
+
+        /**
+         * Constructor starting from an existing query, to change its area while keeping its filters.
+         * @param query The query to copy.
+         */
+        public Builder(AircraftQuery query)
+        {
+            this(query.latitude, query.longitude, query.radius);
+            this.filters.addAll(query.filterList);
+        }
+
+        /**
+         * Sets the searched area.
+         * @param latitude The latitude of the center of the area.
+         * @param longitude The longitude of the center of the area.
+         * @param radius The radius of the area in kilometers.
+         * @return Returns the builder.
+         */
+        public Builder setArea(double latitude, double longitude, double radius)
+        {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.radius = radius;
+            return this;
+        }
+
+        /**
+         * Adds a filter for the server to apply.
+         * @param filter The filter.
+         * @return Returns the builder.
+         */
+        public Builder addFilter(AircraftFilter filter)
+        {
+            filters.add(filter);
+            return this;
+        }
+
+        public AircraftQuery build()
+        {
+            return new AircraftQuery(this);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.example.user.superplane;
+
+import android.location.Location;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import java.util.HashMap;
+
+/**
+ * Sits in front of ADSBExchangeManager and makes concurrent searches of the same area share
+ * a single download. The first caller for an area starts the query on the network stage, and it and
+ * any caller asking for the same (rounded) location and radius meanwhile wait for it and get the same snapshot.
+ * Every caller stops waiting as soon as it cancels, and the download is canceled once all of them did.
+ */
+public class AircraftQueryCoalescer
+{
+    // About 100 meters, the same grid the incremental queries are rounded to
+    private static final double GRID_DEGREES = 0.001;
+
+    private static AircraftQueryCoalescer sharedCoalescer;
+
+    private ADSBExchangeManager apiManager;
+    private final HashMap<QueryKey, InFlightQuery> inFlightQueries;
+
+    /**
+     * Getter for the coalescer shared by the whole app, so that the activity, the widget and
+     * any background refresh are coalesced with each other.
+     * @return Returns the shared coalescer.
+     */
+    public static synchronized AircraftQueryCoalescer getShared()
+    {
+        if (sharedCoalescer == null)
+            sharedCoalescer = new AircraftQueryCoalescer(new ADSBExchangeManager());
+
+        return sharedCoalescer;
+    }
+
+    /**
+     * Constructor getting the manager to send the queries with.
+     * @param apiManager The ADSBExchange manager.
+     */
+    public AircraftQueryCoalescer(ADSBExchangeManager apiManager)
+    {
+        this.apiManager = apiManager;
+        this.inFlightQueries = new HashMap<>();
+    }
+
+    /**
+     * Finds all the aircraft in the specified range, joining an identical query if one is in flight.
+     * Blocks until the result is available.
+     * @param location The location around to search.
+     * @param radius The distance with which to search from the specified location.
+     * @return Returns the snapshot of the aircraft, shared with the other callers.
+     * @throws NoInternetException
+     */
+    public AircraftSnapshot getAircraftInRange(Location location, double radius) throws NoInternetException
+    {
+        return getAircraft(new AircraftQuery.Builder(location.getLatitude(), location.getLongitude(), radius).build());
+    }
+
+    /**
+     * Finds all the aircraft matching a query, joining an identical query if one is in flight.
+     * Blocks until the result is available.
+     * @param aircraftQuery The query.
+     * @return Returns the snapshot of the aircraft, shared with the other callers.
+     * @throws NoInternetException
+     */
+    public AircraftSnapshot getAircraft(AircraftQuery aircraftQuery) throws NoInternetException
+    {
+        return getAircraft(aircraftQuery, null);
+    }
+
+    /**
+     * Finds all the aircraft matching a query, like getAircraft(AircraftQuery), but stops waiting
+     * as soon as the caller cancels. The download itself is canceled once every caller sharing it canceled.
+     * @param aircraftQuery The query.
+     * @param cancellationSignal The signal to cancel the search with, or null.
+     * @return Returns the snapshot of the aircraft, shared with the other callers.
+     * @throws NoInternetException
+     * @throws OperationCanceledException If the search was canceled.
+     */
+    public AircraftSnapshot getAircraft(AircraftQuery aircraftQuery, CancellationSignal cancellationSignal) throws NoInternetException
+    {
+        final QueryKey key = new QueryKey(aircraftQuery);
+
+        final InFlightQuery query;
+        boolean isOwner = false;
+        synchronized (inFlightQueries)
+        {
+            InFlightQuery existingQuery = inFlightQueries.get(key);
+            if (existingQuery == null)
+            {
+                existingQuery = new InFlightQuery();
+                inFlightQueries.put(key, existingQuery);
+                isOwner = true;
+            }
+
+            query = existingQuery;
+            query.waiters++;
+        }
+
+        if (cancellationSignal != null)
+        {
+            cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel()
+                {
+                    leave(key, query);
+                }
+            });
+        }
+
+        try
+        {
+            if (isOwner)
+                startQuery(key, query, aircraftQuery);
+
+            return query.await(cancellationSignal);
+        }
+        finally
+        {
+            if (cancellationSignal != null)
+                cancellationSignal.setOnCancelListener(null);
+        }
+    }
+
+    /**
+     * Starts performing a query on the network stage, so that the caller waits for it like everyone else
+     * and can stop waiting when it cancels.
+     * A caller that is itself a network task performs the query on its own thread instead, since waiting for
+     * another task of its pool could wait forever once every thread of the pool waits. Such a caller only
+     * returns early when canceling cancels the download, i.e. when no other caller shares it.
+     * @param key The key the query is registered under.
+     * @param query The in-flight query.
+     * @param aircraftQuery The query to send.
+     */
+    private void startQuery(final QueryKey key, final InFlightQuery query, final AircraftQuery aircraftQuery)
+    {
+        if (TaskScheduler.isStageThread(TaskScheduler.Stage.NETWORK))
+        {
+            runQuery(key, query, aircraftQuery);
+            return;
+        }
+
+        TaskScheduler.execute(TaskScheduler.Stage.NETWORK, TaskScheduler.Priority.USER, new Runnable() {
+            @Override
+            public void run()
+            {
+                runQuery(key, query, aircraftQuery);
+            }
+        });
+    }
+
+    /**
+     * Performs a query and publishes its outcome to everyone waiting for it.
+     * @param key The key the query is registered under.
+     * @param query The in-flight query.
+     * @param aircraftQuery The query to send.
+     */
+    private void runQuery(QueryKey key, InFlightQuery query, AircraftQuery aircraftQuery)
+    {
+        try
+        {
+            AircraftSnapshot aircraft = apiManager.refreshAircraftList(aircraftQuery, query.cancellationSignal);
+            query.complete(aircraft, null, null);
+        }
+        catch (NoInternetException e)
+        {
+            query.complete(null, e, null);
+        }
+        catch (RuntimeException e)
+        {
+            query.complete(null, null, e);
+        }
+        catch (Error e)
+        {
+            // The waiting callers would otherwise wait forever
+            query.complete(null, null, new RuntimeException("Aircraft query failed!", e));
+            throw e;
+        }
+        finally
+        {
+            // Later callers start a new query instead of getting this result
+            synchronized (inFlightQueries)
+            {
+                if (inFlightQueries.get(key) == query)
+                    inFlightQueries.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Called when a caller of a query cancels. Cancels the query once nobody waits for it anymore.
+     * @param key The key the query is registered under.
+     * @param query The in-flight query.
+     */
+    private void leave(QueryKey key, InFlightQuery query)
+    {
+        boolean isAbandoned;
+        synchronized (inFlightQueries)
+        {
+            isAbandoned = --query.waiters == 0;
+
+            // Callers that come after this start a query of their own
+            if (isAbandoned && inFlightQueries.get(key) == query)
+                inFlightQueries.remove(key);
+        }
+
+        if (isAbandoned)
+            query.cancellationSignal.cancel();
+
+        query.wakeWaiters();
+    }
+
+    /**
+     * Identifies the area and the filters of a query, rounded so that nearby locations share a query.
+     */
+    static class QueryKey
+    {
+        private final long latitudeCell;
+        private final long longitudeCell;
+        private final long radiusBits;
+        private final String filters;
+
+        public QueryKey(AircraftQuery query)
+        {
+            this.latitudeCell = Math.round(query.getLatitude() / GRID_DEGREES);
+            this.longitudeCell = Math.round(query.getLongitude() / GRID_DEGREES);
+            this.radiusBits = Double.doubleToLongBits(query.getRadius());
+            this.filters = query.getFilters();
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof QueryKey))
+                return false;
+
+            QueryKey other = (QueryKey)o;
+            return latitudeCell == other.latitudeCell && longitudeCell == other.longitudeCell && radiusBits == other.radiusBits &&
+                    filters.equals(other.filters);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            long hash = latitudeCell * 31 + longitudeCell;
+            hash = hash * 31 + radiusBits;
+            hash = hash * 31 + filters.hashCode();
+            return (int)(hash ^ (hash >>> 32));
+        }
+    }
+
+    /**
+     * A query that is being performed, holding its outcome once it is done.
+     */
+    static class InFlightQuery
+    {
+        final CancellationSignal cancellationSignal = new CancellationSignal();
+
+        // The amount of callers that didn't cancel, guarded by the lock of the in-flight queries
+        int waiters;
+
+        private boolean isDone;
+        private AircraftSnapshot result;
+        private NoInternetException internetError;
+        private RuntimeException error;
+
+        /**
+         * Publishes the outcome of the query and releases the waiting callers.
+         * @param result The result, or null if the query failed.
+         * @param internetError The internet error, or null.
+         * @param error Any other error, or null.
+         */
+        public synchronized void complete(AircraftSnapshot result, NoInternetException internetError, RuntimeException error)
+        {
+            this.result = result;
+            this.internetError = internetError;
+            this.error = error;
+            this.isDone = true;
+            notifyAll();
+        }
+
+        /**
+         * Wakes the waiting callers so that the ones that canceled can return.
+         */
+        public synchronized void wakeWaiters()
+        {
+            notifyAll();
+        }
+
+        /**
+         * Waits for the query to be done or for the caller to cancel.
+         * @param cancellationSignal The signal of the caller, or null.
+         * @return Returns the result of the query.
+         * @throws NoInternetException
+         * @throws OperationCanceledException If the caller canceled.
+         */
+        public synchronized AircraftSnapshot await(CancellationSignal cancellationSignal) throws NoInternetException
+        {
+            try
+            {
+                while (!isDone && (cancellationSignal == null || !cancellationSignal.isCanceled()))
+                    wait();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for a shared aircraft query!");
+            }
+
+            if (cancellationSignal != null)
+                cancellationSignal.throwIfCanceled();
+
+            if (internetError != null)
+                throw internetError;
+            if (error != null)
+                throw error;
+
+            return result;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.user.superplane;
+
+import java.util.ArrayList;
+
+/**
+ * A mutable scratch holder for the fields of a single aircraft while it is being decoded.
+ * One instance is reused for every record, so decoding allocates only the final Aircraft.
+ */
+public class AircraftRecord
+{
+    public static final int FIELD_ID = 0;
+    public static final int FIELD_ICAO = 1;
+    public static final int FIELD_REGISTRATION = 2;
+    public static final int FIELD_CALLSIGN = 3;
+    public static final int FIELD_LATITUDE = 4;
+    public static final int FIELD_LONGITUDE = 5;
+    public static final int FIELD_VELOCITY = 6;
+    public static final int FIELD_HEADING = 7;
+    public static final int FIELD_MODEL = 8;
+    public static final int FIELD_MANUFACTURER = 9;
+    public static final int FIELD_SRC_AIRPORT = 10;
+    public static final int FIELD_DEST_AIRPORT = 11;
+    public static final int FIELD_OPERATOR = 12;
+    public static final int FIELD_DISTANCE = 13;
+    public static final int FIELD_ORIGIN_COUNTRY = 14;
+    public static final int FIELD_ON_GROUND = 15;
+    public static final int FIELD_STOPS = 16;
+
+    // Bit mask of the fields that were present in the decoded record
+    public int presentFields;
+
+    public int id;
+    public String icao;
+    public String registration;
+    public String callsign;
+    public double latitude;
+    public double longitude;
+    public double velocity;
+    public double heading;
+    public String model;
+    public String manufacturer;
+    public String srcAirport;
+    public String destAirport;
+    public ArrayList<String> stops = new ArrayList<>();
+    public boolean hasStops;
+    public String operator;
+    public double distance;
+    public String originCountry;
+    public boolean isOnGround;
+
+    public AircraftRecord()
+    {
+        reset();
+    }
+
+    /**
+     * Resets all the fields to their defaults, used when a field is missing from a record.
+     */
+    public void reset()
+    {
+        presentFields = 0;
+        id = 0;
+        icao = null;
+        registration = null;
+        callsign = null;
+        latitude = 0.0;
+        longitude = 0.0;
+        velocity = 0.0;
+        heading = 0.0;
+        model = null;
+        manufacturer = null;
+        srcAirport = null;
+        destAirport = null;
+        stops.clear();
+        hasStops = false;
+        operator = null;
+        distance = -1.0;
+        originCountry = null;
+        isOnGround = false;
+    }
+
+    /**
+     * Marks a field as present in the record.
+     * @param field One of the FIELD_* constants.
+     */
+    public void markPresent(int field)
+    {
+        presentFields |= 1 << field;
+    }
+
+    /**
+     * Checks whether a field was present in the record.
+     * @param field One of the FIELD_* constants.
+     * @return Returns whether the field was present.
+     */
+    public boolean isPresent(int field)
+    {
+        return (presentFields & (1 << field)) != 0;
+    }
+
+    /**
+     * Creates an immutable aircraft instance from the current fields.
+     * @return Returns the aircraft.
+     */
+    public Aircraft toAircraft()
+    {
+        String[] stopsArray = hasStops ? stops.toArray(new String[stops.size()]) : null;
+
+        return new Aircraft(id, icao, registration, callsign, latitude, longitude,
+                velocity, heading, model, manufacturer, srcAirport, destAirport, stopsArray,
+                operator, distance, originCountry, isOnGround);
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.user.superplane;
+
+import android.util.SparseArray;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps one Aircraft instance per tracked airframe, keyed by its Id, across the polls of a continuous refresh.
+ * Every update changes the existing instances in place, takes new instances from a pool of the expired ones,
+ * and expires the aircraft that were not seen for a while. The listeners get only what was added, changed
+ * and removed, so in steady state an update allocates nothing and the UI rebinds only the changed aircraft.
+ * Every tracked aircraft has a PositionPredictor, so the position of any of them can be shown between updates.
+ * An update can run on a background thread and its changes be sent to the listeners on the UI thread afterwards.
+ * Not thread safe: the calls must not overlap, e.g. the next update starts only after the listeners were notified.
+ */
+public class AircraftRegistry
+{
+    private static final int MAX_POOL_SIZE = 64;
+
+    private final long expiryTime;
+
+    private final SparseArray<TrackedAircraft> trackedAircraft = new SparseArray<>();
+    private final ArrayDeque<TrackedAircraft> pool = new ArrayDeque<>();
+
+    private final CopyOnWriteArrayList<AircraftRegistryListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Reused by every update
+    private final ArrayList<Aircraft> added = new ArrayList<>();
+    private final ArrayList<Aircraft> changed = new ArrayList<>();
+    private final ArrayList<Aircraft> removed = new ArrayList<>();
+    private final ArrayList<TrackedAircraft> moved = new ArrayList<>();
+    private final ArrayList<TrackedAircraft> expired = new ArrayList<>();
+
+    // The aircraft with a prediction, changed only on the thread of the listeners so that it can predict during an update
+    private final SparseArray<TrackedAircraft> predictedAircraft = new SparseArray<>();
+    private final double[] position = new double[2];
+
+    /**
+     * Constructor getting how long an aircraft is kept after it was last seen.
+     * @param expiryTime The time to keep unseen aircraft, in milliseconds.
+     */
+    public AircraftRegistry(long expiryTime)
+    {
+        this.expiryTime = expiryTime;
+    }
+
+    /**
+     * Adds a listener for the changes of the updates.
+     * @param listener The listener.
+     */
+    public void addListener(AircraftRegistryListener listener)
+    {
+        listeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Removes a listener of the changes.
+     * @param listener The listener.
+     */
+    public void removeListener(AircraftRegistryListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Gets a tracked aircraft.
+     * @param id The Id of the aircraft.
+     * @return Returns the aircraft, updated in place by every update, or null if it isn't tracked.
+     */
+    public Aircraft get(int id)
+    {
+        TrackedAircraft tracked = trackedAircraft.get(id);
+
+        return tracked == null ? null : tracked.aircraft;
+    }
+
+    /**
+     * Getter for the amount of tracked aircraft.
+     * @return Returns the amount of aircraft.
+     */
+    public int size()
+    {
+        return trackedAircraft.size();
+    }
+
+    /**
+     * Updates the registry with the aircraft of a poll. The listeners are notified of the changes,
+     * and the predictions get the new fixes, by notifyListeners on the thread they expect.
+     * @param snapshot The aircraft of the poll.
+     * @param time The time of the poll, as SystemClock.elapsedRealtime.
+     * @return Returns whether any aircraft was added, changed or removed.
+     */
+    public boolean update(AircraftSnapshot snapshot, long time)
+    {
+        // The aircraft removed by the last update are recycled only after the listeners were done with them
+        for (int i = 0; i < expired.size(); i++)
+            recycle(expired.get(i));
+        expired.clear();
+
+        added.clear();
+        changed.clear();
+        removed.clear();
+        moved.clear();
+
+        int size = snapshot.size();
+        for (int row = 0; row < size; row++)
+        {
+            int id = snapshot.getId(row);
+
+            TrackedAircraft tracked = trackedAircraft.get(id);
+            if (tracked == null)
+            {
+                tracked = obtain();
+                tracked.aircraft.updateFrom(snapshot, row);
+                trackedAircraft.put(id, tracked);
+                added.add(tracked.aircraft);
+
+                tracked.isNew = true;
+                moved.add(tracked);
+            }
+            else
+            {
+                Aircraft aircraft = tracked.aircraft;
+                double latitude = aircraft.getLatitude();
+                double longitude = aircraft.getLongitude();
+                double velocity = aircraft.getVelocity();
+                double heading = aircraft.getHeading();
+
+                if (aircraft.updateTrackedFrom(snapshot, row))
+                {
+                    changed.add(aircraft);
+
+                    // A fix that didn't move isn't new, and setting it again would restart the prediction from the past
+                    if (latitude != aircraft.getLatitude() || longitude != aircraft.getLongitude() ||
+                            velocity != aircraft.getVelocity() || heading != aircraft.getHeading())
+                        moved.add(tracked);
+                }
+            }
+
+            tracked.lastSeen = time;
+        }
+
+        // Backwards, so that removing doesn't move the entries still to be checked
+        for (int i = trackedAircraft.size() - 1; i >= 0; i--)
+        {
+            TrackedAircraft tracked = trackedAircraft.valueAt(i);
+            if (time - tracked.lastSeen > expiryTime)
+            {
+                trackedAircraft.removeAt(i);
+                removed.add(tracked.aircraft);
+                expired.add(tracked);
+            }
+        }
+
+        return !added.isEmpty() || !changed.isEmpty() || !removed.isEmpty();
+    }
+
+    /**
+     * Sets the fixes of the last update to the predictions, and notifies the listeners of the changes if there were any.
+     */
+    public void notifyListeners()
+    {
+        if (added.isEmpty() && changed.isEmpty() && removed.isEmpty())
+            return;
+
+        for (int i = 0; i < expired.size(); i++)
+            predictedAircraft.remove(expired.get(i).aircraft.getId());
+
+        for (int i = 0; i < moved.size(); i++)
+        {
+            TrackedAircraft tracked = moved.get(i);
+            Aircraft aircraft = tracked.aircraft;
+
+            // A recycled instance still has the prediction of another aircraft
+            if (tracked.isNew)
+            {
+                tracked.predictor.reset();
+                tracked.isNew = false;
+            }
+
+            tracked.predictor.setFix(aircraft.getLatitude(), aircraft.getLongitude(), aircraft.getVelocity(),
+                    aircraft.getHeading(), tracked.lastSeen, position);
+            predictedAircraft.put(aircraft.getId(), tracked);
+        }
+
+        for (AircraftRegistryListener listener : listeners)
+            listener.aircraftChanged(added, changed, removed);
+    }
+
+    /**
+     * Predicts the position of a tracked aircraft from the fixes set by notifyListeners.
+     * Must be called from the thread of the listeners, but may be called during an update.
+     * @param id The Id of the aircraft.
+     * @param time The time to predict for, as SystemClock.elapsedRealtime.
+     * @param position Array of 2 to write the latitude and the longitude to.
+     * @return Returns whether the aircraft has a prediction.
+     */
+    public boolean predict(int id, long time, double[] position)
+    {
+        TrackedAircraft tracked = predictedAircraft.get(id);
+        if (tracked == null)
+            return false;
+
+        tracked.predictor.predict(time, position);
+        return true;
+    }
+
+    /**
+     * Stops tracking all the aircraft, without notifying the listeners.
+     */
+    public void clear()
+    {
+        added.clear();
+        changed.clear();
+        removed.clear();
+        moved.clear();
+        predictedAircraft.clear();
+
+        for (int i = 0; i < trackedAircraft.size(); i++)
+            recycle(trackedAircraft.valueAt(i));
+
+        trackedAircraft.clear();
+    }
+
+    private TrackedAircraft obtain()
+    {
+        TrackedAircraft tracked = pool.poll();
+
+        return tracked != null ? tracked : new TrackedAircraft();
+    }
+
+    private void recycle(TrackedAircraft tracked)
+    {
+        if (pool.size() < MAX_POOL_SIZE)
+            pool.push(tracked);
+    }
+
+    /**
+     * An aircraft with the time it was last seen and the prediction of its position.
+     */
+    static class TrackedAircraft
+    {
+        final Aircraft aircraft = new Aircraft();
+        final PositionPredictor predictor = new PositionPredictor();
+        long lastSeen;
+
+        // Set by the update that added the aircraft, until its first fix is set
+        boolean isNew;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.user.superplane;
+
+import java.util.ArrayList;
+
+/**
+ * Listener for the changes of the aircraft in an AircraftRegistry.
+ */
+public abstract class AircraftRegistryListener
+{
+    /**
+     * Callback for the changes of an update. The lists and the removed aircraft are reused
+     * by the registry after the callback returns, so they must not be kept.
+     * @param added The aircraft that were seen for the first time.
+     * @param changed The aircraft that were updated in place and have a changed attribute.
+     * @param removed The aircraft that were not seen for too long.
+     */
+    public abstract void aircraftChanged(ArrayList<Aircraft> added, ArrayList<Aircraft> changed, ArrayList<Aircraft> removed);
+}
@@ -0,0 +1,375 @@
+package com.example.user.superplane;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.CancellationSignal;
+import android.os.SystemClock;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches query results in front of AircraftQueryCoalescer, keyed by the geohash cell of the
+ * searched location, the radius and the filters.
+ * Fresh results are served at once, stale but usable results are served at once and refreshed
+ * in the background, and older results are downloaded again.
+ * The least recently used results are evicted when the cache goes over its memory budget.
+ */
+public class AircraftResponseCache
+{
+    // Precision 7 cells are about 150 meters wide
+    private static final int GEOHASH_PRECISION = 7;
+    private static final String GEOHASH_ALPHABET = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    private static final long DEFAULT_FRESH_TIME = 15 * 1000;
+    private static final long DEFAULT_STALE_TIME = 60 * 1000;
+    private static final long DEFAULT_MEMORY_BUDGET = 4 * 1024 * 1024;
+
+    private static final String DISK_CACHE_DIRECTORY = "aircraft_cache";
+    private static final long DEFAULT_DISK_BUDGET = 2 * 1024 * 1024;
+
+    private static AircraftResponseCache sharedCache;
+
+    private AircraftQueryCoalescer coalescer;
+    private AircraftDiskCache diskCache;
+
+    private long freshTime;
+    private long staleTime;
+    private long memoryBudget;
+
+    private final LinkedHashMap<String, CacheEntry> entries;
+    private long memoryUsed;
+
+    /**
+     * Getter for the cache shared by the whole app.
+     * @param context Any context of the app, to find the disk cache directory with.
+     * @return Returns the shared cache.
+     */
+    public static synchronized AircraftResponseCache getShared(Context context)
+    {
+        if (sharedCache == null)
+        {
+            File directory = new File(context.getApplicationContext().getCacheDir(), DISK_CACHE_DIRECTORY);
+            sharedCache = new AircraftResponseCache(AircraftQueryCoalescer.getShared(),
+                    new AircraftDiskCache(directory, DEFAULT_DISK_BUDGET),
+                    DEFAULT_FRESH_TIME, DEFAULT_STALE_TIME, DEFAULT_MEMORY_BUDGET);
+        }
+
+        return sharedCache;
+    }
+
+    /**
+     * Constructor getting the coalescer to send the queries with and the cache limits.
+     * @param coalescer The coalescer.
+     * @param diskCache The cache to keep the results in across restarts, or null.
+     * @param freshTime How long a result is served without refreshing it, in milliseconds.
+     * @param staleTime How long a result may be served at all, in milliseconds. Results older than
+     *                  freshTime but younger than this are refreshed in the background.
+     * @param memoryBudget The estimated amount of memory the cached results may take, in bytes.
+     */
+    public AircraftResponseCache(AircraftQueryCoalescer coalescer, AircraftDiskCache diskCache,
+                                 long freshTime, long staleTime, long memoryBudget)
+    {
+        this.coalescer = coalescer;
+        this.diskCache = diskCache;
+        this.freshTime = freshTime;
+        this.staleTime = staleTime;
+        this.memoryBudget = memoryBudget;
+
+        // Access order makes the iteration order least recently used first
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.memoryUsed = 0;
+    }
+
+    /**
+     * Finds all the aircraft matching a query, from the cache if possible.
+     * The result covers the whole geohash cell of the query, so it may hold aircraft
+     * a little farther than the radius of the query.
+     * @param query The query.
+     * @return Returns the snapshot of the aircraft.
+     * @throws NoInternetException
+     */
+    public AircraftSnapshot getAircraft(AircraftQuery query) throws NoInternetException
+    {
+        return getAircraft(query, null);
+    }
+
+    /**
+     * Finds all the aircraft matching a query, like getAircraft(AircraftQuery),
+     * but stops waiting for a download as soon as the search is canceled.
+     * @param query The query.
+     * @param cancellationSignal The signal to cancel the search with, or null.
+     * @return Returns the snapshot of the aircraft.
+     * @throws NoInternetException
+     * @throws android.os.OperationCanceledException If the search was canceled.
+     */
+    public AircraftSnapshot getAircraft(AircraftQuery query, CancellationSignal cancellationSignal) throws NoInternetException
+    {
+        double[] cell = new double[4];
+        String geohash = encodeGeohash(query.getLatitude(), query.getLongitude(), cell);
+        String key = geohash + "/" + query.getRadius() + query.getFilters();
+
+        long now = SystemClock.elapsedRealtime();
+        CacheEntry entry;
+        synchronized (entries)
+        {
+            entry = entries.get(key);
+        }
+
+        // After a restart the memory is empty, but the last results may still be on the disk
+        if (entry == null && diskCache != null)
+            entry = loadFromDisk(geohash, key, now);
+
+        boolean refresh = false;
+        synchronized (entries)
+        {
+            if (entry != null && now - entry.time > staleTime)
+            {
+                removeEntry(key);
+                entry = null;
+            }
+            else if (entry != null && now - entry.time > freshTime && !entry.isRefreshing)
+            {
+                entry.isRefreshing = true;
+                refresh = true;
+            }
+        }
+
+        final AircraftQuery cellQuery = buildCellQuery(query, cell);
+
+        if (entry == null)
+            return download(geohash, key, cellQuery, cancellationSignal);
+
+        if (refresh)
+        {
+            final String refreshGeohash = geohash;
+            final String refreshKey = key;
+            TaskScheduler.execute(TaskScheduler.Stage.NETWORK, TaskScheduler.Priority.BACKGROUND, new Runnable() {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        download(refreshGeohash, refreshKey, cellQuery, null);
+                    }
+                    catch (NoInternetException | RuntimeException e)
+                    {
+                        // The stale result stays until it expires, the next search will try again
+                        synchronized (entries)
+                        {
+                            CacheEntry staleEntry = entries.get(refreshKey);
+                            if (staleEntry != null)
+                                staleEntry.isRefreshing = false;
+                        }
+                    }
+                }
+            });
+        }
+
+        return entry.snapshot;
+    }
+
+    /**
+     * Empties the cache.
+     */
+    public void clear()
+    {
+        synchronized (entries)
+        {
+            entries.clear();
+            memoryUsed = 0;
+        }
+    }
+
+    /**
+     * Downloads the result of a query and caches it, in memory and on the disk.
+     * @param geohash The geohash cell of the query.
+     * @param key The key to cache the result under.
+     * @param cellQuery The query covering the whole cell.
+     * @param cancellationSignal The signal to cancel the download with, or null.
+     * @return Returns the result.
+     * @throws NoInternetException
+     */
+    private AircraftSnapshot download(final String geohash, final String key, AircraftQuery cellQuery,
+                                      CancellationSignal cancellationSignal) throws NoInternetException
+    {
+        final AircraftSnapshot snapshot = coalescer.getAircraft(cellQuery, cancellationSignal);
+
+        synchronized (entries)
+        {
+            putEntry(key, new CacheEntry(snapshot, SystemClock.elapsedRealtime()));
+        }
+
+        // The search doesn't wait for the file to be written
+        if (diskCache != null)
+        {
+            TaskScheduler.execute(TaskScheduler.Stage.DISK, TaskScheduler.Priority.BACKGROUND, new Runnable() {
+                @Override
+                public void run()
+                {
+                    diskCache.write(geohash, key, snapshot);
+                }
+            });
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Loads a result saved on the disk into the memory cache.
+     * @param geohash The geohash cell of the query.
+     * @param key The key of the result.
+     * @param now The current elapsed time.
+     * @return Returns the loaded entry, or null if there is no result young enough.
+     */
+    private CacheEntry loadFromDisk(String geohash, String key, long now)
+    {
+        AircraftDiskCache.Entry saved = diskCache.read(geohash, key);
+        if (saved == null)
+            return null;
+
+        long age = System.currentTimeMillis() - saved.savedTime;
+        if (age < 0 || age > staleTime)
+            return null;
+
+        CacheEntry entry = new CacheEntry(saved.snapshot, now - age);
+        synchronized (entries)
+        {
+            putEntry(key, entry);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Adds an entry to the cache and evicts the least recently used entries over the budget.
+     * Must hold the entries lock.
+     * @param key The key of the entry.
+     * @param entry The entry.
+     */
+    private void putEntry(String key, CacheEntry entry)
+    {
+        removeEntry(key);
+
+        entries.put(key, entry);
+        memoryUsed += entry.size;
+
+        // Always keep the entry just added
+        Iterator<Map.Entry<String, CacheEntry>> iterator = entries.entrySet().iterator();
+        while (memoryUsed > memoryBudget && entries.size() > 1)
+        {
+            Map.Entry<String, CacheEntry> oldest = iterator.next();
+            memoryUsed -= oldest.getValue().size;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Removes an entry and its size from the cache. Must hold the entries lock.
+     * @param key The key of the entry.
+     */
+    private void removeEntry(String key)
+    {
+        CacheEntry entry = entries.remove(key);
+        if (entry != null)
+            memoryUsed -= entry.size;
+    }
+
+    /**
+     * Builds a query centered on a geohash cell with the radius grown by the size of the cell,
+     * so that its result covers the original radius around any location in the cell.
+     * @param query The original query.
+     * @param cell The bounds of the cell: south, north, west, east.
+     * @return Returns the query of the cell.
+     */
+    private static AircraftQuery buildCellQuery(AircraftQuery query, double[] cell)
+    {
+        double latitude = (cell[0] + cell[1]) / 2;
+        double longitude = (cell[2] + cell[3]) / 2;
+
+        // The farthest point of the cell from its center is a corner
+        float[] results = new float[1];
+        Location.distanceBetween(latitude, longitude, cell[1], cell[3], results);
+        double padding = results[0] / 1000.0;
+
+        return new AircraftQuery.Builder(query).setArea(latitude, longitude, query.getRadius() + padding).build();
+    }
+
+    /**
+     * Calculates the geohash of a location.
+     * @param latitude The latitude of the location.
+     * @param longitude The longitude of the location.
+     * @param cell Array of 4 to write the bounds of the geohash cell to: south, north, west, east.
+     * @return Returns the geohash.
+     */
+    static String encodeGeohash(double latitude, double longitude, double[] cell)
+    {
+        double south = -90, north = 90;
+        double west = -180, east = 180;
+
+        char[] geohash = new char[GEOHASH_PRECISION];
+        boolean isLongitudeBit = true;
+        for (int i = 0; i < GEOHASH_PRECISION; i++)
+        {
+            int index = 0;
+            for (int bit = 0; bit < 5; bit++)
+            {
+                index <<= 1;
+                if (isLongitudeBit)
+                {
+                    double middle = (west + east) / 2;
+                    if (longitude >= middle)
+                    {
+                        index |= 1;
+                        west = middle;
+                    }
+                    else
+                        east = middle;
+                }
+                else
+                {
+                    double middle = (south + north) / 2;
+                    if (latitude >= middle)
+                    {
+                        index |= 1;
+                        south = middle;
+                    }
+                    else
+                        north = middle;
+                }
+                isLongitudeBit = !isLongitudeBit;
+            }
+            geohash[i] = GEOHASH_ALPHABET.charAt(index);
+        }
+
+        cell[0] = south;
+        cell[1] = north;
+        cell[2] = west;
+        cell[3] = east;
+
+        return new String(geohash);
+    }
+
+    /**
+     * A cached result.
+     */
+    static class CacheEntry
+    {
+        final AircraftSnapshot snapshot;
+        final long time;
+        final long size;
+
+        // Whether a background refresh was started, so that it is started only once
+        boolean isRefreshing;
+
+        public CacheEntry(AircraftSnapshot snapshot, long time)
+        {
+            this.snapshot = snapshot;
+            this.time = time;
+            this.size = snapshot.estimateMemorySize();
+            this.isRefreshing = false;
+        }
+    }
+}
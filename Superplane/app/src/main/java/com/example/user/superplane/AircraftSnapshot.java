@@ -0,0 +1,873 @@
+package com.example.user.superplane;
+
+import android.util.SparseIntArray;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A columnar (structure of arrays) snapshot of an aircraft list.
+ * Numeric fields are kept in primitive arrays and strings are dictionary encoded,
+ * so a snapshot of thousands of aircraft is a handful of arrays instead of thousands of objects.
+ * Aircraft instances are only created on demand by getAircraft.
+ * Rows of a projected decode only hold their numeric fields at first, and their strings are
+ * decoded from the kept response the first time they are needed.
+ * Snapshots are filled by the decoder and must not be changed once they are handed out.
+ */
+public class AircraftSnapshot
+{
+    public static final int COLUMN_ICAO = 0;
+    public static final int COLUMN_REGISTRATION = 1;
+    public static final int COLUMN_CALLSIGN = 2;
+    public static final int COLUMN_MODEL = 3;
+    public static final int COLUMN_MANUFACTURER = 4;
+    public static final int COLUMN_SRC_AIRPORT = 5;
+    public static final int COLUMN_DEST_AIRPORT = 6;
+    public static final int COLUMN_OPERATOR = 7;
+    public static final int COLUMN_ORIGIN_COUNTRY = 8;
+
+    private static final int STRING_COLUMN_COUNT = 9;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // Version of the binary form written by writeTo, changed whenever the layout changes
+    private static final int BINARY_VERSION = 2;
+
+    // The fewest bytes a row, a string and a stop take in the binary form
+    private static final int BINARY_ROW_SIZE = 4 + 5 * 8 + 1 + STRING_COLUMN_COUNT * 4 + 4;
+    private static final int BINARY_STRING_SIZE = 2;
+    private static final int BINARY_STOP_SIZE = 4;
+    private static final int BINARY_UNRESOLVED_ROW_SIZE = 8;
+
+    // The record field held by every string column
+    private static final int[] STRING_COLUMN_FIELDS = {
+            AircraftRecord.FIELD_ICAO, AircraftRecord.FIELD_REGISTRATION, AircraftRecord.FIELD_CALLSIGN,
+            AircraftRecord.FIELD_MODEL, AircraftRecord.FIELD_MANUFACTURER, AircraftRecord.FIELD_SRC_AIRPORT,
+            AircraftRecord.FIELD_DEST_AIRPORT, AircraftRecord.FIELD_OPERATOR, AircraftRecord.FIELD_ORIGIN_COUNTRY
+    };
+
+    private StringDictionary dictionary;
+    private int size;
+
+    private int[] ids;
+    private double[] latitudes;
+    private double[] longitudes;
+    private double[] velocities;
+    private double[] headings;
+    private double[] distances;
+    private boolean[] onGround;
+    private int[][] stringColumns;
+
+    // The stops of row i are stopCodes[stopsStart[i] .. stopsStart[i] + stopsCount[i]), or none if stopsCount[i] is -1
+    private int[] stopsStart;
+    private int[] stopsCount;
+    private int[] stopCodes;
+    private int stopCodesSize;
+
+    private SparseIntArray rowsById;
+
+    // For projected rows, the offset of their record in the source response, or -1 once they are resolved
+    private byte[] source;
+    private AircraftJsonDecoder sourceDecoder;
+    private int[] recordOffsets;
+    private int unresolvedRows;
+
+    public AircraftSnapshot()
+    {
+        this(new StringDictionary(), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor getting the dictionary to encode the strings with and the expected amount of rows.
+     * @param dictionary The string dictionary, may be shared with previous snapshots of the same list.
+     * @param capacity The expected amount of rows.
+     */
+    public AircraftSnapshot(StringDictionary dictionary, int capacity)
+    {
+        this.dictionary = dictionary;
+        this.size = 0;
+
+        capacity = Math.max(capacity, DEFAULT_CAPACITY);
+        ids = new int[capacity];
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+        velocities = new double[capacity];
+        headings = new double[capacity];
+        distances = new double[capacity];
+        onGround = new boolean[capacity];
+        stringColumns = new int[STRING_COLUMN_COUNT][capacity];
+        stopsStart = new int[capacity];
+        stopsCount = new int[capacity];
+        stopCodes = new int[DEFAULT_CAPACITY];
+        stopCodesSize = 0;
+        rowsById = new SparseIntArray(capacity);
+    }
+
+    /**
+     * Getter for the amount of aircraft in the snapshot.
+     * @return Returns the amount of rows.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Getter for the dictionary the strings are encoded with.
+     * @return Returns the dictionary.
+     */
+    public StringDictionary getDictionary()
+    {
+        return dictionary;
+    }
+
+    /**
+     * Finds the row of an aircraft.
+     * @param id The Id of the aircraft.
+     * @return Returns the row or -1 if the aircraft isn't in the snapshot.
+     */
+    public int indexOfId(int id)
+    {
+        return rowsById.get(id, -1);
+    }
+
+    /**
+     * Getter for the Id of an aircraft.
+     * @param row The row of the aircraft.
+     * @return Returns the Id.
+     */
+    public int getId(int row)
+    {
+        return ids[row];
+    }
+
+    /**
+     * Getter for the latitude of an aircraft.
+     * @param row The row of the aircraft.
+     * @return Returns the latitude.
+     */
+    public double getLatitude(int row)
+    {
+        return latitudes[row];
+    }
+
+    /**
+     * Getter for the longitude of an aircraft.
+     * @param row The row of the aircraft.
+     * @return Returns the longitude.
+     */
+    public double getLongitude(int row)
+    {
+        return longitudes[row];
+    }
+
+    /**
+     * Getter for the velocity of an aircraft.
+     * @param row The row of the aircraft.
+     * @return Returns the velocity.
+     */
+    public double getVelocity(int row)
+    {
+        return velocities[row];
+    }
+
+    /**
+     * Getter for the heading of an aircraft from north.
+     * @param row The row of the aircraft.
+     * @return Returns the heading.
+     */
+    public double getHeading(int row)
+    {
+        return headings[row];
+    }
+
+    /**
+     * Getter for the distance of an aircraft from the searched location.
+     * @param row The row of the aircraft.
+     * @return Returns the distance.
+     */
+    public double getDistance(int row)
+    {
+        return distances[row];
+    }
+
+    /**
+     * Getter for whether an aircraft is on the ground.
+     * @param row The row of the aircraft.
+     * @return Returns whether the aircraft is on the ground.
+     */
+    public boolean isOnGround(int row)
+    {
+        return onGround[row];
+    }
+
+    /**
+     * Gets a string field of a row.
+     * @param column One of the COLUMN_* constants.
+     * @param row The row.
+     * @return Returns the string or null.
+     */
+    public synchronized String getString(int column, int row)
+    {
+        resolve(row);
+        return dictionary.decode(stringColumns[column][row]);
+    }
+
+    /**
+     * Getter for the amount of stops of an aircraft.
+     * @param row The row of the aircraft.
+     * @return Returns the amount of stops, or -1 if the aircraft has no stops list.
+     */
+    public synchronized int getStopsCount(int row)
+    {
+        resolve(row);
+        return stopsCount[row];
+    }
+
+    /**
+     * Gets a stop of an aircraft.
+     * @param row The row of the aircraft.
+     * @param index The index of the stop, less than getStopsCount(row).
+     * @return Returns the stop.
+     */
+    public synchronized String getStop(int row, int index)
+    {
+        resolve(row);
+        return dictionary.decode(stopCodes[stopsStart[row] + index]);
+    }
+
+    /**
+     * Getter for the latitude column. Only the first size() entries are valid.
+     * @return Returns the latitudes array itself, which must not be changed.
+     */
+    public double[] getLatitudes()
+    {
+        return latitudes;
+    }
+
+    /**
+     * Getter for the longitude column. Only the first size() entries are valid.
+     * @return Returns the longitudes array itself, which must not be changed.
+     */
+    public double[] getLongitudes()
+    {
+        return longitudes;
+    }
+
+    /**
+     * Estimates how much memory the columns of the snapshot take.
+     * The dictionary is not counted since it is shared with the other snapshots of the same list.
+     * @return Returns the estimated size in bytes.
+     */
+    public synchronized long estimateMemorySize()
+    {
+        // Ids, string codes and stop ranges are ints, positions and the rest are doubles
+        long bytesPerRow = 4 + 5 * 8 + 1 + STRING_COLUMN_COUNT * 4 + 2 * 4;
+
+        long size = ids.length * bytesPerRow + stopCodes.length * 4L;
+        if (recordOffsets != null)
+            size += recordOffsets.length * 4L;
+        if (source != null)
+            size += source.length;
+
+        return size;
+    }
+
+    /**
+     * Creates an aircraft instance for a row.
+     * @param row The row.
+     * @return Returns the aircraft.
+     */
+    public synchronized Aircraft getAircraft(int row)
+    {
+        resolve(row);
+
+        String[] stops = null;
+        if (stopsCount[row] != -1)
+        {
+            stops = new String[stopsCount[row]];
+            for (int i = 0; i < stops.length; i++)
+                stops[i] = dictionary.decode(stopCodes[stopsStart[row] + i]);
+        }
+
+        return new Aircraft(ids[row], getString(COLUMN_ICAO, row), getString(COLUMN_REGISTRATION, row),
+                getString(COLUMN_CALLSIGN, row), latitudes[row], longitudes[row], velocities[row], headings[row],
+                getString(COLUMN_MODEL, row), getString(COLUMN_MANUFACTURER, row), getString(COLUMN_SRC_AIRPORT, row),
+                getString(COLUMN_DEST_AIRPORT, row), stops, getString(COLUMN_OPERATOR, row), distances[row],
+                getString(COLUMN_ORIGIN_COUNTRY, row), onGround[row]);
+    }
+
+    /**
+     * Writes the snapshot in a compact binary form, column by column.
+     * Only the strings the snapshot uses are written, with codes local to the written form.
+     * Rows still waiting for their second pass are not decoded: the bytes of their records are written
+     * instead, and they are decoded once read back and needed. The lock is held just to copy the columns,
+     * so readers of the snapshot aren't blocked by the writing.
+     * @param out The stream to write to.
+     * @throws IOException
+     */
+    public void writeTo(DataOutputStream out) throws IOException
+    {
+        int size;
+        int[][] codeColumns = new int[STRING_COLUMN_COUNT][];
+        int[] rowStopsStart;
+        int[] rowStopsCount;
+        int[] rowStopCodes;
+        int[] rowRecordOffsets;
+        byte[] rowSource;
+
+        // Resolving changes these, the numeric columns never change once the snapshot is handed out
+        synchronized (this)
+        {
+            size = this.size;
+            for (int column = 0; column < STRING_COLUMN_COUNT; column++)
+                codeColumns[column] = Arrays.copyOf(stringColumns[column], size);
+            rowStopsStart = Arrays.copyOf(stopsStart, size);
+            rowStopsCount = Arrays.copyOf(stopsCount, size);
+            rowStopCodes = Arrays.copyOf(stopCodes, stopCodesSize);
+            rowRecordOffsets = recordOffsets == null ? null : Arrays.copyOf(recordOffsets, size);
+            rowSource = source;
+        }
+
+        HashMap<String, Integer> localCodes = new HashMap<>();
+        ArrayList<String> localStrings = new ArrayList<>();
+
+        int[][] localColumns = new int[STRING_COLUMN_COUNT][size];
+        int[] localStopsCount = new int[size];
+        int[] localStops = new int[DEFAULT_CAPACITY];
+        int localStopsSize = 0;
+
+        // The records of the unresolved rows, and the row and offset of each of them
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        int[] unresolved = new int[0];
+        int unresolvedSize = 0;
+
+        for (int row = 0; row < size; row++)
+        {
+            if (rowRecordOffsets != null && rowRecordOffsets[row] != -1)
+            {
+                int start = rowRecordOffsets[row];
+                int end = AircraftJsonDecoder.findRecordEnd(rowSource, start);
+
+                if (unresolvedSize == unresolved.length)
+                    unresolved = Arrays.copyOf(unresolved, Math.max(DEFAULT_CAPACITY, unresolvedSize * 2));
+                unresolved[unresolvedSize++] = row;
+                unresolved[unresolvedSize++] = records.size();
+                records.write(rowSource, start, end - start);
+
+                for (int column = 0; column < STRING_COLUMN_COUNT; column++)
+                    localColumns[column][row] = StringDictionary.NO_STRING;
+                localStopsCount[row] = -1;
+            }
+            else
+            {
+                for (int column = 0; column < STRING_COLUMN_COUNT; column++)
+                    localColumns[column][row] = toLocalCode(dictionary.decode(codeColumns[column][row]), localCodes, localStrings);
+
+                localStopsCount[row] = rowStopsCount[row];
+                for (int i = 0; i < localStopsCount[row]; i++)
+                {
+                    if (localStopsSize == localStops.length)
+                        localStops = Arrays.copyOf(localStops, localStopsSize * 2);
+                    localStops[localStopsSize++] = toLocalCode(dictionary.decode(rowStopCodes[rowStopsStart[row] + i]),
+                            localCodes, localStrings);
+                }
+            }
+        }
+
+        out.writeByte(BINARY_VERSION);
+        out.writeInt(size);
+
+        out.writeInt(localStrings.size());
+        for (int i = 0; i < localStrings.size(); i++)
+            out.writeUTF(localStrings.get(i));
+
+        for (int row = 0; row < size; row++)
+            out.writeInt(ids[row]);
+        writeColumn(out, latitudes, size);
+        writeColumn(out, longitudes, size);
+        writeColumn(out, velocities, size);
+        writeColumn(out, headings, size);
+        writeColumn(out, distances, size);
+        for (int row = 0; row < size; row++)
+            out.writeBoolean(onGround[row]);
+
+        for (int column = 0; column < STRING_COLUMN_COUNT; column++)
+            for (int row = 0; row < size; row++)
+                out.writeInt(localColumns[column][row]);
+
+        for (int row = 0; row < size; row++)
+            out.writeInt(localStopsCount[row]);
+        for (int i = 0; i < localStopsSize; i++)
+            out.writeInt(localStops[i]);
+
+        out.writeInt(unresolvedSize / 2);
+        out.writeInt(records.size());
+        records.writeTo(out);
+        for (int i = 0; i < unresolvedSize; i++)
+            out.writeInt(unresolved[i]);
+    }
+
+    /**
+     * Reads a snapshot written by writeTo.
+     * Every count is checked against the length of the stream before anything is allocated for it,
+     * so a broken stream fails with an IOException instead of a huge or negative allocation.
+     * @param in The stream to read from.
+     * @param length The amount of bytes left in the stream, or more.
+     * @param decoder The decoder to decode the records of the unresolved rows with, once they are needed.
+     * @return Returns the snapshot, with a dictionary of its own.
+     * @throws IOException If the stream is broken or was written by another version.
+     */
+    public static AircraftSnapshot readFrom(DataInputStream in, long length, AircraftJsonDecoder decoder) throws IOException
+    {
+        int version = in.readUnsignedByte();
+        if (version != BINARY_VERSION)
+            throw new IOException("Unsupported snapshot version " + version);
+
+        int size = in.readInt();
+        int stringCount = in.readInt();
+        long remaining = length - 9;
+
+        checkCount(size, BINARY_ROW_SIZE, remaining);
+        remaining -= (long)size * BINARY_ROW_SIZE;
+        checkCount(stringCount, BINARY_STRING_SIZE, remaining);
+        remaining -= (long)stringCount * BINARY_STRING_SIZE;
+
+        AircraftSnapshot snapshot = new AircraftSnapshot(new StringDictionary(), size);
+
+        int[] codes = new int[stringCount];
+        for (int i = 0; i < codes.length; i++)
+            codes[i] = snapshot.dictionary.encode(in.readUTF());
+
+        for (int row = 0; row < size; row++)
+        {
+            snapshot.ids[row] = in.readInt();
+            snapshot.rowsById.put(snapshot.ids[row], row);
+        }
+        readColumn(in, snapshot.latitudes, size);
+        readColumn(in, snapshot.longitudes, size);
+        readColumn(in, snapshot.velocities, size);
+        readColumn(in, snapshot.headings, size);
+        readColumn(in, snapshot.distances, size);
+        for (int row = 0; row < size; row++)
+            snapshot.onGround[row] = in.readBoolean();
+
+        for (int column = 0; column < STRING_COLUMN_COUNT; column++)
+            for (int row = 0; row < size; row++)
+                snapshot.stringColumns[column][row] = fromLocalCode(in.readInt(), codes);
+
+        for (int row = 0; row < size; row++)
+        {
+            int stopsCount = in.readInt();
+            if (stopsCount < -1)
+                throw new IOException("Corrupted snapshot stops count " + stopsCount);
+
+            // Counted as a whole, so that the stops of all the rows fit together
+            if (stopsCount > 0)
+            {
+                checkCount(stopsCount, BINARY_STOP_SIZE, remaining);
+                remaining -= (long)stopsCount * BINARY_STOP_SIZE;
+            }
+            snapshot.stopsCount[row] = stopsCount;
+        }
+        for (int row = 0; row < size; row++)
+        {
+            snapshot.stopsStart[row] = snapshot.stopCodesSize;
+            for (int i = 0; i < snapshot.stopsCount[row]; i++)
+                snapshot.appendStopCode(fromLocalCode(in.readInt(), codes));
+        }
+
+        snapshot.size = size;
+
+        int unresolvedCount = in.readInt();
+        int recordsLength = in.readInt();
+        checkCount(unresolvedCount, BINARY_UNRESOLVED_ROW_SIZE, remaining);
+        remaining -= (long)unresolvedCount * BINARY_UNRESOLVED_ROW_SIZE;
+        checkCount(recordsLength, 1, remaining);
+
+        byte[] records = new byte[recordsLength];
+        in.readFully(records);
+
+        for (int i = 0; i < unresolvedCount; i++)
+        {
+            int row = in.readInt();
+            int recordOffset = in.readInt();
+            if (row < 0 || row >= size || !snapshot.isResolved(row) || recordOffset < 0 || recordOffset >= recordsLength)
+                throw new IOException("Corrupted snapshot record " + row + " at " + recordOffset);
+
+            snapshot.markUnresolved(row, recordOffset);
+        }
+
+        if (unresolvedCount > 0)
+            snapshot.setSource(records, decoder);
+
+        return snapshot;
+    }
+
+    /**
+     * Adds a decoded record as a new row.
+     * @param record The record.
+     */
+    void append(AircraftRecord record)
+    {
+        int row = newRow(record.id);
+
+        latitudes[row] = record.latitude;
+        longitudes[row] = record.longitude;
+        velocities[row] = record.velocity;
+        headings[row] = record.heading;
+        distances[row] = record.distance;
+        onGround[row] = record.isOnGround;
+
+        for (int column = 0; column < STRING_COLUMN_COUNT; column++)
+            stringColumns[column][row] = dictionary.encode(getRecordString(record, column));
+
+        appendStops(row, record);
+    }
+
+    /**
+     * Adds a row of a projected decode, holding only the numeric fields of the record.
+     * The strings are decoded later from the source set by setSource.
+     * @param record The record with its numeric fields decoded.
+     * @param recordOffset The offset of the record in the source.
+     */
+    void appendProjected(AircraftRecord record, int recordOffset)
+    {
+        appendProjectedRow(record.id, record.latitude, record.longitude, record.velocity, record.heading,
+                record.distance, record.isOnGround, recordOffset);
+    }
+
+    /**
+     * Appends all the rows of a snapshot filled by appendProjected, keeping their order.
+     * @param chunk The snapshot to append.
+     */
+    void appendProjectedRows(AircraftSnapshot chunk)
+    {
+        for (int i = 0; i < chunk.size; i++)
+            appendProjectedRow(chunk.ids[i], chunk.latitudes[i], chunk.longitudes[i], chunk.velocities[i], chunk.headings[i],
+                    chunk.distances[i], chunk.onGround[i], chunk.recordOffsets[i]);
+    }
+
+    private void appendProjectedRow(int id, double latitude, double longitude, double velocity, double heading,
+                                    double distance, boolean isOnGround, int recordOffset)
+    {
+        int row = newRow(id);
+
+        latitudes[row] = latitude;
+        longitudes[row] = longitude;
+        velocities[row] = velocity;
+        headings[row] = heading;
+        distances[row] = distance;
+        onGround[row] = isOnGround;
+
+        markUnresolved(row, recordOffset);
+    }
+
+    /**
+     * Leaves the strings of a row to be decoded from the source later.
+     * @param row The row.
+     * @param recordOffset The offset of the record of the row in the source.
+     */
+    private void markUnresolved(int row, int recordOffset)
+    {
+        for (int column = 0; column < STRING_COLUMN_COUNT; column++)
+            stringColumns[column][row] = StringDictionary.NO_STRING;
+
+        stopsStart[row] = stopCodesSize;
+        stopsCount[row] = -1;
+
+        if (recordOffsets == null)
+        {
+            recordOffsets = new int[ids.length];
+            Arrays.fill(recordOffsets, -1);
+        }
+        recordOffsets[row] = recordOffset;
+        unresolvedRows++;
+    }
+
+    /**
+     * Sets the response the projected rows were decoded from.
+     * @param source The whole response body.
+     * @param decoder The decoder to decode the rest of the records with.
+     */
+    void setSource(byte[] source, AircraftJsonDecoder decoder)
+    {
+        this.source = source;
+        this.sourceDecoder = decoder;
+
+        if (unresolvedRows == 0)
+            releaseSource();
+    }
+
+    /**
+     * Checks whether the strings of a row are decoded, so reading them is cheap.
+     * Rows of a projected decode are decoded the first time their strings are read.
+     * @param row The row.
+     * @return Returns whether the row is resolved.
+     */
+    public synchronized boolean isResolved(int row)
+    {
+        return recordOffsets == null || recordOffsets[row] == -1;
+    }
+
+    /**
+     * Decodes the strings of a projected row from the source response. Must hold the lock of the snapshot.
+     * @param row The row.
+     */
+    private void resolve(int row)
+    {
+        if (recordOffsets == null || recordOffsets[row] == -1)
+            return;
+
+        AircraftRecord record = new AircraftRecord();
+        try
+        {
+            sourceDecoder.decodeRecordAt(source, recordOffsets[row], record);
+        }
+        catch (IOException e)
+        {
+            // The first pass already went over the whole record
+            throw new RuntimeException("Malformed JSON record at " + recordOffsets[row]);
+        }
+
+        for (int column = 0; column < STRING_COLUMN_COUNT; column++)
+            stringColumns[column][row] = dictionary.encode(getRecordString(record, column));
+        appendStops(row, record);
+
+        recordOffsets[row] = -1;
+        if (--unresolvedRows == 0)
+            releaseSource();
+    }
+
+    private void releaseSource()
+    {
+        source = null;
+        sourceDecoder = null;
+        recordOffsets = null;
+    }
+
+    /**
+     * Adds a row made of a known aircraft updated by a partial record.
+     * Fields missing from the record keep the values of the previous row.
+     * A previous row still waiting for its second pass stays so if the record changes none of its strings,
+     * and its record is then decoded from the response of the previous snapshot.
+     * The previous snapshot must use the same dictionary.
+     * @param record The partial record.
+     * @param previous The snapshot holding the known aircraft.
+     * @param previousRow The row of the aircraft in the previous snapshot.
+     */
+    void appendMerged(AircraftRecord record, AircraftSnapshot previous, int previousRow)
+    {
+        int row = newRow(previous.ids[previousRow]);
+
+        latitudes[row] = record.isPresent(AircraftRecord.FIELD_LATITUDE) ? record.latitude : previous.latitudes[previousRow];
+        longitudes[row] = record.isPresent(AircraftRecord.FIELD_LONGITUDE) ? record.longitude : previous.longitudes[previousRow];
+        velocities[row] = record.isPresent(AircraftRecord.FIELD_VELOCITY) ? record.velocity : previous.velocities[previousRow];
+        headings[row] = record.isPresent(AircraftRecord.FIELD_HEADING) ? record.heading : previous.headings[previousRow];
+        distances[row] = record.isPresent(AircraftRecord.FIELD_DISTANCE) ? record.distance : previous.distances[previousRow];
+        onGround[row] = record.isPresent(AircraftRecord.FIELD_ON_GROUND) ? record.isOnGround : previous.onGround[previousRow];
+
+        boolean isStringChanged = record.isPresent(AircraftRecord.FIELD_STOPS);
+        for (int column = 0; column < STRING_COLUMN_COUNT; column++)
+            isStringChanged |= record.isPresent(STRING_COLUMN_FIELDS[column]);
+
+        // The previous snapshot may be resolving its rows on another thread
+        synchronized (previous)
+        {
+            if (!isStringChanged && !previous.isResolved(previousRow))
+            {
+                markUnresolved(row, previous.recordOffsets[previousRow]);
+
+                // All the snapshots built on a projected decode share its response
+                source = previous.source;
+                sourceDecoder = previous.sourceDecoder;
+                return;
+            }
+
+            previous.resolve(previousRow);
+
+            for (int column = 0; column < STRING_COLUMN_COUNT; column++)
+            {
+                if (record.isPresent(STRING_COLUMN_FIELDS[column]))
+                    stringColumns[column][row] = dictionary.encode(getRecordString(record, column));
+                else
+                    stringColumns[column][row] = previous.stringColumns[column][previousRow];
+            }
+
+            if (record.isPresent(AircraftRecord.FIELD_STOPS))
+            {
+                appendStops(row, record);
+            }
+            else
+            {
+                int count = previous.stopsCount[previousRow];
+                stopsCount[row] = count;
+                stopsStart[row] = stopCodesSize;
+                for (int i = 0; i < count; i++)
+                    appendStopCode(previous.stopCodes[previous.stopsStart[previousRow] + i]);
+            }
+        }
+    }
+
+    /**
+     * Adds a row for an aircraft, growing the columns if needed.
+     * @param id The Id of the aircraft.
+     * @return Returns the new row.
+     */
+    private int newRow(int id)
+    {
+        if (size == ids.length)
+            grow(size * 2);
+
+        int row = size++;
+        ids[row] = id;
+        rowsById.put(id, row);
+
+        return row;
+    }
+
+    /**
+     * Stores the stops of a record for a row.
+     * @param row The row.
+     * @param record The record.
+     */
+    private void appendStops(int row, AircraftRecord record)
+    {
+        stopsStart[row] = stopCodesSize;
+        stopsCount[row] = record.hasStops ? record.stops.size() : -1;
+
+        if (record.hasStops)
+            for (int i = 0; i < record.stops.size(); i++)
+                appendStopCode(dictionary.encode(record.stops.get(i)));
+    }
+
+    private void appendStopCode(int code)
+    {
+        if (stopCodesSize == stopCodes.length)
+            stopCodes = Arrays.copyOf(stopCodes, stopCodesSize * 2);
+
+        stopCodes[stopCodesSize++] = code;
+    }
+
+    /**
+     * Gets the string of a record held by a string column.
+     * @param record The record.
+     * @param column One of the COLUMN_* constants.
+     * @return Returns the string.
+     */
+    private static String getRecordString(AircraftRecord record, int column)
+    {
+        switch (column)
+        {
+            case COLUMN_ICAO:
+                return record.icao;
+            case COLUMN_REGISTRATION:
+                return record.registration;
+            case COLUMN_CALLSIGN:
+                return record.callsign;
+            case COLUMN_MODEL:
+                return record.model;
+            case COLUMN_MANUFACTURER:
+                return record.manufacturer;
+            case COLUMN_SRC_AIRPORT:
+                return record.srcAirport;
+            case COLUMN_DEST_AIRPORT:
+                return record.destAirport;
+            case COLUMN_OPERATOR:
+                return record.operator;
+            default:
+                return record.originCountry;
+        }
+    }
+
+    private static void writeColumn(DataOutputStream out, double[] column, int size) throws IOException
+    {
+        for (int row = 0; row < size; row++)
+            out.writeDouble(column[row]);
+    }
+
+    private static void readColumn(DataInputStream in, double[] column, int size) throws IOException
+    {
+        for (int row = 0; row < size; row++)
+            column[row] = in.readDouble();
+    }
+
+    /**
+     * Maps a string to a code of the written form, adding the string if needed.
+     * @param string The string, may be null.
+     * @param localCodes The local codes given so far, by string.
+     * @param localStrings The strings of the written form, by local code.
+     * @return Returns the local code, or StringDictionary.NO_STRING for null.
+     */
+    private static int toLocalCode(String string, HashMap<String, Integer> localCodes, ArrayList<String> localStrings)
+    {
+        if (string == null)
+            return StringDictionary.NO_STRING;
+
+        Integer localCode = localCodes.get(string);
+        if (localCode == null)
+        {
+            localCode = localStrings.size();
+            localStrings.add(string);
+            localCodes.put(string, localCode);
+        }
+
+        return localCode;
+    }
+
+    /**
+     * Checks that a count read from a stream fits in what is left of the stream.
+     * @param count The count.
+     * @param unitSize The fewest bytes every counted item takes.
+     * @param remaining The most bytes left in the stream.
+     * @throws IOException If the count is negative or too large.
+     */
+    private static void checkCount(int count, int unitSize, long remaining) throws IOException
+    {
+        if (count < 0 || (long)count * unitSize > remaining)
+            throw new IOException("Corrupted snapshot count " + count);
+    }
+
+    private static int fromLocalCode(int localCode, int[] codes) throws IOException
+    {
+        if (localCode == StringDictionary.NO_STRING)
+            return StringDictionary.NO_STRING;
+        if (localCode < 0 || localCode >= codes.length)
+            throw new IOException("Corrupted snapshot string code " + localCode);
+
+        return codes[localCode];
+    }
+
+    /**
+     * Grows all the columns.
+     * @param capacity The new amount of rows the columns can hold.
+     */
+    private void grow(int capacity)
+    {
+        ids = Arrays.copyOf(ids, capacity);
+        latitudes = Arrays.copyOf(latitudes, capacity);
+        longitudes = Arrays.copyOf(longitudes, capacity);
+        velocities = Arrays.copyOf(velocities, capacity);
+        headings = Arrays.copyOf(headings, capacity);
+        distances = Arrays.copyOf(distances, capacity);
+
+        onGround = Arrays.copyOf(onGround, capacity);
+
+        for (int column = 0; column < STRING_COLUMN_COUNT; column++)
+            stringColumns[column] = Arrays.copyOf(stringColumns[column], capacity);
+
+        stopsStart = Arrays.copyOf(stopsStart, capacity);
+        stopsCount = Arrays.copyOf(stopsCount, capacity);
+
+        if (recordOffsets != null)
+        {
+            int oldCapacity = recordOffsets.length;
+            recordOffsets = Arrays.copyOf(recordOffsets, capacity);
+            Arrays.fill(recordOffsets, oldCapacity, capacity, -1);
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package com.example.user.superplane;
+
+/**
+ * A k-d tree over the positions of a set of aircraft, for nearest, k-nearest and radius queries.
+ * Positions are stored as points on the unit sphere, so the straight line (chord) distance
+ * orders the aircraft exactly like the great circle distance and no projection is needed.
+ * The tree is built once per aircraft set and the queries don't allocate.
+ * Queries use scratch fields, so an index must only be queried by one thread at a time.
+ */
+public class AircraftSpatialIndex
+{
+    public static final double EARTH_RADIUS = 6371008.8;
+
+    private double[] latitudes;
+    private double[] longitudes;
+    private int size;
+
+    // Coordinates and aircraft index of every tree node, in tree order
+    private double[] xs;
+    private double[] ys;
+    private double[] zs;
+    private int[] order;
+    private byte[] axes;
+
+    // Query scratch
+    private double queryX;
+    private double queryY;
+    private double queryZ;
+    private int bestNode;
+    private double bestChord;
+    private int[] heapNodes = new int[0];
+    private double[] heapChords = new double[0];
+    private int heapSize;
+    private int heapCapacity;
+
+    /**
+     * Constructor building the index over the positions of a snapshot.
+     * Indices returned by the queries are the rows of the snapshot.
+     * @param snapshot The aircraft to index.
+     */
+    public AircraftSpatialIndex(AircraftSnapshot snapshot)
+    {
+        this(snapshot.getLatitudes(), snapshot.getLongitudes(), snapshot.size());
+    }
+
+    /**
+     * Constructor building the index over aircraft positions.
+     * @param latitudes The latitudes of the aircraft. Must not change while the index is used.
+     * @param longitudes The longitudes of the aircraft. Must not change while the index is used.
+     * @param size The amount of aircraft.
+     */
+    public AircraftSpatialIndex(double[] latitudes, double[] longitudes, int size)
+    {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.size = size;
+
+        xs = new double[size];
+        ys = new double[size];
+        zs = new double[size];
+        order = new int[size];
+        axes = new byte[size];
+
+        for (int i = 0; i < size; i++)
+        {
+            double latitude = Math.toRadians(latitudes[i]);
+            double longitude = Math.toRadians(longitudes[i]);
+
+            xs[i] = Math.cos(latitude) * Math.cos(longitude);
+            ys[i] = Math.cos(latitude) * Math.sin(longitude);
+            zs[i] = Math.sin(latitude);
+            order[i] = i;
+        }
+
+        build(0, size);
+    }
+
+    /**
+     * Getter for the amount of indexed aircraft.
+     * @return Returns the amount of aircraft.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Finds the closest aircraft to a location.
+     * @param latitude The latitude of the location.
+     * @param longitude The longitude of the location.
+     * @param maxDistance The maximal distance of the aircraft, in meters.
+     * @return Returns the index of the closest aircraft, or -1 if there is none within maxDistance.
+     */
+    public int nearest(double latitude, double longitude, double maxDistance)
+    {
+        setQuery(latitude, longitude);
+        bestNode = -1;
+        bestChord = metersToChord(maxDistance);
+
+        searchNearest(0, size);
+
+        return bestNode == -1 ? -1 : order[bestNode];
+    }
+
+    /**
+     * Finds the k closest aircraft to a location.
+     * @param latitude The latitude of the location.
+     * @param longitude The longitude of the location.
+     * @param maxDistance The maximal distance of the aircraft, in meters.
+     * @param out The array to write the indices of the aircraft to, closest first. Its length is k.
+     * @return Returns the amount of aircraft found, at most out.length.
+     */
+    public int kNearest(double latitude, double longitude, double maxDistance, int[] out)
+    {
+        setQuery(latitude, longitude);
+        heapCapacity = Math.min(out.length, size);
+        if (heapNodes.length < heapCapacity)
+        {
+            heapNodes = new int[heapCapacity];
+            heapChords = new double[heapCapacity];
+        }
+        heapSize = 0;
+        bestChord = metersToChord(maxDistance);
+
+        if (heapCapacity > 0)
+            searchKNearest(0, size);
+
+        // Popping the max-heap yields the farthest first
+        int count = heapSize;
+        for (int i = count - 1; i >= 0; i--)
+        {
+            out[i] = order[heapNodes[0]];
+            popHeap();
+        }
+
+        return count;
+    }
+
+    /**
+     * Finds all the aircraft within a distance from a location, in no particular order.
+     * @param latitude The latitude of the location.
+     * @param longitude The longitude of the location.
+     * @param radius The distance from the location, in meters.
+     * @param out The array to write the indices of the aircraft to.
+     * @return Returns the amount of aircraft found, at most out.length.
+     */
+    public int withinRadius(double latitude, double longitude, double radius, int[] out)
+    {
+        setQuery(latitude, longitude);
+        bestChord = metersToChord(radius);
+
+        return searchRadius(0, size, out, 0);
+    }
+
+    /**
+     * Calculates the great circle distance between an indexed aircraft and a location.
+     * @param index The index of the aircraft.
+     * @param latitude The latitude of the location.
+     * @param longitude The longitude of the location.
+     * @return Returns the distance in meters.
+     */
+    public double distanceTo(int index, double latitude, double longitude)
+    {
+        double lat1 = Math.toRadians(latitudes[index]);
+        double lat2 = Math.toRadians(latitude);
+        double sinLat = Math.sin((lat2 - lat1) / 2);
+        double sinLon = Math.sin(Math.toRadians(longitude - longitudes[index]) / 2);
+
+        double a = sinLat * sinLat + Math.cos(lat1) * Math.cos(lat2) * sinLon * sinLon;
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Recursively builds the subtree of the nodes in [lo, hi), splitting on the axis of largest spread.
+     * @param lo The first node.
+     * @param hi The node after the last.
+     */
+    private void build(int lo, int hi)
+    {
+        if (hi - lo <= 1)
+            return;
+
+        byte axis = widestAxis(lo, hi);
+        int mid = (lo + hi) >>> 1;
+
+        select(lo, hi - 1, mid, axis);
+        axes[mid] = axis;
+
+        build(lo, mid);
+        build(mid + 1, hi);
+    }
+
+    /**
+     * Finds the axis along which the nodes in [lo, hi) are spread the most.
+     * @param lo The first node.
+     * @param hi The node after the last.
+     * @return Returns 0, 1 or 2 for x, y or z.
+     */
+    private byte widestAxis(int lo, int hi)
+    {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, minZ = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE, maxZ = -Double.MAX_VALUE;
+
+        for (int i = lo; i < hi; i++)
+        {
+            minX = Math.min(minX, xs[i]);
+            maxX = Math.max(maxX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxY = Math.max(maxY, ys[i]);
+            minZ = Math.min(minZ, zs[i]);
+            maxZ = Math.max(maxZ, zs[i]);
+        }
+
+        double spreadX = maxX - minX;
+        double spreadY = maxY - minY;
+        double spreadZ = maxZ - minZ;
+
+        if (spreadX >= spreadY && spreadX >= spreadZ)
+            return 0;
+        return spreadY >= spreadZ ? (byte)1 : (byte)2;
+    }
+
+    /**
+     * Partially sorts the nodes in [lo, hi] so that node k holds the median along an axis (quickselect).
+     * @param lo The first node.
+     * @param hi The last node.
+     * @param k The node to place.
+     * @param axis The axis to compare by.
+     */
+    private void select(int lo, int hi, int k, byte axis)
+    {
+        while (hi > lo)
+        {
+            double pivot = coordinate(axis, (lo + hi) >>> 1);
+            int i = lo;
+            int j = hi;
+
+            while (i <= j)
+            {
+                while (coordinate(axis, i) < pivot)
+                    i++;
+                while (coordinate(axis, j) > pivot)
+                    j--;
+
+                if (i <= j)
+                    swap(i++, j--);
+            }
+
+            if (k <= j)
+                hi = j;
+            else if (k >= i)
+                lo = i;
+            else
+                return;
+        }
+    }
+
+    /**
+     * Searches the subtree of [lo, hi) for a node closer than the best one so far.
+     * @param lo The first node.
+     * @param hi The node after the last.
+     */
+    private void searchNearest(int lo, int hi)
+    {
+        if (lo >= hi)
+            return;
+
+        int mid = (lo + hi) >>> 1;
+        double chord = chordTo(mid);
+        if (chord < bestChord)
+        {
+            bestChord = chord;
+            bestNode = mid;
+        }
+
+        double delta = queryCoordinate(axes[mid]) - coordinate(axes[mid], mid);
+        boolean leftFirst = delta < 0;
+
+        searchNearest(leftFirst ? lo : mid + 1, leftFirst ? mid : hi);
+
+        // The other side can only be closer if the splitting plane is
+        if (Math.abs(delta) < bestChord)
+            searchNearest(leftFirst ? mid + 1 : lo, leftFirst ? hi : mid);
+    }
+
+    /**
+     * Searches the subtree of [lo, hi) for nodes closer than the farthest one in the heap.
+     * @param lo The first node.
+     * @param hi The node after the last.
+     */
+    private void searchKNearest(int lo, int hi)
+    {
+        if (lo >= hi)
+            return;
+
+        int mid = (lo + hi) >>> 1;
+        double chord = chordTo(mid);
+        if (chord < bestChord)
+        {
+            if (heapSize == heapCapacity)
+                popHeap();
+            pushHeap(mid, chord);
+
+            // Once the heap is full only closer nodes than its farthest are interesting
+            if (heapSize == heapCapacity)
+                bestChord = heapChords[0];
+        }
+
+        double delta = queryCoordinate(axes[mid]) - coordinate(axes[mid], mid);
+        boolean leftFirst = delta < 0;
+
+        searchKNearest(leftFirst ? lo : mid + 1, leftFirst ? mid : hi);
+
+        if (Math.abs(delta) < bestChord)
+            searchKNearest(leftFirst ? mid + 1 : lo, leftFirst ? hi : mid);
+    }
+
+    /**
+     * Collects the nodes of the subtree of [lo, hi) that are within the query radius.
+     * @param lo The first node.
+     * @param hi The node after the last.
+     * @param out The array to write the aircraft indices to.
+     * @param count The amount of indices already written.
+     * @return Returns the amount of indices written.
+     */
+    private int searchRadius(int lo, int hi, int[] out, int count)
+    {
+        if (lo >= hi || count == out.length)
+            return count;
+
+        int mid = (lo + hi) >>> 1;
+        if (chordTo(mid) <= bestChord)
+            out[count++] = order[mid];
+
+        double delta = queryCoordinate(axes[mid]) - coordinate(axes[mid], mid);
+
+        if (delta <= bestChord)
+            count = searchRadius(lo, mid, out, count);
+        if (-delta <= bestChord)
+            count = searchRadius(mid + 1, hi, out, count);
+
+        return count;
+    }
+
+    /**
+     * Adds a node to the max-heap of the k nearest nodes.
+     * @param node The node.
+     * @param chord The chord distance of the node from the query.
+     */
+    private void pushHeap(int node, double chord)
+    {
+        int i = heapSize++;
+        while (i > 0)
+        {
+            int parent = (i - 1) >>> 1;
+            if (heapChords[parent] >= chord)
+                break;
+
+            heapNodes[i] = heapNodes[parent];
+            heapChords[i] = heapChords[parent];
+            i = parent;
+        }
+
+        heapNodes[i] = node;
+        heapChords[i] = chord;
+    }
+
+    /**
+     * Removes the farthest node from the max-heap of the k nearest nodes.
+     */
+    private void popHeap()
+    {
+        int lastNode = heapNodes[--heapSize];
+        double lastChord = heapChords[heapSize];
+
+        int i = 0;
+        while (true)
+        {
+            int child = 2 * i + 1;
+            if (child >= heapSize)
+                break;
+            if (child + 1 < heapSize && heapChords[child + 1] > heapChords[child])
+                child++;
+            if (heapChords[child] <= lastChord)
+                break;
+
+            heapNodes[i] = heapNodes[child];
+            heapChords[i] = heapChords[child];
+            i = child;
+        }
+
+        heapNodes[i] = lastNode;
+        heapChords[i] = lastChord;
+    }
+
+    /**
+     * Sets the point of the current query.
+     * @param latitude The latitude of the query.
+     * @param longitude The longitude of the query.
+     */
+    private void setQuery(double latitude, double longitude)
+    {
+        double lat = Math.toRadians(latitude);
+        double lon = Math.toRadians(longitude);
+
+        queryX = Math.cos(lat) * Math.cos(lon);
+        queryY = Math.cos(lat) * Math.sin(lon);
+        queryZ = Math.sin(lat);
+    }
+
+    /**
+     * Calculates the chord distance between the query and a node, on the unit sphere.
+     * @param node The node.
+     * @return Returns the distance.
+     */
+    private double chordTo(int node)
+    {
+        double dx = xs[node] - queryX;
+        double dy = ys[node] - queryY;
+        double dz = zs[node] - queryZ;
+
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    private double coordinate(byte axis, int node)
+    {
+        return axis == 0 ? xs[node] : (axis == 1 ? ys[node] : zs[node]);
+    }
+
+    private double queryCoordinate(byte axis)
+    {
+        return axis == 0 ? queryX : (axis == 1 ? queryY : queryZ);
+    }
+
+    /**
+     * Swaps two nodes.
+     * @param i The first node.
+     * @param j The second node.
+     */
+    private void swap(int i, int j)
+    {
+        double tmp = xs[i]; xs[i] = xs[j]; xs[j] = tmp;
+        tmp = ys[i]; ys[i] = ys[j]; ys[j] = tmp;
+        tmp = zs[i]; zs[i] = zs[j]; zs[j] = tmp;
+
+        int tmpIndex = order[i]; order[i] = order[j]; order[j] = tmpIndex;
+    }
+
+    /**
+     * Converts a great circle distance on the earth to a chord distance on the unit sphere.
+     * @param meters The distance in meters.
+     * @return Returns the chord distance.
+     */
+    private static double metersToChord(double meters)
+    {
+        double angle = Math.min(meters / EARTH_RADIUS, Math.PI);
+
+        return 2 * Math.sin(angle / 2);
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.user.superplane;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Local copy of the aircraft list of a single query.
+ * Keeps the VirtualRadar data version of the last response, so the next request
+ * only has to download what changed since then.
+ * Not thread safe: a refresh of the table must hold its lock, see lock.
+ */
+public class AircraftTable
+{
+    // How often a refresh waiting for the table checks whether it was canceled
+    private static final long LOCK_POLL_INTERVAL = 50;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private AircraftSnapshot snapshot;
+
+    private String lastDataVersion;
+
+    public AircraftTable()
+    {
+        this.snapshot = new AircraftSnapshot();
+    }
+
+    /**
+     * Takes the table for a refresh, waiting while another refresh holds it.
+     * Unlike waiting for a monitor, the wait ends soon after the refresh is canceled.
+     * @param cancellationSignal The signal to stop waiting with, or null.
+     * @throws OperationCanceledException If the refresh was canceled, in which case the table is not taken.
+     */
+    public void lock(CancellationSignal cancellationSignal)
+    {
+        if (cancellationSignal == null)
+        {
+            lock.lock();
+            return;
+        }
+
+        try
+        {
+            cancellationSignal.throwIfCanceled();
+            while (!lock.tryLock(LOCK_POLL_INTERVAL, TimeUnit.MILLISECONDS))
+                cancellationSignal.throwIfCanceled();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new OperationCanceledException("Interrupted while waiting for the aircraft table!");
+        }
+    }
+
+    /**
+     * Releases the table taken by lock.
+     */
+    public void unlock()
+    {
+        lock.unlock();
+    }
+
+    /**
+     * Empties the table, so the next request is a full one.
+     */
+    public void reset()
+    {
+        this.lastDataVersion = null;
+        this.snapshot = new AircraftSnapshot();
+    }
+
+    /**
+     * Getter for the data version of the last merged response.
+     * @return Returns the data version or null if the next request has to be a full one.
+     */
+    public String getLastDataVersion()
+    {
+        return lastDataVersion;
+    }
+
+    /**
+     * Setter for the data version of the last merged response.
+     * @param lastDataVersion The data version.
+     */
+    public void setLastDataVersion(String lastDataVersion)
+    {
+        this.lastDataVersion = lastDataVersion;
+    }
+
+    /**
+     * Getter for the current content of the table.
+     * @return Returns the snapshot of the aircraft, keyed by Id through indexOfId.
+     */
+    public AircraftSnapshot getSnapshot()
+    {
+        return snapshot;
+    }
+
+    /**
+     * Replaces the content of the table. Snapshots that were handed out before are not changed.
+     * @param snapshot The new content.
+     */
+    public void setSnapshot(AircraftSnapshot snapshot)
+    {
+        this.snapshot = snapshot;
+    }
+}
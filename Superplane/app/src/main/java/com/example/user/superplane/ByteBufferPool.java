@@ -0,0 +1,61 @@
+package com.example.user.superplane;
+
+import java.util.ArrayDeque;
+
+/**
+ * A bounded pool of equally sized byte arrays, used as read buffers
+ * so that every download doesn't allocate its own.
+ */
+public class ByteBufferPool
+{
+    private final int bufferSize;
+    private final int maxPooled;
+
+    private final ArrayDeque<byte[]> buffers;
+
+    /**
+     * Constructor getting the size of the buffers and how many may be kept.
+     * @param bufferSize The size of each buffer in bytes.
+     * @param maxPooled The maximal amount of idle buffers to keep.
+     */
+    public ByteBufferPool(int bufferSize, int maxPooled)
+    {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.buffers = new ArrayDeque<>(maxPooled);
+    }
+
+    /**
+     * Takes a buffer from the pool, or allocates one if the pool is empty.
+     * @return Returns a buffer of getBufferSize() bytes.
+     */
+    public synchronized byte[] acquire()
+    {
+        byte[] buffer = buffers.pollFirst();
+        if (buffer == null)
+            buffer = new byte[bufferSize];
+
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer must not be used afterwards.
+     * @param buffer The buffer to return.
+     */
+    public synchronized void release(byte[] buffer)
+    {
+        if (buffer == null || buffer.length != bufferSize || buffers.size() >= maxPooled)
+            return;
+
+        buffers.addFirst(buffer);
+    }
+
+    /**
+     * Getter for the size of the pooled buffers.
+     * @return Returns the buffer size in bytes.
+     */
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+}
@@ -1,23 +1,33 @@
 package com.example.user.superplane;
 
-import android.location.Location;
+import android.os.CancellationSignal;
 import android.support.annotation.Nullable;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.ArrayList;
-
-import javax.net.ssl.HttpsURLConnection;
 
 /**
  * Super class, providing methods for http and https requests.
+ * All the requests go through a shared HttpTransport, so connections are reused between them.
  */
 public class DataDownloadManager
 {
+    protected HttpTransport transport;
+
+    public DataDownloadManager()
+    {
+        this(HttpTransport.getShared());
+    }
+
+    /**
+     * Constructor getting the transport to send the requests with.
+     * @param transport The transport.
+     */
+    public DataDownloadManager(HttpTransport transport)
+    {
+        this.transport = transport;
+    }
+
     /**
      * Sends an HTTPS request to the specified URL.
      * @param url The url to send and HTTPS request to.
@@ -27,18 +37,35 @@ public class DataDownloadManager
     @Nullable
     public String downloadDataHttps(String url) throws NoInternetException
     {
-        try
-        {
-            URL urlObj = new URL(url);
-            HttpsURLConnection connection = (HttpsURLConnection) urlObj.openConnection();
-            connection.connect();
-
-            InputStream inputStream = connection.getInputStream();
-            String data = readToEnd(inputStream);
+        return downloadData(url);
+    }
 
-            inputStream.close();
+    /**
+     * Sends an HTTPS request to the specified URL without reading the response,
+     * so that the body can be consumed as a stream.
+     * @param url The url to send and HTTPS request to.
+     * @return Returns the stream of the response body. The caller must close it.
+     * @throws NoInternetException
+     */
+    public InputStream openStreamHttps(String url) throws NoInternetException
+    {
+        return openStreamHttps(url, null);
+    }
 
-            return data;
+    /**
+     * Sends an HTTPS request to the specified URL without reading the response,
+     * disconnecting as soon as the request is canceled.
+     * @param url The url to send and HTTPS request to.
+     * @param cancellationSignal The signal to cancel the request with, or null.
+     * @return Returns the stream of the response body. The caller must close it.
+     * @throws NoInternetException
+     * @throws android.os.OperationCanceledException If the request was canceled.
+     */
+    public InputStream openStreamHttps(String url, CancellationSignal cancellationSignal) throws NoInternetException
+    {
+        try
+        {
+            return transport.openStream(url, cancellationSignal);
         }
         catch (IOException ex)
         {
@@ -55,52 +82,24 @@ public class DataDownloadManager
     @Nullable
     public String downloadDataHttp(String url) throws NoInternetException
     {
-        try
-        {
-            URL urlObj = new URL(url);
-            HttpURLConnection connection = (HttpURLConnection) urlObj.openConnection();
-            connection.connect();
-
-            InputStream inputStream = connection.getInputStream();
-            String data = readToEnd(inputStream);
-
-            inputStream.close();
-
-            return data;
-        }
-        catch (IOException ex)
-        {
-            throw new NoInternetException();
-        }
+        return downloadData(url);
     }
 
     /**
-     * Reads the specified input stream to its end.
-     * @param inputStream The input stream to read to its end.
-     * @return Returns the data read from the stream as String.
+     * Sends a request to the specified URL and reads the whole response.
+     * @param url The url to send the request to.
+     * @return Returns the downloaded data as String.
+     * @throws NoInternetException
      */
-    @Nullable
-    private String readToEnd(InputStream inputStream)
+    private String downloadData(String url) throws NoInternetException
     {
-        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
-
-        StringBuilder fileBuilder = new StringBuilder();
-
-        String line = null;
         try
         {
-            line = bufferedReader.readLine();
-            while (line != null)
-            {
-                fileBuilder.append(line).append("\n");
-                line = bufferedReader.readLine();
-            }
+            return transport.readString(url);
         }
         catch (IOException ex)
         {
-            return null;
+            throw new NoInternetException();
         }
-
-        return fileBuilder.toString();
     }
 }
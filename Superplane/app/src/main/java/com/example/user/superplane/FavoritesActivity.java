@@ -6,6 +6,7 @@ import android.content.Intent;
 import android.database.DataSetObserver;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.os.Parcelable;
 import android.support.v7.widget.Toolbar;
 import android.view.View;
 import android.view.ViewGroup;
@@ -58,7 +59,7 @@ public class FavoritesActivity extends AppCompatActivity {
             Aircraft aircraft = (Aircraft)favoriteListAdapter.getItem(position);
 
             Intent intent = new Intent(FavoritesActivity.this, AircraftDetailsActivity.class);
-            intent.putExtra(Aircraft.AIRCRAFT_INTENT_NAME, aircraft);
+            intent.putExtra(Aircraft.AIRCRAFT_INTENT_NAME, (Parcelable)aircraft);
 
             startActivity(intent);
         }
@@ -11,10 +11,46 @@ public class FavoritesDbContract
 
     /**
      * Holds the constants for the favorites database.
+     * Every favorite is a row of typed columns, unique by its ICAO.
      */
     public static class TableColumns implements BaseColumns
     {
         public static final String TABLE_NAME = "Favorites";
+        public static final String INDEX_NAME_ICAO = "FavoritesIcaoIndex";
+
+        public static final String COLUMN_NAME_ICAO = "icao";
+        public static final String COLUMN_NAME_AIRCRAFT_ID = "aircraft_id";
+        public static final String COLUMN_NAME_REGISTRATION = "registration";
+        public static final String COLUMN_NAME_CALLSIGN = "callsign";
+        public static final String COLUMN_NAME_LATITUDE = "latitude";
+        public static final String COLUMN_NAME_LONGITUDE = "longitude";
+        public static final String COLUMN_NAME_VELOCITY = "velocity";
+        public static final String COLUMN_NAME_HEADING = "heading";
+        public static final String COLUMN_NAME_MODEL = "model";
+        public static final String COLUMN_NAME_MANUFACTURER = "manufacturer";
+        public static final String COLUMN_NAME_SRC_AIRPORT = "src_airport";
+        public static final String COLUMN_NAME_DEST_AIRPORT = "dest_airport";
+        public static final String COLUMN_NAME_OPERATOR = "operator";
+        public static final String COLUMN_NAME_DISTANCE = "distance";
+        public static final String COLUMN_NAME_ORIGIN_COUNTRY = "origin_country";
+        public static final String COLUMN_NAME_ON_GROUND = "on_ground";
+        // The amount of rows of the favorite in the stops table, or null if the aircraft has no stops array
+        public static final String COLUMN_NAME_STOPS_COUNT = "stops_count";
+
+        // The serialized aircraft of the schema before version 3, only read when migrating
         public static final String COLUMN_NAME_DATA = "data";
     }
-}
\ No newline at end of file
+
+    /**
+     * Holds the constants for the stops of the favorites, a row per stop in the order of the stops.
+     */
+    public static class StopsColumns implements BaseColumns
+    {
+        public static final String TABLE_NAME = "FavoriteStops";
+        public static final String INDEX_NAME_ICAO = "FavoriteStopsIcaoIndex";
+
+        public static final String COLUMN_NAME_ICAO = "icao";
+        public static final String COLUMN_NAME_POSITION = "position";
+        public static final String COLUMN_NAME_STOP = "stop";
+    }
+}
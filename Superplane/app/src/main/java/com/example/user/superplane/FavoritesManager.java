@@ -5,14 +5,18 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 /**
  * The manager of the favorites database.
  */
 public class FavoritesManager
 {
+    private static final String LOG_TAG = "FavoritesManager";
+
     private FavoritesDbHelper dbHelper;
 
     public FavoritesManager(Context context)
@@ -29,54 +33,100 @@ public class FavoritesManager
         SQLiteDatabase db = dbHelper.getReadableDatabase();
 
         ArrayList<Aircraft> aircraftList = new ArrayList<>();
-
-        // Define a projection that specifies which columns from the database
-        // you will actually use after this query.
-        String[] projection = {
-                FavoritesDbContract.TableColumns._ID,
-                FavoritesDbContract.TableColumns.COLUMN_NAME_DATA
-        };
+        HashMap<String, ArrayList<String>> stops = getStops(db);
 
         Cursor cursor = db.query(
                 FavoritesDbContract.TableColumns.TABLE_NAME,                     // The table to query
-                projection,                               // The columns to return
+                null,                                     // All the columns
                 null,                                // The columns for the WHERE clause
                 null,                            // The values for the WHERE clause
                 null,                                     // don't group the rows
                 null,                                     // don't filter by row groups
-                null                                 // The sort order
+                FavoritesDbContract.TableColumns._ID      // The sort order, as added
         );
 
-        while (cursor.moveToNext())
+        try
         {
-            int colIndex = cursor.getColumnIndexOrThrow(FavoritesDbContract.TableColumns.COLUMN_NAME_DATA);
-            String objStr = cursor.getString(colIndex);
-
-            Aircraft aircraft = new Aircraft(objStr);
-
-            aircraftList.add(aircraft);
+            int icaoIndex = cursor.getColumnIndexOrThrow(FavoritesDbContract.TableColumns.COLUMN_NAME_ICAO);
+            int idIndex = cursor.getColumnIndexOrThrow(FavoritesDbContract.TableColumns.COLUMN_NAME_AIRCRAFT_ID);
+            int registrationIndex = cursor.getColumnIndexOrThrow(FavoritesDbContract.TableColumns.COLUMN_NAME_REGISTRATION);
+            int callsignIndex = cursor.getColumnIndexOrThrow(FavoritesDbContract.TableColumns.COLUMN_NAME_CALLSIGN);
+            int latitudeIndex = cursor.getColumnIndexOrThrow(FavoritesDbContract.TableColumns.COLUMN_NAME_LATITUDE);
+            int longitudeIndex = cursor.getColumnIndexOrThrow(FavoritesDbContract.TableColumns.COLUMN_NAME_LONGITUDE);
+            int velocityIndex = cursor.getColumnIndexOrThrow(FavoritesDbContract.TableColumns.COLUMN_NAME_VELOCITY);
+            int headingIndex = cursor.getColumnIndexOrThrow(FavoritesDbContract.TableColumns.COLUMN_NAME_HEADING);
+            int modelIndex = cursor.getColumnIndexOrThrow(FavoritesDbContract.TableColumns.COLUMN_NAME_MODEL);
+            int manufacturerIndex = cursor.getColumnIndexOrThrow(FavoritesDbContract.TableColumns.COLUMN_NAME_MANUFACTURER);
+            int srcAirportIndex = cursor.getColumnIndexOrThrow(FavoritesDbContract.TableColumns.COLUMN_NAME_SRC_AIRPORT);
+            int destAirportIndex = cursor.getColumnIndexOrThrow(FavoritesDbContract.TableColumns.COLUMN_NAME_DEST_AIRPORT);
+            int operatorIndex = cursor.getColumnIndexOrThrow(FavoritesDbContract.TableColumns.COLUMN_NAME_OPERATOR);
+            int distanceIndex = cursor.getColumnIndexOrThrow(FavoritesDbContract.TableColumns.COLUMN_NAME_DISTANCE);
+            int originCountryIndex = cursor.getColumnIndexOrThrow(FavoritesDbContract.TableColumns.COLUMN_NAME_ORIGIN_COUNTRY);
+            int onGroundIndex = cursor.getColumnIndexOrThrow(FavoritesDbContract.TableColumns.COLUMN_NAME_ON_GROUND);
+            int stopsCountIndex = cursor.getColumnIndexOrThrow(FavoritesDbContract.TableColumns.COLUMN_NAME_STOPS_COUNT);
+
+            while (cursor.moveToNext())
+            {
+                String icao = cursor.getString(icaoIndex);
+
+                String[] aircraftStops = null;
+                if (!cursor.isNull(stopsCountIndex))
+                {
+                    // An empty stops array has no stop rows
+                    ArrayList<String> stopRows = stops.get(icao);
+                    aircraftStops = stopRows == null ? new String[0] : stopRows.toArray(new String[stopRows.size()]);
+                }
+
+                Aircraft aircraft = new Aircraft(cursor.getInt(idIndex), icao,
+                        cursor.getString(registrationIndex), cursor.getString(callsignIndex),
+                        cursor.getDouble(latitudeIndex), cursor.getDouble(longitudeIndex),
+                        cursor.getDouble(velocityIndex), cursor.getDouble(headingIndex),
+                        cursor.getString(modelIndex), cursor.getString(manufacturerIndex),
+                        cursor.getString(srcAirportIndex), cursor.getString(destAirportIndex),
+                        aircraftStops,
+                        cursor.getString(operatorIndex), cursor.getDouble(distanceIndex),
+                        cursor.getString(originCountryIndex), cursor.getInt(onGroundIndex) != 0);
+
+                aircraftList.add(aircraft);
+            }
+        }
+        finally
+        {
+            cursor.close();
         }
-        cursor.close();
 
         return aircraftList;
     }
 
     /**
-     * Adds an aircraft to the favorites database.
+     * Checks whether an aircraft can be added to the favorites, which are keyed by the ICAO.
+     * @param aircraft The aircraft to check.
+     * @return Returns whether the aircraft has an ICAO.
+     */
+    public boolean canBeFavorite(Aircraft aircraft)
+    {
+        return aircraft.getIcao() != null;
+    }
+
+    /**
+     * Adds an aircraft to the favorites database, replacing the favorite of the same ICAO.
      * @param aircraft The aircraft to add to favorites.
+     * @throws IllegalArgumentException If the aircraft has no ICAO, see canBeFavorite.
      */
     public void addFavorite(Aircraft aircraft)
     {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
 
-        String objStr = aircraft.getAircraftAsString();
-
-        // Create a new map of values, where column names are the keys
-        ContentValues values = new ContentValues();
-        values.put(FavoritesDbContract.TableColumns.COLUMN_NAME_DATA, objStr);
-
-        // Insert the new row, returning the primary key value of the new row
-        long newRowId = db.insert(FavoritesDbContract.TableColumns.TABLE_NAME, null, values);
+        db.beginTransaction();
+        try
+        {
+            insertFavorite(db, aircraft);
+            db.setTransactionSuccessful();
+        }
+        finally
+        {
+            db.endTransaction();
+        }
     }
 
     /**
@@ -85,35 +135,48 @@ public class FavoritesManager
      */
     public void removeFavorite(Aircraft aircraft)
     {
-        String objStr = aircraft.getAircraftAsString();
+        if (aircraft.getIcao() == null)
+            return;
 
         SQLiteDatabase db = dbHelper.getWritableDatabase();
 
-        String selection = FavoritesDbContract.TableColumns.COLUMN_NAME_DATA + " = ?";
-        String[] selectionArgs = { objStr };
+        String[] selectionArgs = { aircraft.getIcao() };
 
-        db.delete(FavoritesDbContract.TableColumns.TABLE_NAME, selection, selectionArgs);
+        db.beginTransaction();
+        try
+        {
+            db.delete(FavoritesDbContract.TableColumns.TABLE_NAME,
+                    FavoritesDbContract.TableColumns.COLUMN_NAME_ICAO + " = ?", selectionArgs);
+            db.delete(FavoritesDbContract.StopsColumns.TABLE_NAME,
+                    FavoritesDbContract.StopsColumns.COLUMN_NAME_ICAO + " = ?", selectionArgs);
+            db.setTransactionSuccessful();
+        }
+        finally
+        {
+            db.endTransaction();
+        }
     }
 
     /**
-     * Checks whether an aircraft is a favorite.
+     * Checks whether an aircraft is a favorite, by its ICAO only, so it stays a favorite as it moves.
      * @param aircraft The aircraft to check.
      * @return Returns whether the aircraft is a favorite.
      */
     public boolean favoriteExists(Aircraft aircraft)
     {
-        String objStr = aircraft.getAircraftAsString();
+        if (aircraft.getIcao() == null)
+            return false;
 
         SQLiteDatabase db = dbHelper.getReadableDatabase();
 
         String[] projection = {
-                FavoritesDbContract.TableColumns._ID,
-                FavoritesDbContract.TableColumns.COLUMN_NAME_DATA
+                FavoritesDbContract.TableColumns._ID
         };
 
-        String selection = FavoritesDbContract.TableColumns.COLUMN_NAME_DATA + " = ?";
-        String[] selectionArgs = { objStr };
+        String selection = FavoritesDbContract.TableColumns.COLUMN_NAME_ICAO + " = ?";
+        String[] selectionArgs = { aircraft.getIcao() };
 
+        // A point query on the unique ICAO index
         Cursor cursor = db.query(
                 FavoritesDbContract.TableColumns.TABLE_NAME,                     // The table to query
                 projection,                               // The columns to return
@@ -121,7 +184,8 @@ public class FavoritesManager
                 selectionArgs,                            // The values for the WHERE clause
                 null,                                     // don't group the rows
                 null,                                     // don't filter by row groups
-                null                                 // The sort order
+                null,                                // The sort order
+                "1"                                       // At most one row
         );
 
         boolean exists = cursor.moveToNext();
@@ -130,17 +194,158 @@ public class FavoritesManager
         return exists;
     }
 
+    /**
+     * Gets the stops of all the favorites in a single query.
+     * @param db The database.
+     * @return Returns the stops by the ICAO of their aircraft, in order.
+     */
+    private static HashMap<String, ArrayList<String>> getStops(SQLiteDatabase db)
+    {
+        HashMap<String, ArrayList<String>> stops = new HashMap<>();
+
+        String[] projection = {
+                FavoritesDbContract.StopsColumns.COLUMN_NAME_ICAO,
+                FavoritesDbContract.StopsColumns.COLUMN_NAME_STOP
+        };
+
+        String sortOrder = FavoritesDbContract.StopsColumns.COLUMN_NAME_ICAO + ", " +
+                FavoritesDbContract.StopsColumns.COLUMN_NAME_POSITION;
+
+        Cursor cursor = db.query(FavoritesDbContract.StopsColumns.TABLE_NAME, projection,
+                null, null, null, null, sortOrder);
+
+        try
+        {
+            int icaoIndex = cursor.getColumnIndexOrThrow(FavoritesDbContract.StopsColumns.COLUMN_NAME_ICAO);
+            int stopIndex = cursor.getColumnIndexOrThrow(FavoritesDbContract.StopsColumns.COLUMN_NAME_STOP);
+
+            while (cursor.moveToNext())
+            {
+                String icao = cursor.getString(icaoIndex);
+
+                ArrayList<String> aircraftStops = stops.get(icao);
+                if (aircraftStops == null)
+                {
+                    aircraftStops = new ArrayList<>();
+                    stops.put(icao, aircraftStops);
+                }
+
+                aircraftStops.add(cursor.getString(stopIndex));
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+
+        return stops;
+    }
+
+    /**
+     * Writes a favorite and its stops, replacing the favorite of the same ICAO.
+     * Must be called inside a transaction.
+     * @param db The database.
+     * @param aircraft The aircraft.
+     * @throws IllegalArgumentException If the aircraft has no ICAO.
+     */
+    private static void insertFavorite(SQLiteDatabase db, Aircraft aircraft)
+    {
+        String icao = aircraft.getIcao();
+        if (icao == null)
+            throw new IllegalArgumentException("A favorite must have an ICAO!");
+
+        String[] stops = aircraft.getStops();
+
+        ContentValues values = new ContentValues();
+        values.put(FavoritesDbContract.TableColumns.COLUMN_NAME_ICAO, icao);
+        values.put(FavoritesDbContract.TableColumns.COLUMN_NAME_AIRCRAFT_ID, aircraft.getId());
+        values.put(FavoritesDbContract.TableColumns.COLUMN_NAME_REGISTRATION, aircraft.getRegistration());
+        values.put(FavoritesDbContract.TableColumns.COLUMN_NAME_CALLSIGN, aircraft.getCallsign());
+        values.put(FavoritesDbContract.TableColumns.COLUMN_NAME_LATITUDE, aircraft.getLatitude());
+        values.put(FavoritesDbContract.TableColumns.COLUMN_NAME_LONGITUDE, aircraft.getLongitude());
+        values.put(FavoritesDbContract.TableColumns.COLUMN_NAME_VELOCITY, aircraft.getVelocity());
+        values.put(FavoritesDbContract.TableColumns.COLUMN_NAME_HEADING, aircraft.getHeading());
+        values.put(FavoritesDbContract.TableColumns.COLUMN_NAME_MODEL, aircraft.getModel());
+        values.put(FavoritesDbContract.TableColumns.COLUMN_NAME_MANUFACTURER, aircraft.getManufacturer());
+        values.put(FavoritesDbContract.TableColumns.COLUMN_NAME_SRC_AIRPORT, aircraft.getSrcAirport());
+        values.put(FavoritesDbContract.TableColumns.COLUMN_NAME_DEST_AIRPORT, aircraft.getDestAirport());
+        values.put(FavoritesDbContract.TableColumns.COLUMN_NAME_OPERATOR, aircraft.getOperator());
+        values.put(FavoritesDbContract.TableColumns.COLUMN_NAME_DISTANCE, aircraft.getDistance());
+        values.put(FavoritesDbContract.TableColumns.COLUMN_NAME_ORIGIN_COUNTRY, aircraft.getOriginCountry());
+        values.put(FavoritesDbContract.TableColumns.COLUMN_NAME_ON_GROUND, aircraft.isOnGround() ? 1 : 0);
+        if (stops == null)
+            values.putNull(FavoritesDbContract.TableColumns.COLUMN_NAME_STOPS_COUNT);
+        else
+            values.put(FavoritesDbContract.TableColumns.COLUMN_NAME_STOPS_COUNT, stops.length);
+
+        db.insertWithOnConflict(FavoritesDbContract.TableColumns.TABLE_NAME, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+
+        db.delete(FavoritesDbContract.StopsColumns.TABLE_NAME,
+                FavoritesDbContract.StopsColumns.COLUMN_NAME_ICAO + " = ?", new String[] { icao });
+
+        if (stops == null)
+            return;
+
+        for (int i = 0; i < stops.length; i++)
+        {
+            ContentValues stopValues = new ContentValues();
+            stopValues.put(FavoritesDbContract.StopsColumns.COLUMN_NAME_ICAO, icao);
+            stopValues.put(FavoritesDbContract.StopsColumns.COLUMN_NAME_POSITION, i);
+            stopValues.put(FavoritesDbContract.StopsColumns.COLUMN_NAME_STOP, stops[i]);
+
+            db.insert(FavoritesDbContract.StopsColumns.TABLE_NAME, null, stopValues);
+        }
+    }
+
     /**
      * Class to provide a handle to the database.
      */
     class FavoritesDbHelper extends SQLiteOpenHelper
     {
-        public static final int DATABASE_VERSION = 1;
+        // Version 2 stores the aircraft in their binary form instead of Java serialization,
+        // version 3 stores them in typed columns with a unique index on the ICAO
+        public static final int DATABASE_VERSION = 3;
         public static final String DATABASE_NAME = "Favorites.db";
 
         private static final String CREATE_TABLE_IF_NOT_EXIST = "CREATE TABLE IF NOT EXISTS " + FavoritesDbContract.TableColumns.TABLE_NAME + " (" +
                     FavoritesDbContract.TableColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    FavoritesDbContract.TableColumns.COLUMN_NAME_DATA + " TEXT)";
+                    FavoritesDbContract.TableColumns.COLUMN_NAME_ICAO + " TEXT NOT NULL, " +
+                    FavoritesDbContract.TableColumns.COLUMN_NAME_AIRCRAFT_ID + " INTEGER, " +
+                    FavoritesDbContract.TableColumns.COLUMN_NAME_REGISTRATION + " TEXT, " +
+                    FavoritesDbContract.TableColumns.COLUMN_NAME_CALLSIGN + " TEXT, " +
+                    FavoritesDbContract.TableColumns.COLUMN_NAME_LATITUDE + " REAL, " +
+                    FavoritesDbContract.TableColumns.COLUMN_NAME_LONGITUDE + " REAL, " +
+                    FavoritesDbContract.TableColumns.COLUMN_NAME_VELOCITY + " REAL, " +
+                    FavoritesDbContract.TableColumns.COLUMN_NAME_HEADING + " REAL, " +
+                    FavoritesDbContract.TableColumns.COLUMN_NAME_MODEL + " TEXT, " +
+                    FavoritesDbContract.TableColumns.COLUMN_NAME_MANUFACTURER + " TEXT, " +
+                    FavoritesDbContract.TableColumns.COLUMN_NAME_SRC_AIRPORT + " TEXT, " +
+                    FavoritesDbContract.TableColumns.COLUMN_NAME_DEST_AIRPORT + " TEXT, " +
+                    FavoritesDbContract.TableColumns.COLUMN_NAME_OPERATOR + " TEXT, " +
+                    FavoritesDbContract.TableColumns.COLUMN_NAME_DISTANCE + " REAL, " +
+                    FavoritesDbContract.TableColumns.COLUMN_NAME_ORIGIN_COUNTRY + " TEXT, " +
+                    FavoritesDbContract.TableColumns.COLUMN_NAME_ON_GROUND + " INTEGER, " +
+                    FavoritesDbContract.TableColumns.COLUMN_NAME_STOPS_COUNT + " INTEGER)";
+
+        // Unique, so adding a favorite again replaces it
+        private static final String CREATE_ICAO_INDEX_IF_NOT_EXIST = "CREATE UNIQUE INDEX IF NOT EXISTS " +
+                    FavoritesDbContract.TableColumns.INDEX_NAME_ICAO + " ON " + FavoritesDbContract.TableColumns.TABLE_NAME +
+                    " (" + FavoritesDbContract.TableColumns.COLUMN_NAME_ICAO + ")";
+
+        private static final String CREATE_STOPS_TABLE_IF_NOT_EXIST = "CREATE TABLE IF NOT EXISTS " + FavoritesDbContract.StopsColumns.TABLE_NAME + " (" +
+                    FavoritesDbContract.StopsColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    FavoritesDbContract.StopsColumns.COLUMN_NAME_ICAO + " TEXT NOT NULL, " +
+                    FavoritesDbContract.StopsColumns.COLUMN_NAME_POSITION + " INTEGER NOT NULL, " +
+                    FavoritesDbContract.StopsColumns.COLUMN_NAME_STOP + " TEXT)";
+
+        private static final String CREATE_STOPS_ICAO_INDEX_IF_NOT_EXIST = "CREATE INDEX IF NOT EXISTS " +
+                    FavoritesDbContract.StopsColumns.INDEX_NAME_ICAO + " ON " + FavoritesDbContract.StopsColumns.TABLE_NAME +
+                    " (" + FavoritesDbContract.StopsColumns.COLUMN_NAME_ICAO + ", " +
+                    FavoritesDbContract.StopsColumns.COLUMN_NAME_POSITION + ")";
+
+        // The table of the versions before 3 is renamed to this while it is migrated
+        private static final String LEGACY_TABLE_NAME = FavoritesDbContract.TableColumns.TABLE_NAME + "Legacy";
 
         public FavoritesDbHelper(Context context) {
             super(context, DATABASE_NAME, null, DATABASE_VERSION);
@@ -150,11 +355,71 @@ public class FavoritesManager
         public void onCreate(SQLiteDatabase db)
         {
             db.execSQL(CREATE_TABLE_IF_NOT_EXIST);
+            db.execSQL(CREATE_ICAO_INDEX_IF_NOT_EXIST);
+            db.execSQL(CREATE_STOPS_TABLE_IF_NOT_EXIST);
+            db.execSQL(CREATE_STOPS_ICAO_INDEX_IF_NOT_EXIST);
         }
 
         @Override
         public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion)
         {
+            // Reading the aircraft handles both the serialized and the binary form, so the versions before 3
+            // are migrated straight to the typed columns
+            if (oldVersion < 3)
+                migrateToTypedColumns(db);
+        }
+
+        /**
+         * Moves the favorites from the serialized aircraft of the versions before 3 to the typed columns.
+         * Called inside the upgrade transaction.
+         * @param db The database.
+         */
+        private void migrateToTypedColumns(SQLiteDatabase db)
+        {
+            db.execSQL("ALTER TABLE " + FavoritesDbContract.TableColumns.TABLE_NAME + " RENAME TO " + LEGACY_TABLE_NAME);
+            onCreate(db);
+
+            String[] projection = {
+                    FavoritesDbContract.TableColumns.COLUMN_NAME_DATA
+            };
+
+            Cursor cursor = db.query(LEGACY_TABLE_NAME, projection,
+                    null, null, null, null, FavoritesDbContract.TableColumns._ID);
+
+            try
+            {
+                int dataIndex = cursor.getColumnIndexOrThrow(FavoritesDbContract.TableColumns.COLUMN_NAME_DATA);
+
+                while (cursor.moveToNext())
+                {
+                    // Reads both the serialized and the binary form
+                    Aircraft aircraft;
+                    try
+                    {
+                        aircraft = new Aircraft(cursor.getString(dataIndex));
+                    }
+                    catch (RuntimeException e)
+                    {
+                        // A row that can't be read is lost either way, and mustn't fail the whole upgrade
+                        Log.w(LOG_TAG, "Skipping a favorite that can't be read", e);
+                        continue;
+                    }
+
+                    if (!canBeFavorite(aircraft))
+                    {
+                        Log.w(LOG_TAG, "Skipping a favorite without an ICAO");
+                        continue;
+                    }
+
+                    insertFavorite(db, aircraft);
+                }
+            }
+            finally
+            {
+                cursor.close();
+            }
+
+            db.execSQL("DROP TABLE " + LEGACY_TABLE_NAME);
         }
     }
 }
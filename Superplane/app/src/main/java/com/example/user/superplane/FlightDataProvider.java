@@ -3,10 +3,15 @@ package com.example.user.superplane;
 import android.content.Context;
 import android.location.Location;
 import android.os.AsyncTask;
+import android.os.CancellationSignal;
 import android.os.Looper;
+import android.os.OperationCanceledException;
 import android.support.annotation.Nullable;
 
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * Provides all the necessary flight data with easy functions.
@@ -14,14 +19,34 @@ import java.util.ArrayList;
  */
 public class FlightDataProvider
 {
+    // A fix is good enough to search with once it is this accurate and recent, in meters and milliseconds
+    private static final float LOCATION_ACCURACY = 100;
+    private static final long LOCATION_MAX_AGE = 60 * 1000;
+
+    // The longest wait for a good enough fix, after which the best recent one is used
+    private static final long LOCATION_TIMEOUT = 10 * 1000;
+
+    // How far the phone may be from its last known location, in kilometers
+    private static final double SPECULATIVE_PADDING = 1.0;
+
+    // The first ring of an adaptive search and how much every next ring grows, in kilometers
+    private static final double ADAPTIVE_START_RADIUS = 1.0;
+    private static final double ADAPTIVE_GROWTH = 2.0;
+
     private Context context;
     private AircraftFoundListener aircraftFoundListener;
 
-    private GetClosestAircraftTask closestAircraftTask;
+    // Shared by all the searches of the app, so that repeated and overlapping searches share one download
+    private AircraftResponseCache aircraftQueries;
+
+    private final SearchLifecycle searchLifecycle = new SearchLifecycle();
+    private volatile GetClosestAircraftTask closestAircraftTask;
+    private Location lastSearchLocation;
 
     public FlightDataProvider(Context context)
     {
         this.context = context;
+        this.aircraftQueries = AircraftResponseCache.getShared(context);
     }
 
     /**
@@ -33,31 +58,90 @@ public class FlightDataProvider
         this.aircraftFoundListener = listener;
     }
 
+    /**
+     * Adds a listener for the state changes of the searches.
+     * @param listener The listener, called on the UI thread.
+     */
+    public void addSearchStateListener(SearchStateListener listener)
+    {
+        searchLifecycle.addListener(listener);
+    }
+
+    /**
+     * Removes a listener of the state changes of the searches.
+     * @param listener The listener.
+     */
+    public void removeSearchStateListener(SearchStateListener listener)
+    {
+        searchLifecycle.removeListener(listener);
+    }
+
+    /**
+     * Getter for the state of the latest search. May be called from any thread.
+     * @return Returns the state.
+     */
+    public SearchLifecycle.State getSearchState()
+    {
+        return searchLifecycle.getState();
+    }
+
+    /**
+     * Getter for the location the last delivered search was done around.
+     * @return Returns the location or null if no search was delivered yet.
+     */
+    @Nullable
+    public Location getLastSearchLocation()
+    {
+        return lastSearchLocation;
+    }
+
     /**
      * Start the 'GetClosestAircraft' AsyncTask.
      * The result will be returned in the callback listener.
      */
     public void getClosestAircraft()
     {
-        if (closestAircraftTask != null)
-            if (closestAircraftTask.isRunning)
-                return;
+        startClosestAircraftTask(1);
+    }
+
+    /**
+     * Start the 'GetClosestAircraft' AsyncTask for several aircraft.
+     * The aircraft will be returned in the list callback of the listener, closest first.
+     * @param count The maximal amount of aircraft to find.
+     */
+    public void getNearestAircraft(int count)
+    {
+        startClosestAircraftTask(count);
+    }
+
+    /**
+     * Starts the 'GetClosestAircraft' AsyncTask unless a search is already in progress,
+     * in which case the call is ignored and only the search in progress calls the listener,
+     * with its own count of aircraft.
+     * @param count The maximal amount of aircraft to find, 1 for the single aircraft callback.
+     */
+    private void startClosestAircraftTask(int count)
+    {
+        int generation = searchLifecycle.begin();
+        if (generation == SearchLifecycle.NO_SEARCH)
+            return;
 
         // The constructor initiates the GPS lookup
-        closestAircraftTask = new GetClosestAircraftTask();
-        closestAircraftTask.execute();
+        closestAircraftTask = new GetClosestAircraftTask(count, generation);
+        closestAircraftTask.executeOnExecutor(TaskScheduler.getExecutor(TaskScheduler.Stage.LOCATION, TaskScheduler.Priority.USER));
     }
 
     /**
-     * Aborts the 'GetClosestAircraft' AsyncTask.
+     * Aborts the 'GetClosestAircraft' AsyncTask, stopping the GPS and any download in progress.
      * The callback will not be called.
      */
     public void abortGetClosestAircraft()
     {
-        if (closestAircraftTask == null)
+        GetClosestAircraftTask task = closestAircraftTask;
+        if (task == null)
             return;
 
-        closestAircraftTask.abortWithoutInterrupt();
+        task.abort();
         closestAircraftTask = null;
     }
 
@@ -65,140 +149,294 @@ public class FlightDataProvider
      * Task for getting the closest aircraft to the GPS location of the phone.
      * Done in background as to not disturb the UI thread.
      */
-    class GetClosestAircraftTask extends AsyncTask<Void, Void, Aircraft>
+    class GetClosestAircraftTask extends AsyncTask<Void, Void, ArrayList<Aircraft>>
     {
-        private ADSBExchangeManager apiManager;
+        private int aircraftCount;
+        private int generation;
+
         private LocationUpdateManager locationUpdateManager;
-        private LocationUpdateListener locationUpdateListener;
+        private LocationReadinessGate locationReadinessGate;
 
         private SettingsManager settingsManager;
 
         private Location phoneLocation;
 
-        private boolean isRunning = false;
+        // The speculative query has a signal of its own, since a signal can't be shared by two waiting calls
+        private final CancellationSignal cancellationSignal = new CancellationSignal();
+        private final CancellationSignal speculativeSignal = new CancellationSignal();
+
         private boolean internetError = false;
+        private boolean locationError = false;
 
-        public GetClosestAircraftTask()
+        public GetClosestAircraftTask(int aircraftCount, int generation)
         {
+            this.aircraftCount = aircraftCount;
+            this.generation = generation;
             settingsManager = new SettingsManager(context);
-            apiManager = new ADSBExchangeManager();
 
             locationUpdateManager = new LocationUpdateManager(context);
-            locationUpdateListener = new LocationUpdateListener() {
-                @Override
-                public void betterLocationFound(Location location)
-                {
-                    // A better location was found
-                    phoneLocation = location;
-                }
-            };
-
-            locationUpdateManager.setLocationUpdateListener(locationUpdateListener);
+            locationReadinessGate = new LocationReadinessGate(locationUpdateManager, LOCATION_ACCURACY, LOCATION_MAX_AGE);
 
             // Get current location
-            locationUpdateManager.beginListening();
+            locationReadinessGate.open();
         }
 
         /**
-         * Abort the task by causing it to exit nicely.
+         * Abort the task: stops the GPS at once, wakes the search if it waits for a location
+         * and cancels its downloads. Must be called from the UI thread.
          */
-        public void abortWithoutInterrupt()
+        public void abort()
         {
-            isRunning = false;
-        }
+            if (!searchLifecycle.cancel(generation))
+                return;
 
-        @Override
-        protected void onPreExecute()
-        {
-            isRunning = true;
+            cancellationSignal.cancel();
+            speculativeSignal.cancel();
+
+            locationUpdateManager.stopListening();
+            locationReadinessGate.cancel();
+
+            cancel(false);
         }
 
         @Nullable
         @Override
-        protected Aircraft doInBackground(Void... params)
+        protected ArrayList<Aircraft> doInBackground(Void... params)
         {
-            // Get current location
-            try {
-                //TODO: change to settings: sleep time (MAYBE NOT??)
-                Thread.sleep(2000);
-            }
-            catch (InterruptedException e) {
-                throw new RuntimeException("Failed at sleeping while retrieving GPS location!");
+            //Settings: search radius
+            float range = settingsManager.getSearchRadiusSetting();
+
+            // An adaptive search starts with a small ring and widens it up to the search radius
+            double radius = range;
+            if (settingsManager.getAdaptiveRadiusSetting())
+                radius = Math.min(ADAPTIVE_START_RADIUS, range);
+
+            // Start downloading around the last known location while the GPS refines it,
+            // with the radius padded by how far off that location might be
+            Location speculativeLocation = locationReadinessGate.getBestLocation();
+            FutureTask<AircraftSnapshot> speculativeQuery = null;
+            double speculativeRadius = 0;
+            if (speculativeLocation != null)
+            {
+                speculativeRadius = radius + getSpeculativePadding(speculativeLocation);
+                speculativeQuery = startQuery(speculativeLocation, speculativeRadius, speculativeSignal);
             }
+
+            // Wait only until the location is good enough (returns at once for a fresh fix)
+            phoneLocation = locationReadinessGate.await(LOCATION_TIMEOUT);
             locationUpdateManager.stopListening();
 
-            // Check if task was canceled
-            if (!isRunning)
+            if (phoneLocation == null)
             {
-                isRunning = false;
-                cancel(true);
+                locationError = true;
                 return null;
             }
 
-            //Settings: search radius
-            ArrayList<Aircraft> aircraft;
-            try
-            {
-                float range = settingsManager.getSearchRadiusSetting();
-                aircraft = apiManager.getAircraftInRangeList(phoneLocation, range);
-            }
-            catch (NoInternetException e)
+            SearchLifecycle.State stage = SearchLifecycle.State.LOCATING;
+            while (true)
             {
-                internetError = true;
-                return null;
-            }
+                // Every move fails once the search is canceled
+                if (!searchLifecycle.transition(generation, stage, SearchLifecycle.State.FETCHING))
+                    return null;
 
-            // Check if task was canceled
-            if (!isRunning)
-            {
-                isRunning = false;
-                cancel(true);
-                return null;
+                AircraftSnapshot aircraft = null;
+                try
+                {
+                    // The speculative result can be used if it covers the whole ring around the final fix
+                    if (speculativeQuery != null && speculativeLocation.distanceTo(phoneLocation) / 1000 + radius <= speculativeRadius)
+                    {
+                        try
+                        {
+                            aircraft = getQueryResult(speculativeQuery);
+                        }
+                        catch (NoInternetException e)
+                        {
+                            // Only a failure of the query around the final fix fails the search,
+                            // e.g. the speculative one may have started before the connection was up
+                            speculativeQuery = null;
+                        }
+                    }
+
+                    if (aircraft == null)
+                    {
+                        // The speculative download isn't needed anymore
+                        speculativeSignal.cancel();
+
+                        aircraft = aircraftQueries.getAircraft(buildQuery(phoneLocation, radius), cancellationSignal);
+                    }
+                }
+                catch (NoInternetException e)
+                {
+                    internetError = true;
+                    return null;
+                }
+                catch (OperationCanceledException e)
+                {
+                    return null;
+                }
+
+                if (!searchLifecycle.transition(generation, SearchLifecycle.State.FETCHING, SearchLifecycle.State.RANKING))
+                    return null;
+                stage = SearchLifecycle.State.RANKING;
+
+                // Only aircraft inside the ring count, since anything outside it may have a closer aircraft
+                // that the query didn't cover. Once the ring holds enough of them they are the true nearest.
+                ArrayList<Aircraft> nearestAircraft = findNearestAircraft(aircraft, (float)(radius * 1000));
+                if (nearestAircraft.size() >= aircraftCount || radius >= range)
+                    return nearestAircraft;
+
+                radius = Math.min(radius * ADAPTIVE_GROWTH, range);
             }
+        }
+
+        /**
+         * Calculates how much to pad the radius of a search around a location that is not final.
+         * @param location The location that might still be refined.
+         * @return Returns the padding in kilometers.
+         */
+        private double getSpeculativePadding(Location location)
+        {
+            double accuracy = location.hasAccuracy() ? location.getAccuracy() / 1000.0 : 0;
 
-            return findClosestAircraft(aircraft);
+            return accuracy + SPECULATIVE_PADDING;
         }
 
-        // TODO: write better code for closest aircraft
-        @Nullable
-        private Aircraft findClosestAircraft(ArrayList<Aircraft> aircraft)
+        /**
+         * Builds the query for a search, with the filters of the settings pushed to the server.
+         * @param location The location around to search.
+         * @param radius The distance with which to search from the specified location.
+         * @return Returns the query.
+         */
+        private AircraftQuery buildQuery(Location location, double radius)
         {
-            float minDistance = Float.MAX_VALUE;
-            Aircraft bestAircraft = null;
+            AircraftQuery.Builder builder = new AircraftQuery.Builder(location.getLatitude(), location.getLongitude(), radius);
 
-            for (int i = 0; i < aircraft.size(); i++)
-            {
-                Location aircraftLocation = new Location("");
-                aircraftLocation.setLatitude(aircraft.get(i).getLatitude());
-                aircraftLocation.setLongitude(aircraft.get(i).getLongitude());
+            if (settingsManager.getExcludeGroundSetting())
+                builder.addFilter(AircraftFilter.notOnGround());
 
-                float distance = aircraftLocation.distanceTo(phoneLocation);
+            return builder.build();
+        }
 
-                if (distance < minDistance)
+        /**
+         * Starts an aircraft query in the background.
+         * @param location The location around to search.
+         * @param radius The distance with which to search from the specified location.
+         * @param signal The signal to cancel the query with.
+         * @return Returns the running query.
+         */
+        private FutureTask<AircraftSnapshot> startQuery(final Location location, final double radius,
+                                                        final CancellationSignal signal)
+        {
+            FutureTask<AircraftSnapshot> query = new FutureTask<>(new Callable<AircraftSnapshot>() {
+                @Override
+                public AircraftSnapshot call() throws Exception
                 {
-                    minDistance = distance;
-                    bestAircraft = aircraft.get(i);
+                    return aircraftQueries.getAircraft(buildQuery(location, radius), signal);
                 }
+            });
+
+            TaskScheduler.execute(TaskScheduler.Stage.NETWORK, TaskScheduler.Priority.USER, query);
+
+            return query;
+        }
+
+        /**
+         * Waits for a background query to finish.
+         * @param query The query.
+         * @return Returns the result of the query.
+         * @throws NoInternetException
+         * @throws OperationCanceledException If the query was canceled.
+         */
+        private AircraftSnapshot getQueryResult(FutureTask<AircraftSnapshot> query) throws NoInternetException
+        {
+            try
+            {
+                return query.get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for the aircraft query!");
+            }
+            catch (ExecutionException e)
+            {
+                if (e.getCause() instanceof NoInternetException)
+                    throw (NoInternetException)e.getCause();
+                if (e.getCause() instanceof OperationCanceledException)
+                    throw (OperationCanceledException)e.getCause();
+
+                throw new RuntimeException(e.getCause());
             }
+        }
+
+        /**
+         * Finds the closest aircraft to the phone using a spatial index.
+         * The index keeps only the best aircraftCount candidates in a bounded heap, so the list is never sorted,
+         * and only those are created as Aircraft instances.
+         * @param aircraft The snapshot of the aircraft to choose from.
+         * @param maxDistance The maximal distance of the aircraft, in meters.
+         * @return Returns the closest aircraft within maxDistance, closest first.
+         */
+        private ArrayList<Aircraft> findNearestAircraft(AircraftSnapshot aircraft, float maxDistance)
+        {
+            // A padded search may return aircraft outside the range, which maxDistance filters out
+            AircraftSpatialIndex index = new AircraftSpatialIndex(aircraft);
+
+            int[] rows = new int[Math.max(1, Math.min(aircraftCount, aircraft.size()))];
+            int count = index.kNearest(phoneLocation.getLatitude(), phoneLocation.getLongitude(), maxDistance, rows);
 
-            return bestAircraft;
+            ArrayList<Aircraft> nearestAircraft = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                nearestAircraft.add(aircraft.getAircraft(rows[i]));
+
+            return nearestAircraft;
         }
 
         @Override
-        protected void onPostExecute(Aircraft aircraft)
+        protected void onPostExecute(ArrayList<Aircraft> aircraft)
         {
-            isRunning = false;
+            // A search canceled while it was finishing is not delivered
+            if (!searchLifecycle.deliver(generation))
+                return;
 
-            if (!internetError)
+            lastSearchLocation = phoneLocation;
+
+            try
             {
-                if (aircraftFoundListener != null)
-                    aircraftFoundListener.aircraftFound(aircraft);
+                deliverResult(aircraft);
             }
-            else
+            finally
+            {
+                searchLifecycle.transition(generation, SearchLifecycle.State.DELIVERING, SearchLifecycle.State.IDLE);
+            }
+        }
+
+        /**
+         * Calls the listener with the result of the search or its error.
+         * @param aircraft The aircraft that were found, closest first.
+         */
+        private void deliverResult(ArrayList<Aircraft> aircraft)
+        {
+            if (internetError)
             {
                 if (aircraftFoundListener != null)
                     aircraftFoundListener.internetError();
             }
+            else if (locationError)
+            {
+                if (aircraftFoundListener != null)
+                    aircraftFoundListener.locationError();
+            }
+            else
+            {
+                if (aircraftFoundListener == null)
+                    return;
+
+                if (aircraftCount == 1)
+                    aircraftFoundListener.aircraftFound(aircraft.isEmpty() ? null : aircraft.get(0));
+                else
+                    aircraftFoundListener.aircraftFound(aircraft);
+            }
         }
     }
 }
@@ -11,8 +11,6 @@ import org.json.JSONObject;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.Random;
 
 public class GoogleImageProvider extends DataDownloadManager
@@ -39,13 +37,15 @@ public class GoogleImageProvider extends DataDownloadManager
     }
 
     /**
-     * Start the execution of the 'GetRandomImage' AsyncTask.
+     * Start the execution of the 'GetRandomImage' AsyncTask, as background network work
+     * so that it never holds up a search.
      * The result will be returned in the callback.
      * @param phrase The phrase to find an image for.
      */
     public void findRandomImage(String phrase)
     {
-        new GetRandomImageTask().execute(phrase);
+        new GetRandomImageTask().executeOnExecutor(
+                TaskScheduler.getExecutor(TaskScheduler.Stage.NETWORK, TaskScheduler.Priority.BACKGROUND), phrase);
     }
 
     /**
@@ -114,12 +114,9 @@ public class GoogleImageProvider extends DataDownloadManager
 
             try
             {
-                URL url = new URL(src);
-                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-                connection.setDoInput(true);
-                connection.connect();
-                InputStream input = connection.getInputStream();
+                InputStream input = transport.openStream(src);
                 Bitmap myBitmap = BitmapFactory.decodeStream(input);
+                input.close();
 
                 return myBitmap;
             }
@@ -0,0 +1,268 @@
+package com.example.user.superplane;
+
+import android.os.CancellationSignal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reusable transport for all the HTTP and HTTPS requests of the app.
+ * Connections are kept alive and reused between requests, responses are requested gzipped
+ * and inflated transparently, and the bodies are read into pooled byte buffers.
+ */
+public class HttpTransport
+{
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    public static final int DEFAULT_READ_TIMEOUT = 15000;
+
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_POOLED_BUFFERS = 8;
+
+    // Leftovers bigger than this are not worth reading just to keep the connection
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private static HttpTransport sharedTransport;
+
+    private int connectTimeout;
+    private int readTimeout;
+
+    private ByteBufferPool bufferPool;
+
+    static
+    {
+        // The platform keeps idle connections (and TLS sessions) in a pool
+        // as long as the response streams are fully read and closed, not disconnected.
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+    }
+
+    /**
+     * Getter for the transport shared by the whole app, so that connections are reused
+     * by all the download managers.
+     * @return Returns the shared transport.
+     */
+    public static synchronized HttpTransport getShared()
+    {
+        if (sharedTransport == null)
+            sharedTransport = new HttpTransport(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+
+        return sharedTransport;
+    }
+
+    /**
+     * Constructor getting the timeouts of the requests.
+     * @param connectTimeout The connect timeout in milliseconds.
+     * @param readTimeout The read timeout in milliseconds.
+     */
+    public HttpTransport(int connectTimeout, int readTimeout)
+    {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.bufferPool = new ByteBufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+    }
+
+    /**
+     * Setter for the connect timeout.
+     * @param connectTimeout The connect timeout in milliseconds.
+     */
+    public void setConnectTimeout(int connectTimeout)
+    {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Setter for the read timeout.
+     * @param readTimeout The read timeout in milliseconds.
+     */
+    public void setReadTimeout(int readTimeout)
+    {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Getter for the pool of read buffers.
+     * @return Returns the buffer pool.
+     */
+    public ByteBufferPool getBufferPool()
+    {
+        return bufferPool;
+    }
+
+    /**
+     * Sends a GET request and opens the response body.
+     * Closing the returned stream hands the connection back for reuse.
+     * @param url The url to request, either HTTP or HTTPS.
+     * @return Returns the (already inflated) stream of the response body.
+     * @throws IOException
+     */
+    public InputStream openStream(String url) throws IOException
+    {
+        return openStream(url, null);
+    }
+
+    /**
+     * Sends a GET request and opens the response body, like openStream(String),
+     * but disconnects as soon as the request is canceled.
+     * @param url The url to request, either HTTP or HTTPS.
+     * @param cancellationSignal The signal to cancel the request with, or null.
+     *                           It is used by the request until the returned stream is closed.
+     * @return Returns the (already inflated) stream of the response body.
+     * @throws IOException
+     * @throws android.os.OperationCanceledException If the request was canceled.
+     */
+    public InputStream openStream(String url, final CancellationSignal cancellationSignal) throws IOException
+    {
+        if (cancellationSignal != null)
+            cancellationSignal.throwIfCanceled();
+
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        connection.setRequestProperty("Connection", "keep-alive");
+
+        // Disconnecting makes a blocked connect or read fail at once
+        if (cancellationSignal != null)
+        {
+            cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel()
+                {
+                    connection.disconnect();
+                }
+            });
+        }
+
+        InputStream inputStream;
+        try
+        {
+            inputStream = new ResponseStream(connection.getInputStream(), cancellationSignal);
+        }
+        catch (IOException ex)
+        {
+            connection.disconnect();
+
+            if (cancellationSignal != null)
+            {
+                cancellationSignal.setOnCancelListener(null);
+                cancellationSignal.throwIfCanceled();
+            }
+            throw ex;
+        }
+
+        // Setting Accept-Encoding ourselves turns off the platform's own inflation
+        if ("gzip".equalsIgnoreCase(connection.getContentEncoding()))
+        {
+            try
+            {
+                inputStream = new GZIPInputStream(inputStream, bufferPool.getBufferSize());
+            }
+            catch (IOException ex)
+            {
+                inputStream.close();
+                throw ex;
+            }
+        }
+
+        return inputStream;
+    }
+
+    /**
+     * Sends a GET request and reads the whole response body.
+     * @param url The url to request, either HTTP or HTTPS.
+     * @return Returns the response body as String.
+     * @throws IOException
+     */
+    public String readString(String url) throws IOException
+    {
+        InputStream inputStream = openStream(url);
+        try
+        {
+            return readToEnd(inputStream);
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Reads the specified input stream to its end using a pooled buffer.
+     * @param inputStream The input stream to read to its end.
+     * @return Returns the data read from the stream as String.
+     * @throws IOException
+     */
+    public String readToEnd(InputStream inputStream) throws IOException
+    {
+        byte[] chunk = bufferPool.acquire();
+        try
+        {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(chunk.length);
+
+            int count;
+            while ((count = inputStream.read(chunk)) != -1)
+                outputStream.write(chunk, 0, count);
+
+            return outputStream.toString("UTF-8");
+        }
+        finally
+        {
+            bufferPool.release(chunk);
+        }
+    }
+
+    /**
+     * Wrapper for a raw response body that reads any unread leftovers on close,
+     * which lets the platform put the connection back into its keep-alive pool.
+     */
+    class ResponseStream extends FilterInputStream
+    {
+        private CancellationSignal cancellationSignal;
+
+        public ResponseStream(InputStream inputStream, CancellationSignal cancellationSignal)
+        {
+            super(inputStream);
+            this.cancellationSignal = cancellationSignal;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (cancellationSignal != null)
+            {
+                cancellationSignal.setOnCancelListener(null);
+
+                // A disconnected connection has nothing left to drain
+                if (cancellationSignal.isCanceled())
+                {
+                    super.close();
+                    return;
+                }
+            }
+
+            byte[] chunk = bufferPool.acquire();
+            try
+            {
+                int drained = 0;
+                int count;
+                while (drained < MAX_DRAIN_BYTES && (count = in.read(chunk)) != -1)
+                    drained += count;
+            }
+            catch (IOException ex)
+            {
+                // The connection is broken and won't be reused anyway
+            }
+            finally
+            {
+                bufferPool.release(chunk);
+                super.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,675 @@
+package com.example.user.superplane;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A small pull parser reading JSON one token at a time straight from a byte stream.
+ * No tree is ever built, so the memory used is bounded by the value currently being read.
+ * The parser is lenient: commas and colons are treated as separators and are not validated.
+ */
+public class JsonPullParser
+{
+    public static final int TOKEN_BEGIN_OBJECT = 1;
+    public static final int TOKEN_END_OBJECT = 2;
+    public static final int TOKEN_BEGIN_ARRAY = 3;
+    public static final int TOKEN_END_ARRAY = 4;
+    public static final int TOKEN_STRING = 5;
+    public static final int TOKEN_NUMBER = 6;
+    public static final int TOKEN_BOOLEAN = 7;
+    public static final int TOKEN_NULL = 8;
+    public static final int TOKEN_END_DOCUMENT = 9;
+
+    private static final int TOKEN_NONE = 0;
+    private static final int BUFFER_SIZE = 8192;
+
+    // Exact powers of ten that can be represented as a double
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private InputStream inputStream;
+    private byte[] buffer;
+    private int pos;
+    private int limit;
+
+    private int peeked = TOKEN_NONE;
+
+    // Scratch space for the characters of the current string or number
+    private char[] chars = new char[64];
+
+    public JsonPullParser(InputStream inputStream)
+    {
+        this(inputStream, new byte[BUFFER_SIZE]);
+    }
+
+    /**
+     * Constructor getting the buffer to read the stream into, so that a pooled buffer can be used.
+     * @param inputStream The stream to parse.
+     * @param buffer The read buffer. It is owned by the parser until parsing ends.
+     */
+    public JsonPullParser(InputStream inputStream, byte[] buffer)
+    {
+        this.inputStream = inputStream;
+        this.buffer = buffer;
+        this.pos = 0;
+        this.limit = 0;
+    }
+
+    /**
+     * Constructor for parsing data that is already in memory, without copying it.
+     * @param data The data to parse.
+     * @param offset The offset of the first byte to parse.
+     * @param length The amount of bytes to parse.
+     */
+    public JsonPullParser(byte[] data, int offset, int length)
+    {
+        this.inputStream = null;
+        this.buffer = data;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * Gets the offset of the next token in the data, for a parser constructed over a byte array.
+     * Used to come back to a value later with a new parser at the same offset.
+     * @return Returns the offset of the next token.
+     * @throws IOException
+     */
+    public int getPosition() throws IOException
+    {
+        peek();
+        return pos;
+    }
+
+    /**
+     * Looks at the type of the next token without consuming it.
+     * @return Returns one of the TOKEN_* constants.
+     * @throws IOException
+     */
+    public int peek() throws IOException
+    {
+        if (peeked != TOKEN_NONE)
+            return peeked;
+
+        int c = skipSeparators();
+        switch (c)
+        {
+            case -1:
+                peeked = TOKEN_END_DOCUMENT;
+                break;
+            case '{':
+                peeked = TOKEN_BEGIN_OBJECT;
+                break;
+            case '}':
+                peeked = TOKEN_END_OBJECT;
+                break;
+            case '[':
+                peeked = TOKEN_BEGIN_ARRAY;
+                break;
+            case ']':
+                peeked = TOKEN_END_ARRAY;
+                break;
+            case '"':
+                peeked = TOKEN_STRING;
+                break;
+            case 't':
+            case 'f':
+                peeked = TOKEN_BOOLEAN;
+                break;
+            case 'n':
+                peeked = TOKEN_NULL;
+                break;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9'))
+                    peeked = TOKEN_NUMBER;
+                else
+                    throw syntaxError("Unexpected character '" + (char)c + "'");
+        }
+
+        return peeked;
+    }
+
+    /**
+     * Checks whether the current object or array has more elements.
+     * @return Returns whether there is another element before the closing bracket.
+     * @throws IOException
+     */
+    public boolean hasNext() throws IOException
+    {
+        int token = peek();
+        return token != TOKEN_END_OBJECT && token != TOKEN_END_ARRAY && token != TOKEN_END_DOCUMENT;
+    }
+
+    /**
+     * Consumes the opening bracket of an object.
+     * @throws IOException
+     */
+    public void beginObject() throws IOException
+    {
+        consumeStructural(TOKEN_BEGIN_OBJECT);
+    }
+
+    /**
+     * Consumes the closing bracket of an object.
+     * @throws IOException
+     */
+    public void endObject() throws IOException
+    {
+        consumeStructural(TOKEN_END_OBJECT);
+    }
+
+    /**
+     * Consumes the opening bracket of an array.
+     * @throws IOException
+     */
+    public void beginArray() throws IOException
+    {
+        consumeStructural(TOKEN_BEGIN_ARRAY);
+    }
+
+    /**
+     * Consumes the closing bracket of an array.
+     * @throws IOException
+     */
+    public void endArray() throws IOException
+    {
+        consumeStructural(TOKEN_END_ARRAY);
+    }
+
+    /**
+     * Reads the next property name and looks it up in a field table.
+     * No String is allocated for the name.
+     * @param table The table of the known field names.
+     * @return Returns the index of the name in the table or -1 if it is not a known field.
+     * @throws IOException
+     */
+    public int nextName(FieldTable table) throws IOException
+    {
+        expect(TOKEN_STRING);
+        int length = readStringChars();
+
+        return table.indexOf(chars, length);
+    }
+
+    /**
+     * Reads the next string value. Numbers are returned as their textual representation.
+     * @return Returns the string value.
+     * @throws IOException
+     */
+    public String nextString() throws IOException
+    {
+        int token = peek();
+        int length;
+        if (token == TOKEN_STRING)
+            length = readStringChars();
+        else if (token == TOKEN_NUMBER || token == TOKEN_BOOLEAN)
+            length = readLiteralChars();
+        else
+            throw syntaxError("Expected a string");
+
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * Reads the next string value through a pool, so that repeated values don't allocate.
+     * Numbers and booleans are returned as their text, like nextString.
+     * @param pool The pool to take the string from.
+     * @return Returns the pooled string.
+     * @throws IOException
+     */
+    public String nextString(StringPool pool) throws IOException
+    {
+        int token = peek();
+        int length;
+        if (token == TOKEN_STRING)
+            length = readStringChars();
+        else if (token == TOKEN_NUMBER || token == TOKEN_BOOLEAN)
+            length = readLiteralChars();
+        else
+            throw syntaxError("Expected a string");
+
+        return pool.intern(chars, length);
+    }
+
+    /**
+     * Reads the next number value. Quoted numbers are accepted as well.
+     * @return Returns the number as double.
+     * @throws IOException
+     */
+    public double nextDouble() throws IOException
+    {
+        int token = peek();
+        int length;
+        if (token == TOKEN_NUMBER)
+            length = readLiteralChars();
+        else if (token == TOKEN_STRING)
+            length = readStringChars();
+        else
+            throw syntaxError("Expected a number");
+
+        return parseDouble(chars, length);
+    }
+
+    /**
+     * Reads the next number value as an int.
+     * @return Returns the number truncated to an int.
+     * @throws IOException
+     */
+    public int nextInt() throws IOException
+    {
+        return (int)nextDouble();
+    }
+
+    /**
+     * Reads the next boolean value.
+     * @return Returns the boolean value.
+     * @throws IOException
+     */
+    public boolean nextBoolean() throws IOException
+    {
+        expect(TOKEN_BOOLEAN);
+        int length = readLiteralChars();
+
+        return length == 4 && chars[0] == 't';
+    }
+
+    /**
+     * Consumes a null literal.
+     * @throws IOException
+     */
+    public void nextNull() throws IOException
+    {
+        expect(TOKEN_NULL);
+        readLiteralChars();
+    }
+
+    /**
+     * Skips the next value, including all of its nested objects and arrays.
+     * @throws IOException
+     */
+    public void skipValue() throws IOException
+    {
+        int depth = 0;
+        do
+        {
+            int token = peek();
+            switch (token)
+            {
+                case TOKEN_BEGIN_OBJECT:
+                case TOKEN_BEGIN_ARRAY:
+                    consumeStructural(token);
+                    depth++;
+                    break;
+                case TOKEN_END_OBJECT:
+                case TOKEN_END_ARRAY:
+                    consumeStructural(token);
+                    depth--;
+                    break;
+                case TOKEN_STRING:
+                    skipString();
+                    break;
+                case TOKEN_END_DOCUMENT:
+                    throw syntaxError("Unexpected end of document");
+                default:
+                    readLiteralChars();
+            }
+        }
+        while (depth > 0);
+    }
+
+    /**
+     * Consumes a single structural token after checking its type.
+     * @param token The expected token.
+     * @throws IOException
+     */
+    private void consumeStructural(int token) throws IOException
+    {
+        expect(token);
+        pos++;
+        peeked = TOKEN_NONE;
+    }
+
+    /**
+     * Throws if the next token is not of the expected type.
+     * @param token The expected token.
+     * @throws IOException
+     */
+    private void expect(int token) throws IOException
+    {
+        if (peek() != token)
+            throw syntaxError("Expected token " + token + " but was " + peeked);
+    }
+
+    /**
+     * Skips whitespace and separators, leaving the position at the next significant byte.
+     * @return Returns the next significant byte or -1 at the end of the stream.
+     * @throws IOException
+     */
+    private int skipSeparators() throws IOException
+    {
+        while (true)
+        {
+            if (pos == limit && !fill())
+                return -1;
+
+            int c = buffer[pos];
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == ',' || c == ':')
+                pos++;
+            else
+                return c;
+        }
+    }
+
+    /**
+     * Refills the buffer from the stream once it has been fully consumed.
+     * @return Returns whether any bytes were read.
+     * @throws IOException
+     */
+    private boolean fill() throws IOException
+    {
+        if (inputStream == null)
+            return false;
+
+        int count = inputStream.read(buffer, 0, buffer.length);
+        if (count <= 0)
+            return false;
+
+        pos = 0;
+        limit = count;
+        return true;
+    }
+
+    /**
+     * Reads the next byte of the current token.
+     * @return Returns the byte.
+     * @throws IOException
+     */
+    private int readByte() throws IOException
+    {
+        if (pos == limit && !fill())
+            throw syntaxError("Unexpected end of document");
+
+        return buffer[pos++];
+    }
+
+    /**
+     * Reads an unquoted literal (number, true, false or null) into the scratch buffer.
+     * @return Returns the number of characters read.
+     * @throws IOException
+     */
+    private int readLiteralChars() throws IOException
+    {
+        peeked = TOKEN_NONE;
+        int length = 0;
+
+        while (pos < limit || fill())
+        {
+            int c = buffer[pos];
+            if (c == ',' || c == '}' || c == ']' || c == ':' || c == ' ' || c == '\n' || c == '\r' || c == '\t')
+                break;
+
+            if (length == chars.length)
+                growChars();
+            chars[length++] = (char)c;
+            pos++;
+        }
+
+        return length;
+    }
+
+    /**
+     * Reads a quoted string into the scratch buffer, decoding escapes and UTF-8.
+     * @return Returns the number of characters read.
+     * @throws IOException
+     */
+    private int readStringChars() throws IOException
+    {
+        peeked = TOKEN_NONE;
+        pos++; // Opening quote
+        int length = 0;
+
+        while (true)
+        {
+            int c = readByte();
+            if (c == '"')
+                return length;
+
+            // Make room for a surrogate pair
+            if (length + 2 > chars.length)
+                growChars();
+
+            if (c == '\\')
+            {
+                chars[length++] = readEscape();
+            }
+            else if (c >= 0)
+            {
+                chars[length++] = (char)c;
+            }
+            else if ((c & 0xE0) == 0xC0)
+            {
+                chars[length++] = (char)(((c & 0x1F) << 6) | readContinuation());
+            }
+            else if ((c & 0xF0) == 0xE0)
+            {
+                int codePoint = ((c & 0x0F) << 12) | (readContinuation() << 6);
+                chars[length++] = (char)(codePoint | readContinuation());
+            }
+            else
+            {
+                int codePoint = ((c & 0x07) << 18) | (readContinuation() << 12);
+                codePoint |= readContinuation() << 6;
+                codePoint |= readContinuation();
+                length += Character.toChars(codePoint, chars, length);
+            }
+        }
+    }
+
+    /**
+     * Reads the payload bits of a UTF-8 continuation byte.
+     * @return Returns the lower six bits of the byte.
+     * @throws IOException
+     */
+    private int readContinuation() throws IOException
+    {
+        return readByte() & 0x3F;
+    }
+
+    /**
+     * Reads the character following a backslash inside a string.
+     * @return Returns the unescaped character.
+     * @throws IOException
+     */
+    private char readEscape() throws IOException
+    {
+        int c = readByte();
+        switch (c)
+        {
+            case 'n':
+                return '\n';
+            case 't':
+                return '\t';
+            case 'r':
+                return '\r';
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++)
+                    value = (value << 4) | Character.digit(readByte(), 16);
+                return (char)value;
+            default:
+                return (char)c;
+        }
+    }
+
+    /**
+     * Skips a quoted string without decoding it.
+     * @throws IOException
+     */
+    private void skipString() throws IOException
+    {
+        peeked = TOKEN_NONE;
+        pos++; // Opening quote
+
+        while (true)
+        {
+            int c = readByte();
+            if (c == '\\')
+                readByte();
+            else if (c == '"')
+                return;
+        }
+    }
+
+    /**
+     * Doubles the size of the scratch buffer.
+     */
+    private void growChars()
+    {
+        char[] newChars = new char[chars.length * 2];
+        System.arraycopy(chars, 0, newChars, 0, chars.length);
+        chars = newChars;
+    }
+
+    /**
+     * Parses a decimal number without allocating, falling back to Double.parseDouble
+     * only when the result could not be computed exactly.
+     * @param chars The characters of the number.
+     * @param length The number of characters to parse.
+     * @return Returns the parsed number.
+     */
+    static double parseDouble(char[] chars, int length)
+    {
+        int i = 0;
+        boolean negative = false;
+        if (i < length && (chars[i] == '-' || chars[i] == '+'))
+            negative = chars[i++] == '-';
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean exact = true;
+        boolean anyDigit = false;
+
+        for (; i < length && chars[i] >= '0' && chars[i] <= '9'; i++)
+        {
+            anyDigit = true;
+            if (digits < 18)
+            {
+                mantissa = mantissa * 10 + (chars[i] - '0');
+                if (mantissa != 0)
+                    digits++;
+            }
+            else
+            {
+                exponent++;
+                exact = false;
+            }
+        }
+
+        if (i < length && chars[i] == '.')
+        {
+            for (i++; i < length && chars[i] >= '0' && chars[i] <= '9'; i++)
+            {
+                anyDigit = true;
+                if (digits < 18)
+                {
+                    mantissa = mantissa * 10 + (chars[i] - '0');
+                    exponent--;
+                    if (mantissa != 0)
+                        digits++;
+                }
+                else
+                {
+                    exact = false;
+                }
+            }
+        }
+
+        if (i < length && (chars[i] == 'e' || chars[i] == 'E'))
+        {
+            i++;
+            boolean negativeExponent = false;
+            if (i < length && (chars[i] == '-' || chars[i] == '+'))
+                negativeExponent = chars[i++] == '-';
+
+            int explicitExponent = 0;
+            for (; i < length && chars[i] >= '0' && chars[i] <= '9'; i++)
+                explicitExponent = Math.min(explicitExponent * 10 + (chars[i] - '0'), 100000);
+
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        if (!anyDigit || i != length)
+            throw new RuntimeException("Malformed JSON number: " + new String(chars, 0, length));
+
+        // A mantissa below 2^53 and a power of ten below 1e23 are both exact,
+        // so a single multiplication or division is correctly rounded.
+        if (exact && mantissa < (1L << 53) && exponent >= -22 && exponent <= 22)
+        {
+            double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+            return negative ? -value : value;
+        }
+
+        return Double.parseDouble(new String(chars, 0, length));
+    }
+
+    /**
+     * Creates the exception thrown for malformed input.
+     * @param message The description of the problem.
+     * @return Returns the exception to throw.
+     */
+    private RuntimeException syntaxError(String message)
+    {
+        return new RuntimeException("Malformed JSON: " + message);
+    }
+
+    /**
+     * A fixed table of property names, used to map a name to an index without allocating a String.
+     */
+    public static class FieldTable
+    {
+        private char[][] names;
+
+        /**
+         * Constructor getting the names of the fields, in index order.
+         * @param names The field names.
+         */
+        public FieldTable(String... names)
+        {
+            this.names = new char[names.length][];
+            for (int i = 0; i < names.length; i++)
+                this.names[i] = names[i].toCharArray();
+        }
+
+        /**
+         * Looks up a name in the table.
+         * @param chars The characters of the name.
+         * @param length The length of the name.
+         * @return Returns the index of the name or -1 if it isn't in the table.
+         */
+        public int indexOf(char[] chars, int length)
+        {
+            for (int i = 0; i < names.length; i++)
+            {
+                char[] name = names[i];
+                if (name.length != length)
+                    continue;
+
+                int j = 0;
+                while (j < length && name[j] == chars[j])
+                    j++;
+
+                if (j == length)
+                    return i;
+            }
+
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.example.user.superplane;
+
+import android.location.Location;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
+
+/**
+ * Keeps polling the position of a single aircraft while it is shown.
+ * The query stays centered on the searched location, so that every poll after the first
+ * downloads only the aircraft that changed. They are merged with the kept snapshot into a new one,
+ * since snapshots are shared and never change, but the new snapshot shares the string dictionary
+ * of the kept one and the parse buffers are pooled. The aircraft of every poll update an AircraftRegistry
+ * in place on the poll's thread, so a poll in steady state doesn't create any Aircraft instances
+ * and the UI thread only gets the aircraft that were added, changed or removed.
+ * Between polls the shown position is predicted by the registry, by dead reckoning, and updated every second,
+ * so the polls only need to correct the prediction. The poll interval is a few times the time
+ * the aircraft takes to move a visible distance, which is longer for slow and far aircraft.
+ * All the methods must be called from the UI thread, and the listener is called on the UI thread.
+ */
+public class LiveTracker
+{
+    private static final long MIN_POLL_INTERVAL = 5 * 1000;
+    private static final long MAX_POLL_INTERVAL = 60 * 1000;
+    private static final long DISPLAY_INTERVAL = 1000;
+
+    // A straight line prediction stays within a few hundred meters for this many visible moves
+    private static final int PREDICTED_MOVES_PER_POLL = 4;
+
+    // A move is visible when it is a part of the distance, but never less than the minimal move
+    private static final double MIN_VISIBLE_MOVE = 500;
+    private static final double VISIBLE_MOVE_RATIO = 0.05;
+
+    // The radius of the query around the searched location, relative to the distance of the aircraft
+    private static final double MIN_TRACKING_RADIUS = 5;
+    private static final double RADIUS_GROWTH = 1.5;
+
+    private static final double KNOTS_TO_METERS_PER_SECOND = 0.514444;
+
+    // Aircraft that missed a couple of the slowest polls are gone
+    private static final long EXPIRY_TIME = 2 * MAX_POLL_INTERVAL;
+
+    private final AircraftQueryCoalescer coalescer;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final int aircraftId;
+    private final double searchLatitude;
+    private final double searchLongitude;
+
+    private LiveTrackingListener listener;
+
+    private AircraftQuery query;
+    private boolean isTracking = false;
+    private boolean isPolling = false;
+
+    // Canceled by stop, so a hidden aircraft doesn't keep a download running
+    private CancellationSignal pollSignal;
+
+    // The outcome of the last poll, written by the poll and read after it is posted to the UI thread
+    private boolean isAircraftFound;
+    private boolean internetError;
+    private boolean isPollCanceled;
+
+    private final AircraftRegistry registry = new AircraftRegistry(EXPIRY_TIME);
+
+    // The last fix that is shown
+    private double latitude;
+    private double longitude;
+    private double velocity;
+    private double heading;
+    private double distance;
+
+    // Set when a poll didn't find the aircraft, so its last prediction isn't shown anymore
+    private boolean isAircraftLost = false;
+
+    private final double[] position = new double[2];
+    private final float[] distanceResult = new float[1];
+
+    /**
+     * Constructor getting the aircraft to track and the location it was searched around.
+     * @param aircraft The aircraft as it was found.
+     * @param searchLocation The location the aircraft was searched around.
+     */
+    public LiveTracker(Aircraft aircraft, Location searchLocation)
+    {
+        this.coalescer = AircraftQueryCoalescer.getShared();
+
+        this.aircraftId = aircraft.getId();
+        this.searchLatitude = searchLocation.getLatitude();
+        this.searchLongitude = searchLocation.getLongitude();
+
+        this.latitude = aircraft.getLatitude();
+        this.longitude = aircraft.getLongitude();
+        this.velocity = aircraft.getVelocity();
+        this.heading = aircraft.getHeading();
+        this.distance = calculateDistance(latitude, longitude);
+
+        this.query = buildQuery(distance);
+    }
+
+    /**
+     * Setter for the listener that is called with every update.
+     * @param listener The listener.
+     */
+    public void setLiveTrackingListener(LiveTrackingListener listener)
+    {
+        this.listener = listener;
+    }
+
+    /**
+     * Getter for the registry of all the aircraft around the searched location, updated by every poll.
+     * Its listeners are called on the UI thread, and the next poll updates the aircraft only after they return.
+     * @return Returns the registry.
+     */
+    public AircraftRegistry getRegistry()
+    {
+        return registry;
+    }
+
+    /**
+     * Starts polling, e.g. when the aircraft is shown.
+     */
+    public void start()
+    {
+        if (isTracking)
+            return;
+
+        isTracking = true;
+        displayTask.run();
+
+        // A poll from before the last stop is still running and schedules the next one
+        if (!isPolling)
+            poll();
+    }
+
+    /**
+     * Stops polling, e.g. when the aircraft is no longer visible. A running poll is canceled.
+     */
+    public void stop()
+    {
+        isTracking = false;
+        handler.removeCallbacks(pollStarter);
+        handler.removeCallbacks(displayTask);
+
+        if (pollSignal != null)
+            pollSignal.cancel();
+    }
+
+    private void poll()
+    {
+        isPolling = true;
+        pollSignal = new CancellationSignal();
+        TaskScheduler.execute(TaskScheduler.Stage.NETWORK, TaskScheduler.Priority.USER, pollTask);
+    }
+
+    private final Runnable pollStarter = new Runnable() {
+        @Override
+        public void run()
+        {
+            if (isTracking && !isPolling)
+                poll();
+        }
+    };
+
+    private final Runnable pollTask = new Runnable() {
+        @Override
+        public void run()
+        {
+            isAircraftFound = false;
+            internetError = false;
+            isPollCanceled = false;
+
+            try
+            {
+                AircraftSnapshot snapshot = coalescer.getAircraft(query, pollSignal);
+
+                // The next poll starts only after this one is delivered, so the UI thread never sees a half update
+                registry.update(snapshot, SystemClock.elapsedRealtime());
+                isAircraftFound = snapshot.indexOfId(aircraftId) != -1;
+            }
+            catch (NoInternetException e)
+            {
+                internetError = true;
+            }
+            catch (OperationCanceledException e)
+            {
+                isPollCanceled = true;
+            }
+            catch (RuntimeException e)
+            {
+                // A broken response is handled like a missing aircraft, the next poll will try again
+            }
+            finally
+            {
+                handler.post(deliverTask);
+            }
+        }
+    };
+
+    private final Runnable deliverTask = new Runnable() {
+        @Override
+        public void run()
+        {
+            isPolling = false;
+            pollSignal = null;
+
+            // Even when stopped, since the next update would drop the changes
+            registry.notifyListeners();
+
+            if (!isTracking)
+                return;
+
+            // Canceled by a stop, and started again before the poll was done
+            if (isPollCanceled)
+            {
+                poll();
+                return;
+            }
+
+            long interval = MAX_POLL_INTERVAL;
+            if (internetError)
+            {
+                if (listener != null)
+                    listener.internetError();
+            }
+            else if (isAircraftFound)
+            {
+                Aircraft aircraft = registry.get(aircraftId);
+                latitude = aircraft.getLatitude();
+                longitude = aircraft.getLongitude();
+                velocity = aircraft.getVelocity();
+                heading = aircraft.getHeading();
+                distance = calculateDistance(latitude, longitude);
+
+                // A query that barely covers the aircraft is widened before it leaves it
+                if (distance * RADIUS_GROWTH > query.getRadius())
+                    query = buildQuery(distance);
+
+                interval = calculatePollInterval();
+                isAircraftLost = false;
+
+                // Show the correction at once instead of at the next tick
+                handler.removeCallbacks(displayTask);
+                displayTask.run();
+            }
+            else
+            {
+                isAircraftLost = true;
+                handler.removeCallbacks(displayTask);
+
+                if (listener != null)
+                    listener.aircraftLost();
+            }
+
+            handler.postDelayed(pollStarter, interval);
+        }
+    };
+
+    private final Runnable displayTask = new Runnable() {
+        @Override
+        public void run()
+        {
+            // Nothing is predicted until the first poll sets a fix
+            if (!isTracking || isAircraftLost || !registry.predict(aircraftId, SystemClock.elapsedRealtime(), position))
+                return;
+
+            if (listener != null)
+                listener.positionUpdated(position[0], position[1], velocity, heading,
+                        calculateDistance(position[0], position[1]));
+
+            handler.postDelayed(this, DISPLAY_INTERVAL);
+        }
+    };
+
+    /**
+     * Calculates how long the prediction may run before it needs a correction,
+     * a few times the time the aircraft takes to move a visible distance.
+     * @return Returns the time until the next poll, in milliseconds.
+     */
+    private long calculatePollInterval()
+    {
+        double metersPerSecond = velocity * KNOTS_TO_METERS_PER_SECOND;
+        if (metersPerSecond <= 0)
+            return MAX_POLL_INTERVAL;
+
+        double visibleMove = Math.max(MIN_VISIBLE_MOVE, distance * 1000 * VISIBLE_MOVE_RATIO);
+        long interval = (long)(visibleMove / metersPerSecond * 1000) * PREDICTED_MOVES_PER_POLL;
+
+        return Math.max(MIN_POLL_INTERVAL, Math.min(interval, MAX_POLL_INTERVAL));
+    }
+
+    /**
+     * Builds the query around the searched location covering an aircraft at some distance.
+     * @param distance The distance of the aircraft, in kilometers.
+     * @return Returns the query.
+     */
+    private AircraftQuery buildQuery(double distance)
+    {
+        double radius = Math.max(MIN_TRACKING_RADIUS, distance * RADIUS_GROWTH * RADIUS_GROWTH);
+
+        return new AircraftQuery.Builder(searchLatitude, searchLongitude, radius).build();
+    }
+
+    /**
+     * Calculates the distance of a position from the searched location.
+     * @param latitude The latitude of the position.
+     * @param longitude The longitude of the position.
+     * @return Returns the distance in kilometers.
+     */
+    private double calculateDistance(double latitude, double longitude)
+    {
+        Location.distanceBetween(searchLatitude, searchLongitude, latitude, longitude, distanceResult);
+
+        return distanceResult[0] / 1000.0;
+    }
+}
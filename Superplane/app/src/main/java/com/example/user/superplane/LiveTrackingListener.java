@@ -0,0 +1,27 @@
+package com.example.user.superplane;
+
+/**
+ * Listener for the updates of a tracked aircraft.
+ */
+public abstract class LiveTrackingListener
+{
+    /**
+     * Callback for when a new position of the aircraft was downloaded.
+     * @param latitude The latitude of the aircraft.
+     * @param longitude The longitude of the aircraft.
+     * @param velocity The velocity of the aircraft, in knots.
+     * @param heading The heading of the aircraft from north.
+     * @param distance The distance of the aircraft from the searched location, in kilometers.
+     */
+    public abstract void positionUpdated(double latitude, double longitude, double velocity, double heading, double distance);
+
+    /**
+     * Callback for when the aircraft is no longer reported, e.g. after it landed or left the coverage.
+     */
+    public abstract void aircraftLost();
+
+    /**
+     * Callback for when there are internet connection problems.
+     */
+    public abstract void internetError();
+}
@@ -0,0 +1,126 @@
+package com.example.user.superplane;
+
+import android.location.Location;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for a location that is good enough to search with.
+ * Opens as soon as a fix meets the accuracy and age targets,
+ * so a fresh last known location is used right away instead of waiting for the GPS.
+ */
+public class LocationReadinessGate
+{
+    private LocationUpdateManager locationUpdateManager;
+
+    private final float requiredAccuracy;
+    private final long maxAgeMillis;
+
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private volatile Location bestLocation;
+
+    /**
+     * Constructor getting the location source and the targets a fix must meet.
+     * @param locationUpdateManager The location update manager to take the fixes from.
+     * @param requiredAccuracy The accuracy a fix must have, in meters.
+     * @param maxAgeMillis The maximal age of a fix, in milliseconds.
+     */
+    public LocationReadinessGate(LocationUpdateManager locationUpdateManager, float requiredAccuracy, long maxAgeMillis)
+    {
+        this.locationUpdateManager = locationUpdateManager;
+        this.requiredAccuracy = requiredAccuracy;
+        this.maxAgeMillis = maxAgeMillis;
+
+        locationUpdateManager.setLocationUpdateListener(locationUpdateListener);
+    }
+
+    private LocationUpdateListener locationUpdateListener = new LocationUpdateListener() {
+        @Override
+        public void betterLocationFound(Location location)
+        {
+            bestLocation = location;
+
+            if (isGoodEnough(location))
+                ready.countDown();
+        }
+    };
+
+    /**
+     * Starts listening to locations. Must be called from a thread with a looper (e.g. the UI thread).
+     */
+    public void open()
+    {
+        locationUpdateManager.beginListening();
+    }
+
+    /**
+     * Waits until a good enough location is found or the timeout passes.
+     * @param timeoutMillis The longest time to wait, in milliseconds.
+     * @return Returns the best location found, which might not meet the accuracy target
+     * if the timeout passed, or null if no location was found at all or the best one is too old.
+     */
+    @Nullable
+    public Location await(long timeoutMillis)
+    {
+        boolean isReady = false;
+        try
+        {
+            isReady = ready.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        // After the timeout an inaccurate fix is still close to the phone, but an old one may be anywhere
+        Location location = bestLocation;
+        if (!isReady && location != null && getAgeMillis(location) > maxAgeMillis)
+            return null;
+
+        return location;
+    }
+
+    /**
+     * Opens the gate without a good enough location, so that a waiting search returns at once.
+     */
+    public void cancel()
+    {
+        ready.countDown();
+    }
+
+    /**
+     * Getter for the best location found so far.
+     * @return Returns the best location or null if none was found yet.
+     */
+    @Nullable
+    public Location getBestLocation()
+    {
+        return bestLocation;
+    }
+
+    /**
+     * Checks whether a fix meets the accuracy and age targets.
+     * @param location The fix to check.
+     * @return Returns whether the fix is good enough.
+     */
+    private boolean isGoodEnough(Location location)
+    {
+        if (!location.hasAccuracy() || location.getAccuracy() > requiredAccuracy)
+            return false;
+
+        return getAgeMillis(location) <= maxAgeMillis;
+    }
+
+    /**
+     * Calculates the age of a fix.
+     * @param location The fix.
+     * @return Returns the age of the fix in milliseconds.
+     */
+    private static long getAgeMillis(Location location)
+    {
+        return (SystemClock.elapsedRealtimeNanos() - location.getElapsedRealtimeNanos()) / 1000000;
+    }
+}
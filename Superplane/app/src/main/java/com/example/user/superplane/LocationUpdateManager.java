@@ -89,6 +89,12 @@ public class LocationUpdateManager
         this.checkPermission();
 
         currentBestLocation = locationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER);
+
+        // The network fix is often newer, which lets a search start before the GPS is ready
+        Location networkLocation = locationManager.getLastKnownLocation(LocationManager.NETWORK_PROVIDER);
+        if (networkLocation != null && isBetterLocation(networkLocation, currentBestLocation))
+            currentBestLocation = networkLocation;
+
         if (currentBestLocation != null)
             if (locationUpdateListener != null)
                 locationUpdateListener.betterLocationFound(currentBestLocation);
@@ -1,12 +1,15 @@
 package com.example.user.superplane;
 
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.graphics.Canvas;
 import android.graphics.drawable.VectorDrawable;
 import android.location.Location;
 import android.support.design.widget.Snackbar;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.os.Parcelable;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -25,6 +28,7 @@ public class MainActivity extends AppCompatActivity
     public static final String ACTION_START_SEARCH = "ActionStart";
 
     private FlightDataProvider flightDataProvider;
+    private SettingsManager settingsManager;
 
     private CircleButtonView circleButtonView;
 
@@ -42,6 +46,8 @@ public class MainActivity extends AppCompatActivity
         circleButtonView = (CircleButtonView)findViewById(R.id.mainButton);
         circleButtonView.setStatusListener(circleButtonStatusListener);
 
+        settingsManager = new SettingsManager(this);
+
         flightDataProvider = new FlightDataProvider(this);
         flightDataProvider.setOnAircraftFoundListener(aircraftFoundListener);
     }
@@ -60,7 +66,12 @@ public class MainActivity extends AppCompatActivity
     private CircleButtonStatusListener circleButtonStatusListener = new CircleButtonStatusListener() {
         @Override
         public void buttonActivated() {
-            flightDataProvider.getClosestAircraft();
+            int aircraftCount = settingsManager.getAircraftCountSetting();
+
+            if (aircraftCount > 1)
+                flightDataProvider.getNearestAircraft(aircraftCount);
+            else
+                flightDataProvider.getClosestAircraft();
         }
 
         @Override
@@ -85,9 +96,7 @@ public class MainActivity extends AppCompatActivity
             //Handle cases of empty list (No aircraft found)
             if (aircraft != null)
             {
-                Intent detailsIntent = new Intent(MainActivity.this, AircraftDetailsActivity.class);
-                detailsIntent.putExtra(Aircraft.AIRCRAFT_INTENT_NAME, aircraft);
-                startActivity(detailsIntent);
+                openAircraftDetails(aircraft);
             }
             else
             {
@@ -106,8 +115,32 @@ public class MainActivity extends AppCompatActivity
         }
 
         @Override
-        public void aircraftFound(ArrayList<Aircraft> aircraft) {
-            throw new RuntimeException("Unimplemented Function Exception");
+        public void aircraftFound(final ArrayList<Aircraft> aircraft)
+        {
+            if (aircraft.isEmpty())
+            {
+                aircraftFound((Aircraft)null);
+                return;
+            }
+
+            // The list comes closest first
+            String[] items = new String[aircraft.size()];
+            for (int i = 0; i < items.length; i++)
+                items[i] = (i + 1) + ". " + aircraft.get(i).getModel() + " - " + aircraft.get(i).getOperator();
+
+            new AlertDialog.Builder(MainActivity.this)
+                    .setTitle("Nearest Aircraft")
+                    .setItems(items, new DialogInterface.OnClickListener() {
+                        public void onClick(DialogInterface dialog, int which) {
+                            openAircraftDetails(aircraft.get(which));
+                        }
+                    })
+                    .setOnCancelListener(new DialogInterface.OnCancelListener() {
+                        public void onCancel(DialogInterface dialog) {
+                            circleButtonView.deactivate();
+                        }
+                    })
+                    .show();
         }
 
         @Override
@@ -125,8 +158,36 @@ public class MainActivity extends AppCompatActivity
 
             circleButtonView.deactivate();
         }
+
+        @Override
+        public void locationError()
+        {
+            View rootView = findViewById(android.R.id.content);
+
+            Snackbar snackbar = Snackbar.make(rootView, "Location Not Found.", Snackbar.LENGTH_LONG);
+            snackbar.setAction("CLOSE", new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                }
+            });
+            snackbar.show();
+
+            circleButtonView.deactivate();
+        }
     };
 
+    /**
+     * Opens the details of a found aircraft, with the location it was found around for live tracking.
+     * @param aircraft The aircraft to show.
+     */
+    private void openAircraftDetails(Aircraft aircraft)
+    {
+        Intent detailsIntent = new Intent(this, AircraftDetailsActivity.class);
+        detailsIntent.putExtra(Aircraft.AIRCRAFT_INTENT_NAME, (Parcelable)aircraft);
+        detailsIntent.putExtra(AircraftDetailsActivity.SEARCH_LOCATION_INTENT_NAME, flightDataProvider.getLastSearchLocation());
+        startActivity(detailsIntent);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item)
     {
@@ -0,0 +1,118 @@
+package com.example.user.superplane;
+
+/**
+ * Predicts the position of an aircraft between fixes by dead reckoning: the aircraft is moved
+ * from its last fix along its track at its velocity, on a great circle.
+ * When a new fix arrives, the difference between the predicted and the new position
+ * is faded out over a short time instead of jumping.
+ */
+public class PositionPredictor
+{
+    private static final double EARTH_RADIUS = 6371000;
+    private static final double KNOTS_TO_METERS_PER_SECOND = 0.514444;
+
+    // A fix this old is not moved any farther, e.g. when the aircraft is no longer reported
+    private static final long MAX_PREDICTION_TIME = 2 * 60 * 1000;
+    private static final long CORRECTION_TIME = 3 * 1000;
+
+    private boolean hasFix = false;
+
+    private double fixLatitude;
+    private double fixLongitude;
+    private double metersPerSecond;
+    private double track;
+    private long fixTime;
+
+    // The error of the prediction at the time of the last fix, in degrees
+    private double errorLatitude;
+    private double errorLongitude;
+
+    /**
+     * Checks whether there is a fix to predict from.
+     * @return Returns whether a fix was set.
+     */
+    public boolean hasFix()
+    {
+        return hasFix;
+    }
+
+    /**
+     * Sets a new fix to predict from.
+     * @param latitude The latitude of the aircraft.
+     * @param longitude The longitude of the aircraft.
+     * @param velocity The velocity of the aircraft, in knots.
+     * @param track The track of the aircraft from north, in degrees.
+     * @param time The time of the fix, as SystemClock.elapsedRealtime.
+     * @param position Array of 2 used to calculate the correction, may be overwritten.
+     */
+    public void setFix(double latitude, double longitude, double velocity, double track, long time, double[] position)
+    {
+        if (hasFix)
+        {
+            // Start the correction from what was shown until now
+            predict(time, position);
+            errorLatitude = position[0] - latitude;
+            errorLongitude = normalizeLongitude(position[1] - longitude);
+        }
+        else
+        {
+            errorLatitude = 0;
+            errorLongitude = 0;
+        }
+
+        this.fixLatitude = latitude;
+        this.fixLongitude = longitude;
+        this.metersPerSecond = Math.max(0, velocity * KNOTS_TO_METERS_PER_SECOND);
+        this.track = track;
+        this.fixTime = time;
+        this.hasFix = true;
+    }
+
+    /**
+     * Forgets the fix, e.g. when the aircraft is no longer reported.
+     */
+    public void reset()
+    {
+        hasFix = false;
+    }
+
+    /**
+     * Predicts the position of the aircraft.
+     * @param time The time to predict for, as SystemClock.elapsedRealtime.
+     * @param position Array of 2 to write the latitude and the longitude to.
+     */
+    public void predict(long time, double[] position)
+    {
+        long elapsed = Math.max(0, Math.min(time - fixTime, MAX_PREDICTION_TIME));
+
+        // Destination along a great circle
+        double angularDistance = metersPerSecond * elapsed / 1000.0 / EARTH_RADIUS;
+        double latitude = Math.toRadians(fixLatitude);
+        double bearing = Math.toRadians(track);
+
+        double sinLatitude = Math.sin(latitude);
+        double cosLatitude = Math.cos(latitude);
+        double sinDistance = Math.sin(angularDistance);
+        double cosDistance = Math.cos(angularDistance);
+
+        double predictedLatitude = Math.asin(sinLatitude * cosDistance + cosLatitude * sinDistance * Math.cos(bearing));
+        double longitudeChange = Math.atan2(Math.sin(bearing) * sinDistance * cosLatitude,
+                cosDistance - sinLatitude * Math.sin(predictedLatitude));
+
+        // The error of the last correction fades out linearly
+        double remaining = 1 - Math.min(1, (double)Math.max(0, time - fixTime) / CORRECTION_TIME);
+
+        position[0] = Math.toDegrees(predictedLatitude) + errorLatitude * remaining;
+        position[1] = normalizeLongitude(fixLongitude + Math.toDegrees(longitudeChange) + errorLongitude * remaining);
+    }
+
+    private static double normalizeLongitude(double longitude)
+    {
+        if (longitude > 180)
+            return longitude - 360;
+        if (longitude < -180)
+            return longitude + 360;
+
+        return longitude;
+    }
+}
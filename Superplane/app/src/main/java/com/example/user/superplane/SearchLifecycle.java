@@ -0,0 +1,197 @@
+package com.example.user.superplane;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The lifecycle of an aircraft search, as a lock-free state machine:
+ * IDLE -> LOCATING -> FETCHING -> RANKING -> DELIVERING -> IDLE, or CANCELED from any active state.
+ * An adaptive search goes back from RANKING to FETCHING for every wider ring.
+ * Every search gets a generation number, and the state is kept together with it in a single atomic value,
+ * so that a canceled search that is still winding down can never move the state of the next search.
+ * Any thread may read the state, and listeners are notified of every change on the UI thread.
+ */
+public class SearchLifecycle
+{
+    public enum State
+    {
+        IDLE,
+        LOCATING,
+        FETCHING,
+        RANKING,
+        DELIVERING,
+        CANCELED
+    }
+
+    public static final int NO_SEARCH = -1;
+
+    private static final State[] STATES = State.values();
+
+    // The generation in the high 32 bits, the state ordinal in the low 32 bits
+    private final AtomicLong state = new AtomicLong(pack(0, State.IDLE));
+
+    private final CopyOnWriteArrayList<SearchStateListener> listeners = new CopyOnWriteArrayList<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Getter for the current state.
+     * @return Returns the state of the latest search.
+     */
+    public State getState()
+    {
+        return unpackState(state.get());
+    }
+
+    /**
+     * Checks whether a search is in progress.
+     * @return Returns whether the state is neither IDLE nor CANCELED.
+     */
+    public boolean isActive()
+    {
+        return isActive(getState());
+    }
+
+    /**
+     * Adds a listener for the state changes. Listeners may be added and removed from any thread.
+     * @param listener The listener.
+     */
+    public void addListener(SearchStateListener listener)
+    {
+        listeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Removes a listener of the state changes.
+     * @param listener The listener.
+     */
+    public void removeListener(SearchStateListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts a new search if none is in progress, moving to LOCATING.
+     * @return Returns the generation of the new search, or NO_SEARCH if a search is already in progress.
+     */
+    public int begin()
+    {
+        while (true)
+        {
+            long current = state.get();
+            State currentState = unpackState(current);
+            if (isActive(currentState))
+                return NO_SEARCH;
+
+            int generation = unpackGeneration(current) + 1;
+            if (state.compareAndSet(current, pack(generation, State.LOCATING)))
+            {
+                notifyListeners(currentState, State.LOCATING);
+                return generation;
+            }
+        }
+    }
+
+    /**
+     * Moves a search from one state to another.
+     * @param generation The generation of the search.
+     * @param from The state the search must be in.
+     * @param to The state to move to.
+     * @return Returns whether the search was in the expected state and moved,
+     * false if it was canceled or a newer search started.
+     */
+    public boolean transition(int generation, State from, State to)
+    {
+        if (!state.compareAndSet(pack(generation, from), pack(generation, to)))
+            return false;
+
+        notifyListeners(from, to);
+        return true;
+    }
+
+    /**
+     * Moves a search to DELIVERING from whatever stage it ended at, so that errors are delivered as well.
+     * @param generation The generation of the search.
+     * @return Returns whether the search may deliver its result, false if it was canceled.
+     */
+    public boolean deliver(int generation)
+    {
+        while (true)
+        {
+            long current = state.get();
+            State currentState = unpackState(current);
+            if (unpackGeneration(current) != generation || !isActive(currentState) || currentState == State.DELIVERING)
+                return false;
+
+            if (state.compareAndSet(current, pack(generation, State.DELIVERING)))
+            {
+                notifyListeners(currentState, State.DELIVERING);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Cancels a search if it is still in progress.
+     * @param generation The generation of the search.
+     * @return Returns whether the search was canceled, false if it already ended.
+     */
+    public boolean cancel(int generation)
+    {
+        while (true)
+        {
+            long current = state.get();
+            State currentState = unpackState(current);
+            if (unpackGeneration(current) != generation || !isActive(currentState))
+                return false;
+
+            if (state.compareAndSet(current, pack(generation, State.CANCELED)))
+            {
+                notifyListeners(currentState, State.CANCELED);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Notifies the listeners of a state change on the UI thread.
+     * @param oldState The previous state.
+     * @param newState The new state.
+     */
+    private void notifyListeners(final State oldState, final State newState)
+    {
+        if (listeners.isEmpty())
+            return;
+
+        handler.post(new Runnable() {
+            @Override
+            public void run()
+            {
+                for (SearchStateListener listener : listeners)
+                    listener.stateChanged(oldState, newState);
+            }
+        });
+    }
+
+    private static boolean isActive(State state)
+    {
+        return state != State.IDLE && state != State.CANCELED;
+    }
+
+    private static long pack(int generation, State state)
+    {
+        return ((long)generation << 32) | state.ordinal();
+    }
+
+    private static int unpackGeneration(long packed)
+    {
+        return (int)(packed >>> 32);
+    }
+
+    private static State unpackState(long packed)
+    {
+        return STATES[(int)packed];
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.user.superplane;
+
+/**
+ * Listener for when the state of an aircraft search changes.
+ */
+public abstract class SearchStateListener
+{
+    /**
+     * Callback for a state change, called on the UI thread.
+     * @param oldState The previous state.
+     * @param newState The new state.
+     */
+    public abstract void stateChanged(SearchLifecycle.State oldState, SearchLifecycle.State newState);
+}
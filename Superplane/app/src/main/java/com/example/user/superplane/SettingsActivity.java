@@ -30,7 +30,11 @@ public class SettingsActivity extends AppCompatActivity
 
     private Toolbar toolbar;
     private LoadImageSetting loadImageSetting;
+    private ExcludeGroundSetting excludeGroundSetting;
+    private AdaptiveRadiusSetting adaptiveRadiusSetting;
+    private LiveTrackingSetting liveTrackingSetting;
     private SearchRadiusSetting searchRadiusSetting;
+    private AircraftCountSetting aircraftCountSetting;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -48,8 +52,20 @@ public class SettingsActivity extends AppCompatActivity
         RelativeLayout loadImageSettingLayout = (RelativeLayout)findViewById(R.id.load_image_setting);
         loadImageSetting = new LoadImageSetting(loadImageSettingLayout);
 
+        RelativeLayout excludeGroundSettingLayout = (RelativeLayout)findViewById(R.id.exclude_ground_setting);
+        excludeGroundSetting = new ExcludeGroundSetting(excludeGroundSettingLayout);
+
+        RelativeLayout adaptiveRadiusSettingLayout = (RelativeLayout)findViewById(R.id.adaptive_radius_setting);
+        adaptiveRadiusSetting = new AdaptiveRadiusSetting(adaptiveRadiusSettingLayout);
+
+        RelativeLayout liveTrackingSettingLayout = (RelativeLayout)findViewById(R.id.live_tracking_setting);
+        liveTrackingSetting = new LiveTrackingSetting(liveTrackingSettingLayout);
+
         RelativeLayout searchRadiusSettingLayout = (RelativeLayout)findViewById(R.id.search_radius_setting);
         searchRadiusSetting = new SearchRadiusSetting(searchRadiusSettingLayout);
+
+        RelativeLayout aircraftCountSettingLayout = (RelativeLayout)findViewById(R.id.aircraft_count_setting);
+        aircraftCountSetting = new AircraftCountSetting(aircraftCountSettingLayout);
     }
 
     @Override
@@ -114,6 +130,111 @@ public class SettingsActivity extends AppCompatActivity
         };
     }
 
+    /**
+     * Class to handle the changing and displaying of the 'Exclude Ground' setting.
+     * Loads the layout from xml and sets the views accordingly.
+     */
+    class ExcludeGroundSetting
+    {
+        private TextView titleText;
+        private TextView subtext;
+        private CheckBox checkBox;
+
+        /**
+         * Constructor getting the layout of the setting.
+         * @param settingLayout The layout of the setting.
+         */
+        public ExcludeGroundSetting(RelativeLayout settingLayout)
+        {
+            titleText = (TextView)settingLayout.findViewById(R.id.setting_text);
+            titleText.setText("Exclude Ground");
+            subtext = (TextView)settingLayout.findViewById(R.id.setting_subtext);
+            subtext.setText("Ignore aircraft that are on the ground");
+
+            checkBox = (CheckBox)settingLayout.findViewById(R.id.setting_checkbox);
+            checkBox.setOnClickListener(clickListener);
+            checkBox.setChecked(settingsManager.getExcludeGroundSetting());
+        }
+
+        private View.OnClickListener clickListener = new View.OnClickListener() {
+            @Override
+            public void onClick(View v)
+            {
+                settingsManager.setExcludeGroundSetting(checkBox.isChecked());
+            }
+        };
+    }
+
+    /**
+     * Class to handle the changing and displaying of the 'Adaptive Radius' setting.
+     * Loads the layout from xml and sets the views accordingly.
+     */
+    class AdaptiveRadiusSetting
+    {
+        private TextView titleText;
+        private TextView subtext;
+        private CheckBox checkBox;
+
+        /**
+         * Constructor getting the layout of the setting.
+         * @param settingLayout The layout of the setting.
+         */
+        public AdaptiveRadiusSetting(RelativeLayout settingLayout)
+        {
+            titleText = (TextView)settingLayout.findViewById(R.id.setting_text);
+            titleText.setText("Adaptive Radius");
+            subtext = (TextView)settingLayout.findViewById(R.id.setting_subtext);
+            subtext.setText("Search close by first and widen up to the search radius");
+
+            checkBox = (CheckBox)settingLayout.findViewById(R.id.setting_checkbox);
+            checkBox.setOnClickListener(clickListener);
+            checkBox.setChecked(settingsManager.getAdaptiveRadiusSetting());
+        }
+
+        private View.OnClickListener clickListener = new View.OnClickListener() {
+            @Override
+            public void onClick(View v)
+            {
+                settingsManager.setAdaptiveRadiusSetting(checkBox.isChecked());
+            }
+        };
+    }
+
+    /**
+     * Class to handle the changing and displaying of the 'Live Tracking' setting.
+     * Loads the layout from xml and sets the views accordingly.
+     */
+    class LiveTrackingSetting
+    {
+        private TextView titleText;
+        private TextView subtext;
+        private CheckBox checkBox;
+
+        /**
+         * Constructor getting the layout of the setting.
+         * @param settingLayout The layout of the setting.
+         */
+        public LiveTrackingSetting(RelativeLayout settingLayout)
+        {
+            titleText = (TextView)settingLayout.findViewById(R.id.setting_text);
+            titleText.setText("Live Tracking");
+            subtext = (TextView)settingLayout.findViewById(R.id.setting_subtext);
+            subtext.setText("Keep updating the position of a found aircraft while it is shown");
+
+            checkBox = (CheckBox)settingLayout.findViewById(R.id.setting_checkbox);
+            checkBox.setOnClickListener(clickListener);
+            checkBox.setChecked(settingsManager.getLiveTrackingSetting());
+        }
+
+        private View.OnClickListener clickListener = new View.OnClickListener() {
+            @Override
+            public void onClick(View v)
+            {
+                settingsManager.setLiveTrackingSetting(checkBox.isChecked());
+            }
+        };
+    }
+
     /**
      * Class to handle the changing and displaying of the 'Search Radius' setting.
      * Loads the layout from xml and sets the views accordingly.
@@ -193,4 +314,56 @@ public class SettingsActivity extends AppCompatActivity
             return progress;
         }
     }
+
+    /**
+     * Class to handle the changing and displaying of the 'Aircraft Count' setting.
+     * Loads the layout from xml and sets the views accordingly.
+     */
+    class AircraftCountSetting
+    {
+        private static final int MIN_COUNT = 1;
+        private static final int MAX_COUNT = 10;
+
+        private TextView titleText;
+        private TextView valueText;
+        private SeekBar seekBar;
+
+        /**
+         * Constructor getting the layout of the setting.
+         * @param settingLayout The layout of the setting.
+         */
+        public AircraftCountSetting(RelativeLayout settingLayout)
+        {
+            titleText = (TextView)settingLayout.findViewById(R.id.setting_name);
+            titleText.setText("Aircraft Count");
+
+            valueText = (TextView)settingLayout.findViewById(R.id.setting_value);
+            valueText.setText(String.valueOf(settingsManager.getAircraftCountSetting()));
+
+            seekBar = (SeekBar)settingLayout.findViewById(R.id.seekBar);
+            seekBar.setMax(MAX_COUNT - MIN_COUNT);
+            seekBar.setProgress(settingsManager.getAircraftCountSetting() - MIN_COUNT);
+
+            seekBar.setOnSeekBarChangeListener(seekBarChangeListener);
+        }
+
+        private SeekBar.OnSeekBarChangeListener seekBarChangeListener = new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser)
+            {
+                valueText.setText(String.valueOf(progress + MIN_COUNT));
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar)
+            {
+                settingsManager.setAircraftCountSetting(seekBar.getProgress() + MIN_COUNT);
+            }
+        };
+    }
 }
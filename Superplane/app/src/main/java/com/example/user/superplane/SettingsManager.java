@@ -12,9 +12,15 @@ public class SettingsManager
     private final String PREF_FILE_NAME = "SharedPreferences";
     private final String DOWNLOAD_IMAGES_SETTING_KEY = "DOWNLOAD_IMAGES";
 
+    private final String EXCLUDE_GROUND_SETTING_KEY = "EXCLUDE_GROUND";
+    private final String ADAPTIVE_RADIUS_SETTING_KEY = "ADAPTIVE_RADIUS";
+    private final String LIVE_TRACKING_SETTING_KEY = "LIVE_TRACKING";
     private final String SEARCH_RADIUS_SETTING_KEY = "SEARCH_RADIUS";
     private final float DEFAULT_SEARCH_RADIUS = 5;
 
+    private final String AIRCRAFT_COUNT_SETTING_KEY = "AIRCRAFT_COUNT";
+    private final int DEFAULT_AIRCRAFT_COUNT = 1;
+
     private SharedPreferences sharedPreferences;
 
     public SettingsManager(Context context)
@@ -43,6 +49,69 @@ public class SettingsManager
         return sharedPreferences.getBoolean(DOWNLOAD_IMAGES_SETTING_KEY, false);
     }
 
+    /**
+     * Setter for the exclude ground setting.
+     * @param value Whether to leave aircraft on the ground out of the search.
+     */
+    public void setExcludeGroundSetting(boolean value)
+    {
+        sharedPreferences.edit().putBoolean(EXCLUDE_GROUND_SETTING_KEY, value).apply();
+    }
+
+    /**
+     * Getter for the exclude ground setting.
+     * @return Returns whether to leave aircraft on the ground out of the search.
+     */
+    public boolean getExcludeGroundSetting()
+    {
+        if (!sharedPreferences.contains(EXCLUDE_GROUND_SETTING_KEY))
+            sharedPreferences.edit().putBoolean(EXCLUDE_GROUND_SETTING_KEY, false).apply();
+
+        return sharedPreferences.getBoolean(EXCLUDE_GROUND_SETTING_KEY, false);
+    }
+
+    /**
+     * Setter for the adaptive radius setting.
+     * @param value Whether to search in growing rings up to the search radius.
+     */
+    public void setAdaptiveRadiusSetting(boolean value)
+    {
+        sharedPreferences.edit().putBoolean(ADAPTIVE_RADIUS_SETTING_KEY, value).apply();
+    }
+
+    /**
+     * Getter for the adaptive radius setting.
+     * @return Returns whether to search in growing rings up to the search radius.
+     */
+    public boolean getAdaptiveRadiusSetting()
+    {
+        if (!sharedPreferences.contains(ADAPTIVE_RADIUS_SETTING_KEY))
+            sharedPreferences.edit().putBoolean(ADAPTIVE_RADIUS_SETTING_KEY, false).apply();
+
+        return sharedPreferences.getBoolean(ADAPTIVE_RADIUS_SETTING_KEY, false);
+    }
+
+    /**
+     * Setter for the live tracking setting.
+     * @param value Whether to keep updating the position of a shown aircraft.
+     */
+    public void setLiveTrackingSetting(boolean value)
+    {
+        sharedPreferences.edit().putBoolean(LIVE_TRACKING_SETTING_KEY, value).apply();
+    }
+
+    /**
+     * Getter for the live tracking setting.
+     * @return Returns whether to keep updating the position of a shown aircraft.
+     */
+    public boolean getLiveTrackingSetting()
+    {
+        if (!sharedPreferences.contains(LIVE_TRACKING_SETTING_KEY))
+            sharedPreferences.edit().putBoolean(LIVE_TRACKING_SETTING_KEY, true).apply();
+
+        return sharedPreferences.getBoolean(LIVE_TRACKING_SETTING_KEY, true);
+    }
+
     /**
      * Setter for search radius setting.
      * @param value The value to set to search radius in kilometers.
@@ -63,4 +132,25 @@ public class SettingsManager
 
         return sharedPreferences.getFloat(SEARCH_RADIUS_SETTING_KEY, DEFAULT_SEARCH_RADIUS);
     }
+
+    /**
+     * Setter for the aircraft count setting.
+     * @param value The amount of nearest aircraft to show, 1 to go straight to the closest one.
+     */
+    public void setAircraftCountSetting(int value)
+    {
+        sharedPreferences.edit().putInt(AIRCRAFT_COUNT_SETTING_KEY, value).apply();
+    }
+
+    /**
+     * Getter for the aircraft count setting.
+     * @return Returns the amount of nearest aircraft to show.
+     */
+    public int getAircraftCountSetting()
+    {
+        if (!sharedPreferences.contains(AIRCRAFT_COUNT_SETTING_KEY))
+            sharedPreferences.edit().putInt(AIRCRAFT_COUNT_SETTING_KEY, DEFAULT_AIRCRAFT_COUNT).apply();
+
+        return sharedPreferences.getInt(AIRCRAFT_COUNT_SETTING_KEY, DEFAULT_AIRCRAFT_COUNT);
+    }
 }
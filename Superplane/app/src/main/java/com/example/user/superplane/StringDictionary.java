@@ -0,0 +1,62 @@
+package com.example.user.superplane;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Maps strings to small int codes and back, for the dictionary encoded columns of AircraftSnapshot.
+ * Codes are never reassigned, so a dictionary can be shared by consecutive snapshots.
+ */
+public class StringDictionary
+{
+    public static final int NO_STRING = -1;
+
+    private final HashMap<String, Integer> codes;
+    private final ArrayList<String> strings;
+
+    public StringDictionary()
+    {
+        this.codes = new HashMap<>();
+        this.strings = new ArrayList<>();
+    }
+
+    /**
+     * Gets the code of a string, adding the string to the dictionary if needed.
+     * @param string The string, may be null.
+     * @return Returns the code of the string, or NO_STRING for null.
+     */
+    public synchronized int encode(String string)
+    {
+        if (string == null)
+            return NO_STRING;
+
+        Integer code = codes.get(string);
+        if (code == null)
+        {
+            code = strings.size();
+            strings.add(string);
+            codes.put(string, code);
+        }
+
+        return code;
+    }
+
+    /**
+     * Gets the string of a code.
+     * @param code The code, or NO_STRING.
+     * @return Returns the string, or null for NO_STRING.
+     */
+    public synchronized String decode(int code)
+    {
+        return code == NO_STRING ? null : strings.get(code);
+    }
+
+    /**
+     * Getter for the amount of strings in the dictionary.
+     * @return Returns the amount of strings.
+     */
+    public synchronized int size()
+    {
+        return strings.size();
+    }
+}
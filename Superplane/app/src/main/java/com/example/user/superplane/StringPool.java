@@ -0,0 +1,114 @@
+package com.example.user.superplane;
+
+/**
+ * A bounded flyweight pool for the strings that repeat across aircraft, like operators,
+ * manufacturers, countries and airports, so that equal values share one instance.
+ * The pool is a fixed size table where every string has a single slot, and a string whose
+ * slot is taken replaces the one that was there. Looking up characters that are already
+ * pooled doesn't allocate anything.
+ * Safe to use from any thread: slots only ever hold complete immutable strings.
+ */
+public class StringPool
+{
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    // Longer values are rarely repeated, so they are not worth a slot
+    private static final int MAX_POOLED_LENGTH = 64;
+
+    private static StringPool sharedPool;
+
+    private final String[] slots;
+    private final int mask;
+
+    /**
+     * Getter for the pool shared by the whole app, so that strings are shared across polls
+     * and between the search results and the favorites.
+     * @return Returns the shared pool.
+     */
+    public static synchronized StringPool getShared()
+    {
+        if (sharedPool == null)
+            sharedPool = new StringPool(DEFAULT_CAPACITY);
+
+        return sharedPool;
+    }
+
+    /**
+     * Constructor getting the size of the pool.
+     * @param capacity The amount of slots, rounded up to a power of 2.
+     */
+    public StringPool(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+
+        this.slots = new String[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Gets the pooled instance of a string.
+     * @param string The string, may be null.
+     * @return Returns an equal pooled string, or null for null.
+     */
+    public String intern(String string)
+    {
+        if (string == null || string.length() > MAX_POOLED_LENGTH)
+            return string;
+
+        int slot = spread(string.hashCode()) & mask;
+        String pooled = slots[slot];
+        if (string.equals(pooled))
+            return pooled;
+
+        slots[slot] = string;
+        return string;
+    }
+
+    /**
+     * Gets the pooled string made of characters, creating it only if it isn't pooled.
+     * @param chars The characters.
+     * @param length The amount of characters to use.
+     * @return Returns the pooled string.
+     */
+    public String intern(char[] chars, int length)
+    {
+        if (length > MAX_POOLED_LENGTH)
+            return new String(chars, 0, length);
+
+        // The same hash String.hashCode gives
+        int hash = 0;
+        for (int i = 0; i < length; i++)
+            hash = 31 * hash + chars[i];
+
+        int slot = spread(hash) & mask;
+        String pooled = slots[slot];
+        if (pooled != null && contentEquals(pooled, chars, length))
+            return pooled;
+
+        String string = new String(chars, 0, length);
+        slots[slot] = string;
+        return string;
+    }
+
+    private static boolean contentEquals(String string, char[] chars, int length)
+    {
+        if (string.length() != length)
+            return false;
+
+        for (int i = 0; i < length; i++)
+            if (string.charAt(i) != chars[i])
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Mixes the high bits of a hash into the low bits the slot is taken from.
+     * @param hash The hash.
+     * @return Returns the mixed hash.
+     */
+    private static int spread(int hash)
+    {
+        return hash ^ (hash >>> 16);
+    }
+}
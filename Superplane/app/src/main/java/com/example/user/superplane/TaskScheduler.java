@@ -0,0 +1,164 @@
+package com.example.user.superplane;
+
+import android.os.Process;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the background work of the app on separate bounded thread pools per stage type,
+ * so that slow work of one type (e.g. an image download) never holds up another (e.g. an aircraft search).
+ * Within a stage, waiting tasks run by priority and then in the order they were added,
+ * and a thread runs a user-initiated task with a higher thread priority than background work.
+ */
+public class TaskScheduler
+{
+    public enum Stage
+    {
+        // Searches, which wait for the GPS before they download
+        LOCATION(2),
+        NETWORK(4),
+        CPU(Math.max(2, Runtime.getRuntime().availableProcessors())),
+        DISK(1);
+
+        private final int threadCount;
+
+        Stage(int threadCount)
+        {
+            this.threadCount = threadCount;
+        }
+    }
+
+    public enum Priority
+    {
+        // Declared in the order they run
+        USER,
+        BACKGROUND
+    }
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final ThreadPoolExecutor[] executors = new ThreadPoolExecutor[Stage.values().length];
+    private static final AtomicLong sequence = new AtomicLong();
+
+    // The stage of each pool thread, unset on any other thread
+    private static final ThreadLocal<Stage> currentStage = new ThreadLocal<>();
+
+    /**
+     * Runs a task on the pool of a stage.
+     * @param stage The stage type of the task.
+     * @param priority The priority of the task.
+     * @param task The task.
+     */
+    public static void execute(Stage stage, Priority priority, Runnable task)
+    {
+        getStageExecutor(stage).execute(new PrioritizedTask(task, priority, sequence.getAndIncrement()));
+    }
+
+    /**
+     * Checks whether the calling thread belongs to the pool of a stage, so that a task of the stage
+     * can do its work itself instead of waiting for another task of the same (possibly full) pool.
+     * @param stage The stage type.
+     * @return Returns whether the calling thread is a thread of the stage.
+     */
+    public static boolean isStageThread(Stage stage)
+    {
+        return currentStage.get() == stage;
+    }
+
+    /**
+     * Getter for an executor running its tasks on the pool of a stage with a fixed priority,
+     * e.g. for AsyncTask.executeOnExecutor.
+     * @param stage The stage type of the tasks.
+     * @param priority The priority of the tasks.
+     * @return Returns the executor.
+     */
+    public static Executor getExecutor(final Stage stage, final Priority priority)
+    {
+        return new Executor() {
+            @Override
+            public void execute(Runnable task)
+            {
+                TaskScheduler.execute(stage, priority, task);
+            }
+        };
+    }
+
+    /**
+     * Getter for the pool of a stage, created on first use.
+     * @param stage The stage type.
+     * @return Returns the pool.
+     */
+    private static synchronized ThreadPoolExecutor getStageExecutor(final Stage stage)
+    {
+        ThreadPoolExecutor executor = executors[stage.ordinal()];
+        if (executor != null)
+            return executor;
+
+        // The queue is unbounded, so the pool never grows past its core threads
+        executor = new ThreadPoolExecutor(stage.threadCount, stage.threadCount,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+                    @Override
+                    public Thread newThread(final Runnable runnable)
+                    {
+                        Runnable stageRunnable = new Runnable() {
+                            @Override
+                            public void run()
+                            {
+                                currentStage.set(stage);
+                                runnable.run();
+                            }
+                        };
+
+                        return new Thread(stageRunnable, "Superplane " + stage.name().toLowerCase() + " #" + threadNumber.getAndIncrement());
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+
+        executors[stage.ordinal()] = executor;
+        return executor;
+    }
+
+    /**
+     * A task ordered by its priority and then by the order it was added in.
+     */
+    static class PrioritizedTask implements Runnable, Comparable<PrioritizedTask>
+    {
+        private final Runnable task;
+        private final Priority priority;
+        private final long sequence;
+
+        public PrioritizedTask(Runnable task, Priority priority, long sequence)
+        {
+            this.task = task;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run()
+        {
+            Process.setThreadPriority(priority == Priority.USER
+                    ? Process.THREAD_PRIORITY_DEFAULT : Process.THREAD_PRIORITY_BACKGROUND);
+
+            task.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other)
+        {
+            if (priority != other.priority)
+                return priority.ordinal() - other.priority.ordinal();
+
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.user.superplane;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the binary form of the favorites.
+ */
+public class AircraftCodecTest
+{
+    @Test
+    public void testRoundTrip()
+    {
+        Aircraft aircraft = new Aircraft(7234551, "738065", "4X-EKA", "ELY001", 32.0114, 34.8867, 452.0, 271.3,
+                "Boeing 737-858", "Boeing", "LLBG Ben Gurion, Tel Aviv, Israel", "EGLL London Heathrow, United Kingdom",
+                new String[] {"LCLK Larnaca, Cyprus", "LGAV Athens, Greece"}, "El Al Israel Airlines", 12.4, "Israel", true);
+
+        AircraftJsonDecoderTest.assertSameAircraft(aircraft, AircraftCodec.decode(AircraftCodec.encode(aircraft)));
+    }
+
+    @Test
+    public void testRoundTripOfMissingFields()
+    {
+        Aircraft aircraft = new Aircraft(-1, null, null, null, 0, 0, 0, 0, null, null, null, null,
+                null, null, 0, null, false);
+
+        Aircraft decoded = AircraftCodec.decode(AircraftCodec.encode(aircraft));
+        AircraftJsonDecoderTest.assertSameAircraft(aircraft, decoded);
+        assertNull(decoded.getStops());
+    }
+
+    @Test
+    public void testRoundTripOfEmptyValues()
+    {
+        Aircraft aircraft = new Aircraft(Integer.MAX_VALUE, "", "", "", -90, -180, Double.NaN, Double.MAX_VALUE,
+                "", "", "", "", new String[0], "", Double.MIN_VALUE, "Zürich 東京", false);
+
+        Aircraft decoded = AircraftCodec.decode(AircraftCodec.encode(aircraft));
+        AircraftJsonDecoderTest.assertSameAircraft(aircraft, decoded);
+        assertEquals(0, decoded.getStops().length);
+    }
+
+    @Test
+    public void testRecognizesSerializedAircraft() throws IOException
+    {
+        Aircraft aircraft = new Aircraft(1, "738065", null, null, 0, 0, 0, 0, null, null, null, null,
+                null, null, 0, null, false);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(aircraft);
+        out.close();
+
+        assertTrue(AircraftCodec.isLegacy(bytes.toByteArray()));
+        assertFalse(AircraftCodec.isLegacy(AircraftCodec.encode(aircraft)));
+        assertFalse(AircraftCodec.isLegacy(new byte[0]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsUnknownVersion()
+    {
+        byte[] data = AircraftCodec.encode(new Aircraft(1, "738065", null, null, 0, 0, 0, 0, null, null, null, null,
+                null, null, 0, null, false));
+        data[0] = AircraftCodec.VERSION + 1;
+
+        AircraftCodec.decode(data);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsBrokenStopsCount()
+    {
+        byte[] data = AircraftCodec.encode(new Aircraft(1, "738065", null, null, 0, 0, 0, 0, null, null, null, null,
+                null, null, 0, null, false));
+
+        // The stops count is the last field, replaced by the varint of Integer.MAX_VALUE
+        byte[] broken = Arrays.copyOf(data, data.length + 4);
+        broken[data.length - 1] = (byte)0xFF;
+        broken[data.length] = (byte)0xFF;
+        broken[data.length + 1] = (byte)0xFF;
+        broken[data.length + 2] = (byte)0xFF;
+        broken[data.length + 3] = 0x07;
+
+        AircraftCodec.decode(broken);
+    }
+}
@@ -0,0 +1,386 @@
+package com.example.user.superplane;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the decoding of the responses into snapshots, against the plain decode of the same response.
+ * Runs on Robolectric since the snapshots index their rows with SparseIntArray.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class AircraftJsonDecoderTest
+{
+    // Large enough for the response to be decoded in parallel chunks
+    private static final int LARGE_LIST_SIZE = 3000;
+    private static final int PARALLEL_THRESHOLD = 256 * 1024;
+
+    // Too large to be kept in memory for the projected decode
+    private static final int HUGE_LIST_SIZE = 7000;
+    private static final int MAX_PROJECTED_BODY = 2 * 1024 * 1024;
+
+    private AircraftJsonDecoder decoder;
+
+    @Before
+    public void setUp()
+    {
+        decoder = new AircraftJsonDecoder(new ByteBufferPool(64, 2), new StringPool(64));
+    }
+
+    @Test
+    public void testStreamingDecode() throws IOException
+    {
+        decoder.setProjectionEnabled(false);
+        String response = buildResponse(0, 50, "1");
+
+        AircraftTable table = new AircraftTable();
+        decoder.decodeAircraftUpdate(stream(response), table, null);
+
+        assertEquals("1", table.getLastDataVersion());
+        assertSnapshot(decoder.decodeAircraftList(stream(response)), table.getSnapshot());
+        for (int row = 0; row < table.getSnapshot().size(); row++)
+            assertTrue(table.getSnapshot().isResolved(row));
+    }
+
+    @Test
+    public void testLargeListIsStreamed() throws IOException
+    {
+        String response = buildResponse(0, HUGE_LIST_SIZE, "1");
+        assertTrue(response.length() > MAX_PROJECTED_BODY);
+
+        AircraftTable table = new AircraftTable();
+        decoder.decodeAircraftUpdate(stream(response), table, null);
+
+        // The body was not kept, so every row is decoded in full
+        assertEquals("1", table.getLastDataVersion());
+        assertTrue(table.getSnapshot().isResolved(0));
+        assertSnapshot(decoder.decodeAircraftList(stream(response)), table.getSnapshot());
+    }
+
+    @Test
+    public void testProjectedDecode() throws IOException
+    {
+        String response = buildResponse(0, 50, "1");
+
+        AircraftTable table = new AircraftTable();
+        decoder.decodeAircraftUpdate(stream(response), table, null);
+        AircraftSnapshot snapshot = table.getSnapshot();
+
+        // Only the numeric fields are decoded until the strings of a row are needed
+        assertEquals("1", table.getLastDataVersion());
+        assertFalse(snapshot.isResolved(0));
+        assertEquals(recordLatitude(0), snapshot.getLatitude(0), 0);
+        assertFalse(snapshot.isResolved(0));
+        assertEquals("OPERATOR 0", snapshot.getString(AircraftSnapshot.COLUMN_OPERATOR, 0));
+        assertTrue(snapshot.isResolved(0));
+        assertFalse(snapshot.isResolved(1));
+
+        assertSnapshot(decoder.decodeAircraftList(stream(response)), snapshot);
+    }
+
+    @Test
+    public void testParallelDecode() throws IOException
+    {
+        String response = buildResponse(0, LARGE_LIST_SIZE, "1");
+        assertTrue(response.length() >= PARALLEL_THRESHOLD);
+
+        AircraftTable table = new AircraftTable();
+        decoder.decodeAircraftUpdate(stream(response), table, null);
+
+        assertEquals("1", table.getLastDataVersion());
+        assertSnapshot(decoder.decodeAircraftList(stream(response)), table.getSnapshot());
+    }
+
+    @Test
+    public void testMergeOfUpdate() throws IOException
+    {
+        AircraftTable table = new AircraftTable();
+        decoder.decodeAircraftUpdate(stream(buildResponse(0, 10, "1")), table, null);
+        AircraftSnapshot previous = table.getSnapshot();
+
+        // Rows never read keep pointing at the previous response
+        previous.getString(AircraftSnapshot.COLUMN_CALLSIGN, 1);
+
+        // Aircraft 0 and 1 moved, 2 changed its callsign, 3 to 9 are gone and 10 is new
+        String update = "{\"acList\": [{\"Id\": 0, \"Lat\": 10.5}, {\"Id\": 1, \"Long\": 20.5}, " +
+                "{\"Id\": 2, \"Call\": \"NEW2\", \"Stops\": []}, " + buildRecord(10) + "], \"lastDv\": \"2\"}";
+        decoder.decodeAircraftUpdate(stream(update), table, null);
+        AircraftSnapshot updated = table.getSnapshot();
+
+        assertEquals("2", table.getLastDataVersion());
+        assertEquals(4, updated.size());
+        assertEquals(-1, updated.indexOfId(3));
+
+        Aircraft first = updated.getAircraft(updated.indexOfId(0));
+        assertEquals(10.5, first.getLatitude(), 0);
+        assertEquals(recordLongitude(0), first.getLongitude(), 0);
+        assertEquals("CALL0", first.getCallsign());
+
+        Aircraft second = updated.getAircraft(updated.indexOfId(1));
+        assertEquals(recordLatitude(1), second.getLatitude(), 0);
+        assertEquals(20.5, second.getLongitude(), 0);
+        assertEquals("OPERATOR 1", second.getOperator());
+        assertArrayEquals(recordStops(1), second.getStops());
+
+        Aircraft third = updated.getAircraft(updated.indexOfId(2));
+        assertEquals("NEW2", third.getCallsign());
+        assertEquals("OPERATOR 2", third.getOperator());
+        assertEquals(0, third.getStops().length);
+
+        assertSameAircraft(recordAircraft(10), updated.getAircraft(updated.indexOfId(10)));
+
+        // The previous snapshot is left as it was
+        assertEquals(10, previous.size());
+        assertEquals(recordLatitude(0), previous.getLatitude(previous.indexOfId(0)), 0);
+    }
+
+    @Test
+    public void testUnknownPartialRecordAsksForFullList() throws IOException
+    {
+        AircraftTable table = new AircraftTable();
+        decoder.decodeAircraftUpdate(stream(buildResponse(0, 10, "1")), table, null);
+
+        decoder.decodeAircraftUpdate(stream("{\"acList\": [{\"Id\": 100, \"Spd\": 300}], \"lastDv\": \"2\"}"), table, null);
+
+        assertNull(table.getLastDataVersion());
+    }
+
+    @Test
+    public void testCanceledDecodeLeavesTableUnchanged() throws IOException
+    {
+        AircraftTable table = new AircraftTable();
+        decoder.decodeAircraftUpdate(stream(buildResponse(0, 10, "1")), table, null);
+        AircraftSnapshot previous = table.getSnapshot();
+
+        CancellationSignal cancellationSignal = new CancellationSignal();
+        cancellationSignal.cancel();
+        try
+        {
+            decoder.decodeAircraftUpdate(stream(buildResponse(0, LARGE_LIST_SIZE, "2")), table, cancellationSignal);
+            fail("The decode was not canceled!");
+        }
+        catch (OperationCanceledException e)
+        {
+            // Expected
+        }
+
+        assertSame(previous, table.getSnapshot());
+        assertEquals("1", table.getLastDataVersion());
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() throws IOException
+    {
+        String response = buildResponse(0, 50, "1");
+
+        // A merged snapshot holds resolved rows, fully updated rows and rows carried unresolved
+        AircraftTable table = new AircraftTable();
+        decoder.decodeAircraftUpdate(stream(response), table, null);
+        table.getSnapshot().getString(AircraftSnapshot.COLUMN_MODEL, 3);
+
+        StringBuilder update = new StringBuilder("{\"acList\": [").append(buildRecord(0));
+        for (int id = 1; id < 50; id++)
+            update.append(", {\"Id\": ").append(id).append(", \"Lat\": ").append(recordLatitude(id)).append('}');
+        decoder.decodeAircraftUpdate(stream(update.append("], \"lastDv\": \"2\"}").toString()), table, null);
+        AircraftSnapshot snapshot = table.getSnapshot();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        snapshot.writeTo(new DataOutputStream(bytes));
+        AircraftSnapshot read = AircraftSnapshot.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), bytes.size(), decoder);
+
+        // Rows never read are written as their records, not decoded
+        assertFalse(snapshot.isResolved(1));
+        assertFalse(read.isResolved(1));
+        assertTrue(read.isResolved(0));
+        assertTrue(read.isResolved(3));
+
+        assertSnapshot(decoder.decodeAircraftList(stream(response)), read);
+    }
+
+    @Test
+    public void testBrokenSnapshotIsRejected() throws IOException
+    {
+        AircraftTable table = new AircraftTable();
+        decoder.decodeAircraftUpdate(stream(buildResponse(0, 50, "1")), table, null);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        table.getSnapshot().writeTo(new DataOutputStream(bytes));
+        byte[] data = bytes.toByteArray();
+
+        // Truncated
+        assertUnreadable(data, data.length / 2);
+
+        // A size larger than the data, and a negative size
+        data[1] = 0x7F;
+        assertUnreadable(data, data.length);
+        data[1] = (byte)0xFF;
+        assertUnreadable(data, data.length);
+    }
+
+    private static void assertUnreadable(byte[] data, int length)
+    {
+        try
+        {
+            AircraftSnapshot.readFrom(new DataInputStream(new ByteArrayInputStream(data, 0, length)), length, null);
+            fail("A broken snapshot was read!");
+        }
+        catch (IOException e)
+        {
+            // Expected
+        }
+    }
+
+    /**
+     * Checks that a snapshot holds exactly a list of aircraft, in the same order.
+     * @param expected The aircraft.
+     * @param snapshot The snapshot.
+     */
+    private static void assertSnapshot(ArrayList<Aircraft> expected, AircraftSnapshot snapshot)
+    {
+        assertEquals(expected.size(), snapshot.size());
+        for (int row = 0; row < expected.size(); row++)
+        {
+            assertEquals(row, snapshot.indexOfId(expected.get(row).getId()));
+            assertSameAircraft(expected.get(row), snapshot.getAircraft(row));
+        }
+    }
+
+    /**
+     * Checks that two aircraft have the same fields.
+     * @param expected The expected aircraft.
+     * @param actual The actual aircraft.
+     */
+    static void assertSameAircraft(Aircraft expected, Aircraft actual)
+    {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getIcao(), actual.getIcao());
+        assertEquals(expected.getRegistration(), actual.getRegistration());
+        assertEquals(expected.getCallsign(), actual.getCallsign());
+        assertEquals(expected.getLatitude(), actual.getLatitude(), 0);
+        assertEquals(expected.getLongitude(), actual.getLongitude(), 0);
+        assertEquals(expected.getVelocity(), actual.getVelocity(), 0);
+        assertEquals(expected.getHeading(), actual.getHeading(), 0);
+        assertEquals(expected.getModel(), actual.getModel());
+        assertEquals(expected.getManufacturer(), actual.getManufacturer());
+        assertEquals(expected.getSrcAirport(), actual.getSrcAirport());
+        assertEquals(expected.getDestAirport(), actual.getDestAirport());
+        assertEquals(expected.getOperator(), actual.getOperator());
+        assertEquals(expected.getDistance(), actual.getDistance(), 0);
+        assertEquals(expected.getOriginCountry(), actual.getOriginCountry());
+        assertEquals(expected.isOnGround(), actual.isOnGround());
+        assertTrue(Arrays.equals(expected.getStops(), actual.getStops()));
+    }
+
+    private static ByteArrayInputStream stream(String response) throws IOException
+    {
+        return new ByteArrayInputStream(response.getBytes("UTF-8"));
+    }
+
+    /**
+     * Builds a full response of consecutive aircraft.
+     * @param first The Id of the first aircraft.
+     * @param count The amount of aircraft.
+     * @param lastDataVersion The data version of the response.
+     * @return Returns the response.
+     */
+    private static String buildResponse(int first, int count, String lastDataVersion)
+    {
+        StringBuilder builder = new StringBuilder("{\"src\": 1, \"acList\": [");
+        for (int id = first; id < first + count; id++)
+        {
+            if (id > first)
+                builder.append(", ");
+            builder.append(buildRecord(id));
+        }
+
+        return builder.append("], \"lastDv\": \"").append(lastDataVersion).append("\"}").toString();
+    }
+
+    /**
+     * Builds the full record of an aircraft, like the one recordAircraft returns.
+     * @param id The Id of the aircraft.
+     * @return Returns the record.
+     */
+    private static String buildRecord(int id)
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"Id\": ").append(id)
+                .append(", \"Icao\": \"").append(Integer.toHexString(0x738000 + id).toUpperCase())
+                .append("\", \"Reg\": \"4X-").append(id)
+                .append("\", \"Call\": \"CALL").append(id)
+                .append("\", \"Lat\": ").append(recordLatitude(id))
+                .append(", \"Long\": ").append(recordLongitude(id))
+                .append(", \"Spd\": ").append(id % 500)
+                .append(", \"Trak\": ").append(id % 360).append(".5")
+                .append(", \"Mdl\": \"Boeing 737-8").append(id % 100)
+                .append("\", \"Man\": \"Boeing\", \"From\": \"LLBG Ben Gurion, Tel Aviv, Israel")
+                .append("\", \"To\": \"EGLL London Heathrow, United Kingdom")
+                .append("\", \"Op\": \"OPERATOR ").append(id)
+                .append("\", \"Dst\": ").append(id % 100).append(".25")
+                .append(", \"Cou\": \"Israel\", \"Gnd\": ").append(id % 7 == 0)
+                .append(", \"Unknown\": {\"Nested\": [1, 2, \"]\"]}");
+
+        String[] stops = recordStops(id);
+        if (stops != null)
+        {
+            builder.append(", \"Stops\": [");
+            for (int i = 0; i < stops.length; i++)
+                builder.append(i > 0 ? ", \"" : "\"").append(stops[i]).append('"');
+            builder.append(']');
+        }
+
+        return builder.append('}').toString();
+    }
+
+    private static Aircraft recordAircraft(int id)
+    {
+        return new Aircraft(id, Integer.toHexString(0x738000 + id).toUpperCase(), "4X-" + id, "CALL" + id,
+                recordLatitude(id), recordLongitude(id), id % 500, id % 360 + 0.5, "Boeing 737-8" + (id % 100),
+                "Boeing", "LLBG Ben Gurion, Tel Aviv, Israel", "EGLL London Heathrow, United Kingdom",
+                recordStops(id), "OPERATOR " + id, id % 100 + 0.25, "Israel", id % 7 == 0);
+    }
+
+    private static double recordLatitude(int id)
+    {
+        return 30 + id * 0.001;
+    }
+
+    private static double recordLongitude(int id)
+    {
+        return 34 - id * 0.001;
+    }
+
+    /**
+     * Gets the stops of an aircraft: none, an empty array or a few stops.
+     * @param id The Id of the aircraft.
+     * @return Returns the stops or null.
+     */
+    private static String[] recordStops(int id)
+    {
+        switch (id % 3)
+        {
+            case 0:
+                return null;
+            case 1:
+                return new String[] {"LCLK Larnaca, Cyprus", "STOP " + id};
+            default:
+                return new String[0];
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.user.superplane;
+
+import android.os.CancellationSignal;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the geohash keyed cache in front of the coalescer, with a coalescer that never downloads.
+ * Runs on Robolectric for SystemClock and Location.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class AircraftResponseCacheTest
+{
+    private static final long LONG_TIME = 60 * 60 * 1000;
+    private static final long MEMORY_BUDGET = 1024 * 1024;
+
+    // Two locations in the same precision 7 cell, a third in the next cell
+    private static final double LATITUDE = 57.64911;
+    private static final double LONGITUDE = 10.40744;
+    private static final double NEAR_LONGITUDE = 10.40750;
+    private static final double NEXT_CELL_LONGITUDE = 10.41000;
+
+    @Test
+    public void testGeohash()
+    {
+        double[] cell = new double[4];
+        assertEquals("u4pruyd", AircraftResponseCache.encodeGeohash(LATITUDE, LONGITUDE, cell));
+
+        assertTrue(cell[0] <= LATITUDE && LATITUDE < cell[1]);
+        assertTrue(cell[2] <= LONGITUDE && LONGITUDE < cell[3]);
+
+        // Precision 7 is 35 bits, 17 of latitude and 18 of longitude
+        assertEquals(180 / Math.pow(2, 17), cell[1] - cell[0], 1e-12);
+        assertEquals(360 / Math.pow(2, 18), cell[3] - cell[2], 1e-12);
+
+        assertEquals("u4pruyd", AircraftResponseCache.encodeGeohash(LATITUDE, NEAR_LONGITUDE, cell));
+        assertNotEquals("u4pruyd", AircraftResponseCache.encodeGeohash(LATITUDE, NEXT_CELL_LONGITUDE, cell));
+        assertEquals("s000000", AircraftResponseCache.encodeGeohash(0, 0, cell));
+    }
+
+    @Test
+    public void testSameCellIsServedFromCache() throws NoInternetException
+    {
+        FakeCoalescer coalescer = new FakeCoalescer();
+        AircraftResponseCache cache = new AircraftResponseCache(coalescer, null, LONG_TIME, LONG_TIME, MEMORY_BUDGET);
+
+        AircraftSnapshot first = cache.getAircraft(new AircraftQuery.Builder(LATITUDE, LONGITUDE, 50).build());
+        AircraftSnapshot second = cache.getAircraft(new AircraftQuery.Builder(LATITUDE, NEAR_LONGITUDE, 50).build());
+
+        assertSame(first, second);
+        assertEquals(1, coalescer.getQueryCount());
+    }
+
+    @Test
+    public void testQueryCoversCell() throws NoInternetException
+    {
+        FakeCoalescer coalescer = new FakeCoalescer();
+        AircraftResponseCache cache = new AircraftResponseCache(coalescer, null, LONG_TIME, LONG_TIME, MEMORY_BUDGET);
+
+        cache.getAircraft(new AircraftQuery.Builder(LATITUDE, LONGITUDE, 50).build());
+
+        // The download is centered on the cell and reaches the radius from anywhere in it
+        double[] cell = new double[4];
+        AircraftResponseCache.encodeGeohash(LATITUDE, LONGITUDE, cell);
+        AircraftQuery cellQuery = coalescer.getQuery(0);
+        assertEquals((cell[0] + cell[1]) / 2, cellQuery.getLatitude(), 1e-12);
+        assertEquals((cell[2] + cell[3]) / 2, cellQuery.getLongitude(), 1e-12);
+        assertTrue(cellQuery.getRadius() > 50);
+        assertTrue(cellQuery.getRadius() < 51);
+    }
+
+    @Test
+    public void testOtherCellRadiusOrFiltersAreDownloaded() throws NoInternetException
+    {
+        FakeCoalescer coalescer = new FakeCoalescer();
+        AircraftResponseCache cache = new AircraftResponseCache(coalescer, null, LONG_TIME, LONG_TIME, MEMORY_BUDGET);
+
+        cache.getAircraft(new AircraftQuery.Builder(LATITUDE, LONGITUDE, 50).build());
+        cache.getAircraft(new AircraftQuery.Builder(LATITUDE, NEXT_CELL_LONGITUDE, 50).build());
+        cache.getAircraft(new AircraftQuery.Builder(LATITUDE, LONGITUDE, 100).build());
+        cache.getAircraft(new AircraftQuery.Builder(LATITUDE, LONGITUDE, 50).addFilter(AircraftFilter.notOnGround()).build());
+
+        assertEquals(4, coalescer.getQueryCount());
+    }
+
+    @Test
+    public void testStaleResultIsDownloadedAgain() throws NoInternetException
+    {
+        FakeCoalescer coalescer = new FakeCoalescer();
+        AircraftResponseCache cache = new AircraftResponseCache(coalescer, null, -1, -1, MEMORY_BUDGET);
+
+        AircraftSnapshot first = cache.getAircraft(new AircraftQuery.Builder(LATITUDE, LONGITUDE, 50).build());
+        AircraftSnapshot second = cache.getAircraft(new AircraftQuery.Builder(LATITUDE, LONGITUDE, 50).build());
+
+        assertNotSame(first, second);
+        assertEquals(2, coalescer.getQueryCount());
+    }
+
+    @Test
+    public void testOldResultIsRefreshedInBackground() throws NoInternetException, InterruptedException
+    {
+        FakeCoalescer coalescer = new FakeCoalescer();
+        AircraftResponseCache cache = new AircraftResponseCache(coalescer, null, -1, LONG_TIME, MEMORY_BUDGET);
+
+        AircraftSnapshot first = cache.getAircraft(new AircraftQuery.Builder(LATITUDE, LONGITUDE, 50).build());
+        AircraftSnapshot second = cache.getAircraft(new AircraftQuery.Builder(LATITUDE, LONGITUDE, 50).build());
+
+        // The old result is served at once, and downloaded again in the background
+        assertSame(first, second);
+        assertTrue(coalescer.awaitTwoQueries());
+    }
+
+    @Test
+    public void testMemoryBudgetEvictsLeastRecentlyUsed() throws NoInternetException
+    {
+        FakeCoalescer coalescer = new FakeCoalescer();
+        AircraftResponseCache cache = new AircraftResponseCache(coalescer, null, LONG_TIME, LONG_TIME, 1);
+
+        // Only the last result fits
+        cache.getAircraft(new AircraftQuery.Builder(LATITUDE, LONGITUDE, 50).build());
+        cache.getAircraft(new AircraftQuery.Builder(LATITUDE, NEXT_CELL_LONGITUDE, 50).build());
+        cache.getAircraft(new AircraftQuery.Builder(LATITUDE, NEXT_CELL_LONGITUDE, 50).build());
+        cache.getAircraft(new AircraftQuery.Builder(LATITUDE, LONGITUDE, 50).build());
+
+        assertEquals(3, coalescer.getQueryCount());
+
+        cache.clear();
+        cache.getAircraft(new AircraftQuery.Builder(LATITUDE, LONGITUDE, 50).build());
+        assertEquals(4, coalescer.getQueryCount());
+    }
+
+    /**
+     * A coalescer answering every query with a new empty snapshot and keeping the queries.
+     */
+    static class FakeCoalescer extends AircraftQueryCoalescer
+    {
+        private static final long AWAIT_SECONDS = 10;
+
+        private final ArrayList<AircraftQuery> queries = new ArrayList<>();
+        private final CountDownLatch queryLatch = new CountDownLatch(2);
+
+        public FakeCoalescer()
+        {
+            super(null);
+        }
+
+        @Override
+        public AircraftSnapshot getAircraft(AircraftQuery aircraftQuery, CancellationSignal cancellationSignal)
+        {
+            synchronized (queries)
+            {
+                queries.add(aircraftQuery);
+            }
+
+            queryLatch.countDown();
+
+            return new AircraftSnapshot();
+        }
+
+        public int getQueryCount()
+        {
+            synchronized (queries)
+            {
+                return queries.size();
+            }
+        }
+
+        public AircraftQuery getQuery(int index)
+        {
+            synchronized (queries)
+            {
+                return queries.get(index);
+            }
+        }
+
+        /**
+         * Waits for queries sent from other threads.
+         * @return Returns whether two queries were sent in time.
+         * @throws InterruptedException
+         */
+        public boolean awaitTwoQueries() throws InterruptedException
+        {
+            return queryLatch.await(AWAIT_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.user.superplane;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the queries of the k-d tree against a brute force search over the same positions.
+ */
+public class AircraftSpatialIndexTest
+{
+    private static final int AIRCRAFT_COUNT = 2000;
+    private static final int QUERY_COUNT = 200;
+    private static final int K = 10;
+
+    @Test
+    public void testQueriesMatchBruteForce()
+    {
+        Random random = new Random(1);
+        double[] latitudes = new double[AIRCRAFT_COUNT];
+        double[] longitudes = new double[AIRCRAFT_COUNT];
+        for (int i = 0; i < AIRCRAFT_COUNT; i++)
+        {
+            // Around Tel Aviv, like the aircraft of a single search
+            latitudes[i] = 32 + (random.nextDouble() - 0.5) * 4;
+            longitudes[i] = 34.8 + (random.nextDouble() - 0.5) * 4;
+        }
+
+        assertQueriesMatchBruteForce(latitudes, longitudes, 32, 34.8, 2, random);
+    }
+
+    @Test
+    public void testQueriesMatchBruteForceAcrossDateLineAndPoles()
+    {
+        Random random = new Random(2);
+        double[] latitudes = new double[AIRCRAFT_COUNT];
+        double[] longitudes = new double[AIRCRAFT_COUNT];
+        for (int i = 0; i < AIRCRAFT_COUNT; i++)
+        {
+            latitudes[i] = Math.toDegrees(Math.asin(random.nextDouble() * 2 - 1));
+            longitudes[i] = random.nextDouble() * 360 - 180;
+        }
+
+        assertQueriesMatchBruteForce(latitudes, longitudes, 0, 180, 90, random);
+        assertQueriesMatchBruteForce(latitudes, longitudes, 89, 0, 10, random);
+    }
+
+    @Test
+    public void testEmptyIndex()
+    {
+        AircraftSpatialIndex index = new AircraftSpatialIndex(new double[0], new double[0], 0);
+
+        assertEquals(0, index.size());
+        assertEquals(-1, index.nearest(32, 34.8, Double.MAX_VALUE));
+        assertEquals(0, index.kNearest(32, 34.8, Double.MAX_VALUE, new int[K]));
+        assertEquals(0, index.withinRadius(32, 34.8, Double.MAX_VALUE, new int[K]));
+    }
+
+    @Test
+    public void testDistanceTo()
+    {
+        AircraftSpatialIndex index = new AircraftSpatialIndex(new double[] {0}, new double[] {0}, 1);
+
+        // A degree of a great circle
+        assertEquals(AircraftSpatialIndex.EARTH_RADIUS * Math.PI / 180, index.distanceTo(0, 0, 1), 1e-6);
+        assertEquals(AircraftSpatialIndex.EARTH_RADIUS * Math.PI / 180, index.distanceTo(0, 1, 0), 1e-6);
+        assertEquals(0, index.distanceTo(0, 0, 0), 0);
+    }
+
+    /**
+     * Runs random queries around a location against both the index and a brute force search.
+     * @param latitudes The latitudes of the aircraft.
+     * @param longitudes The longitudes of the aircraft.
+     * @param latitude The latitude around which to query.
+     * @param longitude The longitude around which to query.
+     * @param spread The size of the area to query in, in degrees.
+     * @param random The random to pick the queries with.
+     */
+    private static void assertQueriesMatchBruteForce(double[] latitudes, double[] longitudes,
+                                                     double latitude, double longitude, double spread, Random random)
+    {
+        AircraftSpatialIndex index = new AircraftSpatialIndex(latitudes, longitudes, latitudes.length);
+        assertEquals(latitudes.length, index.size());
+
+        int[] found = new int[latitudes.length];
+        for (int query = 0; query < QUERY_COUNT; query++)
+        {
+            double queryLatitude = Math.max(-90, Math.min(90, latitude + (random.nextDouble() - 0.5) * spread));
+            double queryLongitude = longitude + (random.nextDouble() - 0.5) * spread;
+            if (queryLongitude > 180)
+                queryLongitude -= 360;
+            double radius = random.nextDouble() * 100000;
+
+            // Every aircraft by its distance, closest first
+            Integer[] sorted = sortByDistance(index, latitudes.length, queryLatitude, queryLongitude);
+
+            int nearest = index.nearest(queryLatitude, queryLongitude, Double.MAX_VALUE);
+            assertEquals(sorted[0].intValue(), nearest);
+
+            int nearestInRadius = index.nearest(queryLatitude, queryLongitude, radius);
+            if (index.distanceTo(sorted[0], queryLatitude, queryLongitude) <= radius)
+                assertEquals(sorted[0].intValue(), nearestInRadius);
+            else
+                assertEquals(-1, nearestInRadius);
+
+            int[] kNearest = new int[K];
+            assertEquals(K, index.kNearest(queryLatitude, queryLongitude, Double.MAX_VALUE, kNearest));
+            for (int i = 0; i < K; i++)
+                assertEquals(sorted[i].intValue(), kNearest[i]);
+
+            int inRadius = 0;
+            while (inRadius < sorted.length && index.distanceTo(sorted[inRadius], queryLatitude, queryLongitude) <= radius)
+                inRadius++;
+
+            int count = index.withinRadius(queryLatitude, queryLongitude, radius, found);
+            assertEquals(inRadius, count);
+
+            int[] expected = new int[inRadius];
+            for (int i = 0; i < inRadius; i++)
+                expected[i] = sorted[i];
+            int[] actual = Arrays.copyOf(found, count);
+            Arrays.sort(expected);
+            Arrays.sort(actual);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    private static Integer[] sortByDistance(final AircraftSpatialIndex index, int size,
+                                            final double latitude, final double longitude)
+    {
+        Integer[] sorted = new Integer[size];
+        for (int i = 0; i < size; i++)
+            sorted[i] = i;
+
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second)
+            {
+                return Double.compare(index.distanceTo(first, latitude, longitude),
+                        index.distanceTo(second, latitude, longitude));
+            }
+        });
+
+        return sorted;
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.user.superplane;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the JSON pull parser over a stream and over data in memory.
+ */
+public class JsonPullParserTest
+{
+    private static final JsonPullParser.FieldTable FIELDS = new JsonPullParser.FieldTable("a", "b", "c", "d", "e");
+
+    private static final String DOCUMENT = "{\"a\": 1.5, \"b\": \"text\", \"unknown\": {\"x\": [1, {\"y\": \"}]\"}]}, " +
+            "\"c\": [true, false, null], \"d\": {\"e\": -2}}";
+
+    @Test
+    public void testReadsDocument() throws IOException
+    {
+        assertDocument(new JsonPullParser(new ByteArrayInputStream(DOCUMENT.getBytes("UTF-8"))));
+    }
+
+    @Test
+    public void testReadsAcrossBufferBoundaries() throws IOException
+    {
+        // Every token is split between reads of the stream
+        assertDocument(new JsonPullParser(new ByteArrayInputStream(DOCUMENT.getBytes("UTF-8")), new byte[3]));
+    }
+
+    @Test
+    public void testReadsDataInMemory() throws IOException
+    {
+        byte[] data = ("garbage" + DOCUMENT + "garbage").getBytes("UTF-8");
+        JsonPullParser parser = new JsonPullParser(data, "garbage".length(), DOCUMENT.length());
+
+        assertEquals("garbage".length(), parser.getPosition());
+        assertDocument(parser);
+    }
+
+    @Test
+    public void testPositionComesBackToValue() throws IOException
+    {
+        byte[] data = "[{\"a\": 1}, {\"a\": 2}]".getBytes("UTF-8");
+        JsonPullParser parser = new JsonPullParser(data, 0, data.length);
+
+        parser.beginArray();
+        parser.skipValue();
+        int offset = parser.getPosition();
+
+        JsonPullParser second = new JsonPullParser(data, offset, data.length - offset);
+        second.beginObject();
+        assertEquals(0, second.nextName(FIELDS));
+        assertEquals(2, second.nextInt());
+        second.endObject();
+    }
+
+    @Test
+    public void testReadsEscapesAndUnicode() throws IOException
+    {
+        String json = "[\"\\\"\\\\\\/\\b\\f\\n\\r\\t\", \"\\u00e9\\u6771\", \"Zürich 東京\"]";
+        JsonPullParser parser = new JsonPullParser(new ByteArrayInputStream(json.getBytes("UTF-8")));
+
+        parser.beginArray();
+        assertEquals("\"\\/\b\f\n\r\t", parser.nextString());
+        assertEquals("é東", parser.nextString());
+        assertEquals("Zürich 東京", parser.nextString());
+        parser.endArray();
+        assertEquals(JsonPullParser.TOKEN_END_DOCUMENT, parser.peek());
+    }
+
+    @Test
+    public void testReadsLongStrings() throws IOException
+    {
+        // Longer than the scratch space and the read buffer
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 10000; i++)
+            builder.append((char)('a' + i % 26));
+
+        String json = "[\"" + builder + "\"]";
+        JsonPullParser parser = new JsonPullParser(new ByteArrayInputStream(json.getBytes("UTF-8")));
+
+        parser.beginArray();
+        assertEquals(builder.toString(), parser.nextString());
+        parser.endArray();
+    }
+
+    @Test
+    public void testReadsNumbersAsText() throws IOException
+    {
+        JsonPullParser parser = new JsonPullParser(new ByteArrayInputStream("[\"12.5\", 7, true]".getBytes("UTF-8")));
+
+        parser.beginArray();
+        assertEquals(12.5, parser.nextDouble(), 0);
+        assertEquals("7", parser.nextString());
+        assertEquals("true", parser.nextString());
+        parser.endArray();
+    }
+
+    @Test
+    public void testParsesDoublesExactly()
+    {
+        String[] numbers = {"0", "-0.5", "1e3", "1E-3", "3.14159", "32.011405", "-118.4085", "123456789012345678901",
+                "0.1", "9007199254740993", "1.7976931348623157E308", "4.9E-324", "2.2250738585072014E-308"};
+        for (String number : numbers)
+            assertParsesExactly(number);
+
+        // Positions and speeds in the text form of the response
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++)
+            assertParsesExactly(Double.toString((random.nextDouble() - 0.5) * 360));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testRejectsMalformedNumber()
+    {
+        char[] chars = "1.2.3".toCharArray();
+        JsonPullParser.parseDouble(chars, chars.length);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testRejectsUnexpectedCharacter() throws IOException
+    {
+        JsonPullParser parser = new JsonPullParser(new ByteArrayInputStream("{\"a\": x}".getBytes("UTF-8")));
+
+        parser.beginObject();
+        parser.nextName(FIELDS);
+        parser.peek();
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testRejectsTruncatedDocument() throws IOException
+    {
+        JsonPullParser parser = new JsonPullParser(new ByteArrayInputStream("[\"text".getBytes("UTF-8")));
+
+        parser.beginArray();
+        parser.nextString();
+    }
+
+    /**
+     * Reads DOCUMENT and checks all of its values.
+     * @param parser The parser positioned at the start of the document.
+     * @throws IOException
+     */
+    private static void assertDocument(JsonPullParser parser) throws IOException
+    {
+        parser.beginObject();
+
+        assertEquals(0, parser.nextName(FIELDS));
+        assertEquals(JsonPullParser.TOKEN_NUMBER, parser.peek());
+        assertEquals(1.5, parser.nextDouble(), 0);
+
+        assertEquals(1, parser.nextName(FIELDS));
+        assertEquals("text", parser.nextString());
+
+        assertEquals(-1, parser.nextName(FIELDS));
+        parser.skipValue();
+
+        assertEquals(2, parser.nextName(FIELDS));
+        parser.beginArray();
+        assertTrue(parser.nextBoolean());
+        assertFalse(parser.nextBoolean());
+        assertEquals(JsonPullParser.TOKEN_NULL, parser.peek());
+        parser.nextNull();
+        assertFalse(parser.hasNext());
+        parser.endArray();
+
+        assertEquals(3, parser.nextName(FIELDS));
+        parser.beginObject();
+        assertEquals(4, parser.nextName(FIELDS));
+        assertEquals(-2, parser.nextInt());
+        parser.endObject();
+
+        assertFalse(parser.hasNext());
+        parser.endObject();
+        assertEquals(JsonPullParser.TOKEN_END_DOCUMENT, parser.peek());
+    }
+
+    private static void assertParsesExactly(String number)
+    {
+        char[] chars = number.toCharArray();
+        assertEquals(number, Double.doubleToLongBits(Double.parseDouble(number)),
+                Double.doubleToLongBits(JsonPullParser.parseDouble(chars, chars.length)));
+    }
+}